@@ -0,0 +1,49 @@
+package com.demo.filemanager.config;
+
+import com.demo.filemanager.model.FileMetaData;
+import com.demo.filemanager.model.User;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * In-process caches. They are built as async caches so that loads can run outside the cache's locks,
+ * see {@link com.demo.filemanager.util.CacheLoading}.
+ */
+@Configuration
+public class CacheConfiguration {
+
+    @Value("${file.metadata.cache.max-size:10000}")
+    private long fileMetaDataCacheMaxSize;
+
+    @Value("${file.metadata.cache.ttl:PT5M}")
+    private Duration fileMetaDataCacheTtl;
+
+    @Value("${user.principal.cache.max-size:10000}")
+    private long userPrincipalCacheMaxSize;
+
+    @Value("${user.principal.cache.ttl:PT5M}")
+    private Duration userPrincipalCacheTtl;
+
+    @Bean
+    public AsyncCache<Long, FileMetaData> fileMetaDataCache() {
+        return Caffeine.newBuilder()
+                .maximumSize(fileMetaDataCacheMaxSize)
+                .expireAfterWrite(fileMetaDataCacheTtl)
+                .recordStats()
+                .buildAsync();
+    }
+
+    @Bean
+    public AsyncCache<String, User> userPrincipalCache() {
+        return Caffeine.newBuilder()
+                .maximumSize(userPrincipalCacheMaxSize)
+                .expireAfterWrite(userPrincipalCacheTtl)
+                .recordStats()
+                .buildAsync();
+    }
+}
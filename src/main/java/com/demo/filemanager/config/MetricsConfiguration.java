@@ -0,0 +1,36 @@
+package com.demo.filemanager.config;
+
+import com.demo.filemanager.model.FileMetaData;
+import com.demo.filemanager.model.User;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.binder.jvm.DiskSpaceMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.File;
+
+/**
+ * Meters in addition to those Spring Boot records by itself, such as {@code http.server.requests} per endpoint
+ * and {@code spring.data.repository.invocations} per repository method: the disk space left where files are
+ * stored, and the in-process caches. All of them are exposed at {@code /actuator/prometheus}.
+ */
+@Configuration
+public class MetricsConfiguration {
+
+    @Bean
+    public MeterBinder storageDiskSpaceMetrics(@Value("${file.storage.location}") String fileStorageLocation) {
+        return new DiskSpaceMetrics(new File(fileStorageLocation), Tags.of("volume", "storage"));
+    }
+
+    @Bean
+    public MeterBinder cacheMetrics(AsyncCache<Long, FileMetaData> fileMetaDataCache, AsyncCache<String, User> userPrincipalCache) {
+        return meterRegistry -> {
+            CaffeineCacheMetrics.monitor(meterRegistry, fileMetaDataCache, "file.metadata");
+            CaffeineCacheMetrics.monitor(meterRegistry, userPrincipalCache, "user.principal");
+        };
+    }
+}
@@ -0,0 +1,216 @@
+package com.demo.filemanager.config;
+
+import com.demo.filemanager.util.ReplicaReads;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out connections of the primary or of one of the read replicas. A read-only transaction begun inside
+ * {@link ReplicaReads#read} gets a replica, taken in turn from those that are healthy; every other connection,
+ * and every read when no replica is healthy, comes from the primary. Wrapped in a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, so that a transaction fetches its
+ * connection once its read-only flag is known.
+ * <ul>
+ *     <li>Read-your-writes: once a transaction of an authenticated user commits on the primary, that user's
+ *     reads stay on the primary for {@code maxLag}, the longest a replica may lag behind.</li>
+ *     <li>Health: {@link #checkReplicas()} runs the lag query on every replica; one that fails it or lags
+ *     more than {@code maxLag} gets no reads until a later check passes.</li>
+ *     <li>Failover: a replica that cannot hand out a connection is marked unhealthy right away and the read
+ *     goes to the primary.</li>
+ * </ul>
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource implements DisposableBean {
+
+    /**
+     * Seconds a PostgreSQL standby lags behind its primary: none when it has replayed everything it received
+     * (an idle primary sends nothing), otherwise the age of the last transaction replayed; 0 on a primary.
+     */
+    public static final String POSTGRESQL_LAG_QUERY = "SELECT CASE WHEN NOT pg_is_in_recovery() "
+            + "OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 "
+            + "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0) END";
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final Duration maxLag;
+    private final String lagQuery;
+    private final Cache<String, Boolean> recentWriters;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<? extends DataSource> replicas, Duration maxLag, String lagQuery) {
+        this.primary = primary;
+        for (int i = 0; i < replicas.size(); i++) {
+            this.replicas.add(new Replica("replica-" + i, replicas.get(i)));
+        }
+        this.maxLag = maxLag;
+        this.lagQuery = lagQuery;
+        this.recentWriters = Caffeine.newBuilder().expireAfterWrite(maxLag).maximumSize(100_000).build();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Replica replica = replicaForCurrentTransaction();
+        if (replica != null) {
+            try {
+                return replica.dataSource.getConnection();
+            } catch (SQLException ex) {
+                replica.markUnhealthy("connection failed: " + ex.getMessage());
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.getConnection(username, password);
+    }
+
+    /**
+     * The replica to read from, or null for the primary.
+     */
+    private Replica replicaForCurrentTransaction() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            recordWriteOnCommit();
+            return null;
+        }
+        if (!ReplicaReads.isActive() || replicas.isEmpty()) {
+            return null;
+        }
+        String user = currentUser();
+        if (user != null && recentWriters.getIfPresent(user) != null) {
+            return null;
+        }
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (replica.healthy) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Keeps the reads of the user on the primary for the next {@code maxLag}, for writes committed on behalf of a
+     * user by another thread, which has no security context of its own.
+     */
+    public void recordWrite(Authentication authentication) {
+        String user = userOf(authentication);
+        if (user != null) {
+            recentWriters.put(user, Boolean.TRUE);
+        }
+    }
+
+    private void recordWriteOnCommit() {
+        String user = currentUser();
+        if (user == null || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                // replicas may not have the change for up to maxLag from now
+                recentWriters.put(user, Boolean.TRUE);
+            }
+        });
+    }
+
+    /**
+     * Runs the lag query on every replica and takes those failing it, or lagging more than the maximum, out of
+     * rotation until they pass again.
+     */
+    @Scheduled(fixedDelayString = "${datasource.replica.health-check-interval:PT5S}")
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.setQueryTimeout((int) Math.max(1, maxLag.toSeconds()));
+                try (ResultSet result = statement.executeQuery(lagQuery)) {
+                    double lagSeconds = result.next() ? result.getDouble(1) : Double.MAX_VALUE;
+                    if (lagSeconds * 1000 > maxLag.toMillis()) {
+                        replica.markUnhealthy(String.format("lagging %.1f s behind", lagSeconds));
+                    } else {
+                        replica.markHealthy();
+                    }
+                }
+            } catch (SQLException ex) {
+                replica.markUnhealthy("health check failed: " + ex.getMessage());
+            }
+        }
+    }
+
+    public boolean isHealthy(int replica) {
+        return replicas.get(replica).healthy;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    private static String currentUser() {
+        return userOf(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    private static String userOf(Authentication authentication) {
+        if (authentication == null || !authentication.isAuthenticated() || authentication instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+        return authentication.getName();
+    }
+
+    private static class Replica {
+
+        private final String name;
+        private final DataSource dataSource;
+        // until the first check passes, reads stay on the primary
+        private volatile boolean healthy;
+        private volatile boolean checked;
+
+        Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        void markHealthy() {
+            if (!healthy) {
+                logger.info("Read replica {} is healthy, routing reads to it", name);
+                healthy = true;
+            }
+            checked = true;
+        }
+
+        void markUnhealthy(String reason) {
+            if (healthy || !checked) {
+                logger.warn("Read replica {} is unhealthy ({}), routing its reads to the primary", name, reason);
+                healthy = false;
+            }
+            checked = true;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.demo.filemanager.config;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Creates the index file name searches use, which JPA cannot declare: a trigram GIN index on the lower-cased
+ * name, serving both prefix ({@code like 'abc%'}) and substring ({@code like '%abc%'}) matches, bound
+ * parameters included. It is built concurrently once the application is up, so a large table stays writable
+ * meanwhile, and creating it again is a no-op. Without it, which needs the pg_trgm extension, searches still
+ * work by scanning.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class SearchIndexConfiguration {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchIndexConfiguration.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${file.search.create-index:true}")
+    private boolean createIndex = true;
+
+    @Value("${spring.jpa.properties.hibernate.default_schema:}")
+    private String schema = "";
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createSearchIndex() {
+        if (!createIndex) {
+            return;
+        }
+        String table = schema.isBlank() ? "file_meta_data" : schema + ".file_meta_data";
+        try {
+            jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+            jdbcTemplate.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_file_meta_data_file_name_trgm ON " + table
+                    + " USING gin (lower(file_name) gin_trgm_ops)");
+        } catch (DataAccessException ex) {
+            logger.warn("Could not create the file name search index, searches will scan the table", ex);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.demo.filemanager.config;
+
+import com.demo.filemanager.storage.LocalStorageBackend;
+import com.demo.filemanager.storage.MappedStorageBackend;
+import com.demo.filemanager.storage.S3StorageBackend;
+import com.demo.filemanager.storage.StorageBackend;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.URI;
+import java.nio.file.Paths;
+
+@Configuration
+public class StorageConfiguration {
+
+    private static final String BLOBS_DIRECTORY = "blobs";
+
+    @Value("${file.storage.location}")
+    private String fileStorageLocation;
+
+    @Value("${file.storage.backend:local}")
+    private String backend;
+
+    @Value("${file.storage.mapped.max-file-size:1048576}")
+    private long mappedMaxFileSize;
+
+    @Value("${file.storage.mapped.max-mapped-bytes:268435456}")
+    private long mappedMaxMappedBytes;
+
+    @Value("${file.storage.s3.endpoint:}")
+    private String s3Endpoint;
+
+    @Value("${file.storage.s3.bucket:}")
+    private String s3Bucket;
+
+    @Value("${file.storage.s3.prefix:}")
+    private String s3Prefix;
+
+    @Value("${file.storage.s3.region:us-east-1}")
+    private String s3Region;
+
+    @Value("${file.storage.s3.access-key:}")
+    private String s3AccessKey;
+
+    @Value("${file.storage.s3.secret-key:}")
+    private String s3SecretKey;
+
+    /**
+     * Backend for the content of the blob store. Staging, upload sessions and files stored before the blob store
+     * existed stay on the local file system under {@code file.storage.location}.
+     */
+    @Bean
+    public StorageBackend blobStorageBackend() {
+        return switch (backend) {
+            case "local" -> new LocalStorageBackend(Paths.get(fileStorageLocation, BLOBS_DIRECTORY));
+            case "mapped" -> new MappedStorageBackend(Paths.get(fileStorageLocation, BLOBS_DIRECTORY),
+                    mappedMaxFileSize, mappedMaxMappedBytes);
+            case "s3" -> new S3StorageBackend(URI.create(s3Endpoint), s3Bucket, s3Prefix, s3Region, s3AccessKey, s3SecretKey);
+            default -> throw new IllegalArgumentException("Unknown file.storage.backend: " + backend);
+        };
+    }
+}
@@ -0,0 +1,285 @@
+package com.demo.filemanager.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Meters for the requests that move file content: uploads (multipart and batch uploads, updates, upload
+ * session parts) and downloads (single files, ZIP archives, thumbnails).
+ * <ul>
+ *     <li>{@code file.transfer.bytes}: bytes received or sent, whose rate is the throughput</li>
+ *     <li>{@code file.transfer.duration}: a latency histogram per endpoint and outcome</li>
+ *     <li>{@code file.transfer.active}: transfers in progress</li>
+ *     <li>{@code file.transfer.errors}: transfers answered with an error status or aborted by an exception</li>
+ * </ul>
+ * Streamed responses are measured until they complete. Downloads handed to the container's sendfile support are
+ * counted in full, but their duration ends when the container takes over. Recording costs a few counter updates
+ * per request and one per buffer written, so it is always on.
+ */
+@Component
+// outside UploadValidationFilter, so that the bytes it reads are counted
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+public class TransferMetricsFilter extends OncePerRequestFilter {
+
+    static final String UPLOAD = "upload";
+    static final String DOWNLOAD = "download";
+
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    private final MeterRegistry meterRegistry;
+    private final AtomicInteger activeUploads = new AtomicInteger();
+    private final AtomicInteger activeDownloads = new AtomicInteger();
+
+    public TransferMetricsFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("file.transfer.active", activeUploads, AtomicInteger::get).tag("direction", UPLOAD)
+                .description("Uploads in progress").register(meterRegistry);
+        Gauge.builder("file.transfer.active", activeDownloads, AtomicInteger::get).tag("direction", DOWNLOAD)
+                .description("Downloads in progress").register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        return direction(request.getMethod(), request.getRequestURI().substring(request.getContextPath().length())) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain) throws ServletException, IOException {
+        String direction = direction(request.getMethod(), request.getRequestURI().substring(request.getContextPath().length()));
+        AtomicInteger active = UPLOAD.equals(direction) ? activeUploads : activeDownloads;
+        CountingRequest countingRequest = new CountingRequest(request);
+        CountingResponse countingResponse = new CountingResponse(response);
+        long start = System.nanoTime();
+        active.incrementAndGet();
+        Throwable failure = null;
+        try {
+            filterChain.doFilter(countingRequest, countingResponse);
+        } catch (IOException | ServletException | RuntimeException ex) {
+            failure = ex;
+            throw ex;
+        } finally {
+            if (failure == null && request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    private Throwable asyncFailure;
+
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        record(direction, active, start, countingRequest, countingResponse, asyncFailure);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                        asyncFailure = event.getThrowable();
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                        asyncFailure = event.getThrowable();
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                record(direction, active, start, countingRequest, countingResponse, failure);
+            }
+        }
+    }
+
+    private void record(String direction, AtomicInteger active, long start, CountingRequest request,
+                        CountingResponse response, Throwable failure) {
+        long elapsed = System.nanoTime() - start;
+        active.decrementAndGet();
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern == null ? "UNKNOWN" : pattern.toString();
+        int status = failure != null && response.getStatus() < 400 ? 500 : response.getStatus();
+        String outcome = status < 400 ? "SUCCESS" : status < 500 ? "CLIENT_ERROR" : "SERVER_ERROR";
+
+        Timer.builder("file.transfer.duration")
+                .description("Time to receive an upload or send a download")
+                .tags("direction", direction, "uri", uri, "outcome", outcome)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(10))
+                .register(meterRegistry)
+                .record(elapsed, TimeUnit.NANOSECONDS);
+        // the container's multipart parsing reads past the wrapper, so a successful upload counts its declared length
+        long bytes = UPLOAD.equals(direction)
+                ? status < 400 ? Math.max(request.count, request.getContentLengthLong()) : request.count
+                : response.count + sendfileBytes(request);
+        if (bytes > 0) {
+            Counter.builder("file.transfer.bytes").baseUnit(BaseUnits.BYTES)
+                    .description("File content received or sent")
+                    .tags("direction", direction, "uri", uri)
+                    .register(meterRegistry)
+                    .increment(bytes);
+        }
+        if (status >= 400) {
+            Counter.builder("file.transfer.errors")
+                    .description("Uploads and downloads answered with an error status or aborted by an exception")
+                    .tags("direction", direction, "uri", uri, "status", Integer.toString(status),
+                            "exception", failure == null ? "none" : failure.getClass().getSimpleName())
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+
+    private static long sendfileBytes(HttpServletRequest request) {
+        if (request.getAttribute(SENDFILE_FILENAME_ATTR) == null
+                || !(request.getAttribute(SENDFILE_START_ATTR) instanceof Long sendfileStart)
+                || !(request.getAttribute(SENDFILE_END_ATTR) instanceof Long sendfileEnd)) {
+            return 0;
+        }
+        return sendfileEnd - sendfileStart;
+    }
+
+    /**
+     * Whether a request to the path, relative to the context path, moves file content, and in which direction;
+     * null when it does not.
+     */
+    static String direction(String method, String path) {
+        if ("GET".equals(method) && (path.startsWith("/api/files/download/") || path.startsWith("/api/files/thumbnail/"))) {
+            return DOWNLOAD;
+        }
+        if ("POST".equals(method) && (path.equals("/api/files/upload") || path.equals("/api/files/upload/batch"))) {
+            return UPLOAD;
+        }
+        if ("PUT".equals(method) && path.startsWith("/api/files/")) {
+            return UPLOAD;
+        }
+        return null;
+    }
+
+    private static class CountingRequest extends HttpServletRequestWrapper {
+
+        private long count;
+        private ServletInputStream inputStream;
+
+        CountingRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                ServletInputStream delegate = super.getInputStream();
+                inputStream = new ServletInputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        int b = delegate.read();
+                        if (b != -1) {
+                            count++;
+                        }
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        int read = delegate.read(b, off, len);
+                        if (read > 0) {
+                            count += read;
+                        }
+                        return read;
+                    }
+
+                    @Override
+                    public boolean isFinished() {
+                        return delegate.isFinished();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return delegate.isReady();
+                    }
+
+                    @Override
+                    public void setReadListener(ReadListener readListener) {
+                        delegate.setReadListener(readListener);
+                    }
+                };
+            }
+            return inputStream;
+        }
+    }
+
+    private static class CountingResponse extends HttpServletResponseWrapper {
+
+        private long count;
+        private ServletOutputStream outputStream;
+
+        CountingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                ServletOutputStream delegate = super.getOutputStream();
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        delegate.write(b);
+                        count++;
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        delegate.write(b, off, len);
+                        count += len;
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        delegate.flush();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        delegate.close();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return delegate.isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                        delegate.setWriteListener(writeListener);
+                    }
+                };
+            }
+            return outputStream;
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.demo.filemanager.config;
+
+import com.demo.filemanager.model.response.CustomApiResponse;
+import com.demo.filemanager.util.FileValidation;
+import com.demo.filemanager.util.MultipartStreamParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.Part;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Validates multipart uploads (single and batch uploads, updates) while their body arrives, instead of after the
+ * container has received and spooled all of it. A request is rejected, and its connection closed without reading
+ * the rest, as soon as:
+ * <ul>
+ *     <li>its Content-Length exceeds what the endpoint accepts (413)</li>
+ *     <li>a file part's name has an extension that is not allowed (415)</li>
+ *     <li>a file part's first bytes do not match the type its name claims (415)</li>
+ *     <li>a file part, or the whole body, grows past its limit, counted as it is read (413)</li>
+ * </ul>
+ * Parts that pass are spooled to temporary files and handed to Spring MVC as the request's parts, so memory use
+ * is a fixed buffer per request. Since the first invalid file ends the request, a batch upload containing one is
+ * rejected as a whole.
+ */
+@Component
+@RequiredArgsConstructor
+public class UploadValidationFilter extends OncePerRequestFilter {
+
+    // part headers, boundaries and form fields around the file of a single upload
+    static final long MULTIPART_OVERHEAD = 16 * 1024;
+    static final int MAX_FIELD_SIZE = 8 * 1024;
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${spring.servlet.multipart.max-file-size:1MB}")
+    private DataSize maxFileSize = DataSize.ofMegabytes(1);
+
+    @Value("${spring.servlet.multipart.max-request-size:10MB}")
+    private DataSize maxRequestSize = DataSize.ofMegabytes(10);
+
+    @Value("${spring.servlet.multipart.location:}")
+    private String spoolLocation = "";
+
+    @Value("${file.upload.batch.max-files:1000}")
+    private int maxBatchFiles = 1000;
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        String contentType = request.getContentType();
+        return contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith(MediaType.MULTIPART_FORM_DATA_VALUE)
+                || !TransferMetricsFilter.UPLOAD.equals(TransferMetricsFilter.direction(request.getMethod(), path(request)));
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain) throws ServletException, IOException {
+        boolean batch = path(request).endsWith("/batch");
+        long fileLimit = Math.min(FileValidation.MAX_FILE_SIZE, maxFileSize.toBytes());
+        long requestLimit = batch ? maxRequestSize.toBytes() : Math.min(maxRequestSize.toBytes(), fileLimit + MULTIPART_OVERHEAD);
+        if (request.getContentLengthLong() > requestLimit) {
+            reject(response, HttpStatus.PAYLOAD_TOO_LARGE, "Upload exceeds " + requestLimit + " bytes!");
+            return;
+        }
+        String boundary = MediaType.parseMediaType(request.getContentType()).getParameter("boundary");
+        if (boundary == null || boundary.isEmpty()) {
+            reject(response, HttpStatus.BAD_REQUEST, "Multipart request without a boundary!");
+            return;
+        }
+
+        SpooledPartsRequest spooled = new SpooledPartsRequest(request);
+        try {
+            try {
+                spooled.parse(new BodyLimitInputStream(request.getInputStream(), requestLimit),
+                        unquote(boundary), fileLimit, batch ? maxBatchFiles : 1);
+            } catch (UploadRejectedException ex) {
+                reject(response, ex.status, ex.getMessage());
+                return;
+            } catch (MultipartStreamParser.MalformedMultipartException | IllegalArgumentException ex) {
+                reject(response, HttpStatus.BAD_REQUEST, "Malformed multipart request: " + ex.getMessage());
+                return;
+            }
+            filterChain.doFilter(spooled, response);
+        } finally {
+            spooled.deleteParts();
+        }
+    }
+
+    private void reject(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        logger.info("Rejected upload: " + message);
+        response.setStatus(status.value());
+        // the rest of the body is not read, so the connection cannot be reused
+        response.setHeader(HttpHeaders.CONNECTION, "close");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), new CustomApiResponse<>(message, null));
+    }
+
+    private Path spoolDirectory() {
+        return Path.of(spoolLocation.isBlank() ? System.getProperty("java.io.tmpdir") : spoolLocation);
+    }
+
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    private static String unquote(String value) {
+        return value.length() > 1 && value.startsWith("\"") && value.endsWith("\"") ? value.substring(1, value.length() - 1) : value;
+    }
+
+    /**
+     * The request with the parts read and validated by this filter in place of the container's.
+     */
+    private class SpooledPartsRequest extends HttpServletRequestWrapper {
+
+        private final List<Part> parts = new ArrayList<>();
+        private final Map<String, List<String>> fields = new LinkedHashMap<>();
+
+        SpooledPartsRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        void parse(InputStream body, String boundary, long fileLimit, int maxFiles) throws IOException {
+            MultipartStreamParser parser = new MultipartStreamParser(body, boundary);
+            byte[] buffer = new byte[8192];
+            int files = 0;
+            Map<String, String> headers;
+            while ((headers = parser.nextPart()) != null) {
+                ContentDisposition disposition = ContentDisposition.parse(headers.getOrDefault("content-disposition", ""));
+                String name = disposition.getName();
+                String fileName = disposition.getFilename();
+                if (fileName == null) {
+                    ByteArrayOutputStream value = new ByteArrayOutputStream();
+                    int read;
+                    while ((read = parser.read(buffer, 0, buffer.length)) != -1) {
+                        if (value.size() + read > MAX_FIELD_SIZE) {
+                            throw new UploadRejectedException(HttpStatus.PAYLOAD_TOO_LARGE, "Form field " + name + " exceeds " + MAX_FIELD_SIZE + " bytes!");
+                        }
+                        value.write(buffer, 0, read);
+                    }
+                    parts.add(new SpooledPart(name, null, headers, null, value.toByteArray(), value.size()));
+                    fields.computeIfAbsent(name, key -> new ArrayList<>()).add(value.toString(StandardCharsets.UTF_8));
+                    continue;
+                }
+
+                if (++files > maxFiles) {
+                    throw new UploadRejectedException(HttpStatus.BAD_REQUEST, "Between 1 and " + maxFiles + " files must be uploaded!");
+                }
+                if (!FileValidation.hasAllowedExtension(fileName)) {
+                    throw new UploadRejectedException(HttpStatus.UNSUPPORTED_MEDIA_TYPE, "File type of " + fileName + " is not allowed!");
+                }
+                int head = 0;
+                int read;
+                while (head < FileValidation.SIGNATURE_LENGTH
+                        && (read = parser.read(buffer, head, FileValidation.SIGNATURE_LENGTH - head)) != -1) {
+                    head += read;
+                }
+                if (!FileValidation.hasMatchingSignature(fileName, buffer, head)) {
+                    throw new UploadRejectedException(HttpStatus.UNSUPPORTED_MEDIA_TYPE, "Content of " + fileName + " does not match its type!");
+                }
+
+                Path file = Files.createTempFile(spoolDirectory(), "upload-", ".part");
+                SpooledPart part = new SpooledPart(name, fileName, headers, file, null, 0);
+                parts.add(part);
+                long size = head;
+                try (OutputStream out = Files.newOutputStream(file)) {
+                    out.write(buffer, 0, head);
+                    while ((read = parser.read(buffer, 0, buffer.length)) != -1) {
+                        size += read;
+                        if (size > fileLimit) {
+                            throw new UploadRejectedException(HttpStatus.PAYLOAD_TOO_LARGE, fileName + " exceeds " + fileLimit + " bytes!");
+                        }
+                        out.write(buffer, 0, read);
+                    }
+                }
+                part.size = size;
+            }
+        }
+
+        void deleteParts() throws IOException {
+            for (Part part : parts) {
+                part.delete();
+            }
+        }
+
+        @Override
+        public Collection<Part> getParts() {
+            return Collections.unmodifiableList(parts);
+        }
+
+        @Override
+        public Part getPart(String name) {
+            return parts.stream().filter(part -> part.getName().equals(name)).findFirst().orElse(null);
+        }
+
+        @Override
+        public String getParameter(String name) {
+            List<String> values = fields.get(name);
+            return values != null ? values.get(0) : super.getParameter(name);
+        }
+
+        @Override
+        public String[] getParameterValues(String name) {
+            List<String> values = fields.get(name);
+            return values != null ? values.toArray(new String[0]) : super.getParameterValues(name);
+        }
+
+        @Override
+        public Map<String, String[]> getParameterMap() {
+            Map<String, String[]> parameters = new LinkedHashMap<>(super.getParameterMap());
+            fields.forEach((name, values) -> parameters.put(name, values.toArray(new String[0])));
+            return parameters;
+        }
+
+        @Override
+        public Enumeration<String> getParameterNames() {
+            return Collections.enumeration(getParameterMap().keySet());
+        }
+    }
+
+    private static class SpooledPart implements Part {
+
+        private final String name;
+        private final String fileName;
+        private final Map<String, String> headers;
+        private final Path file;
+        private final byte[] value;
+        private long size;
+
+        SpooledPart(String name, String fileName, Map<String, String> headers, Path file, byte[] value, long size) {
+            this.name = name;
+            this.fileName = fileName;
+            this.headers = headers;
+            this.file = file;
+            this.value = value;
+            this.size = size;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return file != null ? Files.newInputStream(file) : new ByteArrayInputStream(value);
+        }
+
+        @Override
+        public String getContentType() {
+            return headers.get("content-type");
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getSubmittedFileName() {
+            return fileName;
+        }
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public void write(String fileName) throws IOException {
+            try (InputStream in = getInputStream()) {
+                Files.copy(in, Path.of(fileName), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        @Override
+        public void delete() throws IOException {
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return headers.get(name.toLowerCase(Locale.ROOT));
+        }
+
+        @Override
+        public Collection<String> getHeaders(String name) {
+            String value = getHeader(name);
+            return value == null ? List.of() : List.of(value);
+        }
+
+        @Override
+        public Collection<String> getHeaderNames() {
+            return headers.keySet();
+        }
+    }
+
+    /**
+     * Counts the body as it is read and rejects it once it grows past the limit, whatever its Content-Length said.
+     */
+    private static class BodyLimitInputStream extends FilterInputStream {
+
+        private final long limit;
+        private long count;
+
+        BodyLimitInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        private void count(int read) throws UploadRejectedException {
+            count += read;
+            if (count > limit) {
+                throw new UploadRejectedException(HttpStatus.PAYLOAD_TOO_LARGE, "Upload exceeds " + limit + " bytes!");
+            }
+        }
+    }
+
+    private static class UploadRejectedException extends IOException {
+
+        private final HttpStatus status;
+
+        UploadRejectedException(HttpStatus status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
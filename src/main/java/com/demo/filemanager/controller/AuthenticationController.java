@@ -6,6 +6,9 @@ import com.demo.filemanager.dao.response.JwtAuthenticationResponse;
 import com.demo.filemanager.service.AuthenticationService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -13,22 +16,45 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import lombok.RequiredArgsConstructor;
 
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+
 @RestController
 @RequestMapping("/api/v1/auth")
 @RequiredArgsConstructor
 public class AuthenticationController {
     private final AuthenticationService authenticationService;
     private static final Logger logger = LoggerFactory.getLogger(AuthenticationController.class);
+
+    @Value("${auth.hashing.retry-after:PT1S}")
+    private Duration retryAfter = Duration.ofSeconds(1);
+
     @PostMapping("/signup")
     public ResponseEntity<JwtAuthenticationResponse> signup(@RequestBody SignUpRequest request) {
         logger.info("Signed up");
-        return ResponseEntity.ok(authenticationService.signup(request));
+        try {
+            return ResponseEntity.ok(authenticationService.signup(request));
+        } catch (RejectedExecutionException ex) {
+            return serviceUnavailable();
+        }
     }
 
     @PostMapping("/signing")
     public ResponseEntity<JwtAuthenticationResponse> signin(@RequestBody SigninRequest request) {
         logger.info("Signing");
 
-        return ResponseEntity.ok(authenticationService.signin(request));
+        try {
+            return ResponseEntity.ok(authenticationService.signin(request));
+        } catch (RejectedExecutionException ex) {
+            return serviceUnavailable();
+        }
+    }
+
+    private ResponseEntity<JwtAuthenticationResponse> serviceUnavailable() {
+        // password hashing is saturated; ask the client to come back instead of queueing without bound
+        logger.warn("Password hashing saturated, rejecting authentication request");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, retryAfter.toSeconds())))
+                .build();
     }
 }
@@ -1,31 +1,71 @@
 package com.demo.filemanager.controller;
 
+import com.demo.filemanager.dao.request.BatchDeleteRequest;
+import com.demo.filemanager.dao.request.InstantUploadRequest;
+import com.demo.filemanager.dto.BatchDeleteResultDTO;
+import com.demo.filemanager.dto.BatchUploadResultDTO;
+import com.demo.filemanager.dto.CacheStatsDTO;
 import com.demo.filemanager.dto.FileMetaDataDTO;
+import com.demo.filemanager.dto.FilePageDTO;
+import com.demo.filemanager.enums.ContentEncoding;
+import com.demo.filemanager.enums.FileSearchMode;
+import com.demo.filemanager.enums.FileSortOrder;
+import com.demo.filemanager.model.FileDerivative;
 import com.demo.filemanager.model.FileMetaData;
 import com.demo.filemanager.model.response.CustomApiResponse;
+import com.demo.filemanager.service.ArchiveService;
+import com.demo.filemanager.service.BatchUploadService;
+import com.demo.filemanager.service.BlobService;
 import com.demo.filemanager.service.FileService;
+import com.demo.filemanager.service.GroupCommitService;
+import com.demo.filemanager.service.ThumbnailService;
+import com.demo.filemanager.storage.StorageResource;
+import com.demo.filemanager.util.ConditionalRequests;
+import com.demo.filemanager.util.FileValidation;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.ServletServerHttpRequest;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.beans.factory.annotation.Value;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 @Tag(name = "File", description = "File management APIs")
 @RestController
@@ -35,16 +75,61 @@ public class FileController {
 
     private final FileService fileService;
 
+    private final BlobService blobService;
+
+    private final BatchUploadService batchUploadService;
+
+    private final GroupCommitService groupCommitService;
+
+    private final ThumbnailService thumbnailService;
+
+    private final ArchiveService archiveService;
+
+    private final ObjectMapper objectMapper;
+
     @Value("${file.storage.location}")
     private String fileStorageLocation;
 
+    @Value("${file.upload.batch.max-files:1000}")
+    private int maxBatchFiles = 1000;
+
+    @Value("${file.delete.batch.max-files:1000}")
+    private int maxBatchDeletes = 1000;
+
+    @Value("${file.download.zip.max-files:10000}")
+    private int maxZipFiles = 10000;
+
+    // shorter substrings have no trigram to look up and would scan the table
+    @Value("${file.search.min-substring-length:3}")
+    private int minSubstringLength = 3;
+
+    // how long a thumbnail requested with the digest of its file's content may be cached
+    @Value("${file.thumbnail.max-age:P365D}")
+    private Duration thumbnailMaxAge = Duration.ofDays(365);
+
+    @Value("${file.download.sendfile.enabled:true}")
+    private boolean sendfileEnabled = true;
+
+    @Value("${file.download.sendfile.min-size:49152}")
+    private long sendfileMinSize = 48 * 1024;
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private static final Pattern SHA256_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    private static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
     private static final Logger logger = LoggerFactory.getLogger(FileController.class);
 
 
     @Operation(
             summary = "Retrieve all files",
-            description = "Get a list of all File meta data.",
-            tags = { "files" })
+            description = "Get a list of all File meta data. Builds the whole list in memory; prefer the paged or streamed listing for large tables.",
+            tags = { "files" },
+            deprecated = true)
     @ApiResponses({
             @ApiResponse(responseCode = "200", content = { @Content(schema = @Schema(implementation = FileMetaDataDTO.class), mediaType = "application/json") })
     })
@@ -57,18 +142,125 @@ public class FileController {
         return ResponseEntity.ok(new CustomApiResponse<>("All files fetched successfully.", dtos));
     }
 
+    @Operation(
+            summary = "Retrieve a page of files",
+            description = "Get File meta data one page at a time, ordered by id or by file name. Pass the returned nextCursor to fetch the following page; it is null on the last page.",
+            tags = { "files" })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", content = { @Content(schema = @Schema(implementation = FilePageDTO.class), mediaType = "application/json") }),
+            @ApiResponse(responseCode = "400", content = { @Content(schema = @Schema()) })
+    })
+    @GetMapping("/page")
+    public ResponseEntity<CustomApiResponse<FilePageDTO>> getFilePage(@RequestParam(value = "sort", defaultValue = "id") String sort,
+                                                                      @RequestParam(value = "cursor", required = false) String cursor,
+                                                                      @RequestParam(value = "size", defaultValue = "50") int size) {
+        FileSortOrder sortOrder;
+        if ("id".equals(sort)) {
+            sortOrder = FileSortOrder.ID;
+        } else if ("fileName".equals(sort)) {
+            sortOrder = FileSortOrder.FILE_NAME;
+        } else {
+            return ResponseEntity.badRequest().body(new CustomApiResponse<>("Sort must be id or fileName!", null));
+        }
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().body(new CustomApiResponse<>("Size must be between 1 and " + MAX_PAGE_SIZE + "!", null));
+        }
+
+        try {
+            FilePageDTO page = fileService.getFilePage(sortOrder, cursor, size);
+            return ResponseEntity.ok(new CustomApiResponse<>("Files fetched successfully.", page));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(new CustomApiResponse<>(ex.getMessage(), null));
+        }
+    }
+
+    @Operation(
+            summary = "Search files by name and type",
+            description = "Find files whose name starts with (mode=prefix) or contains (mode=substring) q, ignoring case, optionally only of the content type given by type, either exact (image/png) or a family (image/*). Results come one page at a time in id order; pass the returned nextCursor to fetch the following page. Substring queries need at least 3 characters.",
+            tags = { "files" })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", content = { @Content(schema = @Schema(implementation = FilePageDTO.class), mediaType = "application/json") }),
+            @ApiResponse(responseCode = "400", content = { @Content(schema = @Schema()) })
+    })
+    @GetMapping("/search")
+    public ResponseEntity<CustomApiResponse<FilePageDTO>> searchFiles(@RequestParam(value = "q", defaultValue = "") String query,
+                                                                      @RequestParam(value = "mode", defaultValue = "substring") String mode,
+                                                                      @RequestParam(value = "type", required = false) String type,
+                                                                      @RequestParam(value = "cursor", required = false) String cursor,
+                                                                      @RequestParam(value = "size", defaultValue = "50") int size) {
+        FileSearchMode searchMode = parseSearchMode(mode);
+        String invalid = validateSearch(searchMode, query, type);
+        if (invalid != null) {
+            return ResponseEntity.badRequest().body(new CustomApiResponse<>(invalid, null));
+        }
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().body(new CustomApiResponse<>("Size must be between 1 and " + MAX_PAGE_SIZE + "!", null));
+        }
+
+        try {
+            FilePageDTO page = fileService.searchFiles(searchMode, query, type, cursor, size);
+            return ResponseEntity.ok(new CustomApiResponse<>("Files fetched successfully.", page));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(new CustomApiResponse<>(ex.getMessage(), null));
+        }
+    }
+
+    @Operation(
+            summary = "Stream all files",
+            description = "Get a list of all File meta data, written to the response row by row as it is read from the database instead of being built in memory first.",
+            tags = { "files" })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", content = { @Content(schema = @Schema(implementation = FileMetaDataDTO.class), mediaType = "application/json") })
+    })
+    @GetMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> streamAllFiles() {
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartObject();
+                generator.writeStringField("message", "All files fetched successfully.");
+                generator.writeArrayFieldStart("data");
+                fileService.streamFiles(dto -> {
+                    try {
+                        writer.writeValue(generator, dto);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    @Operation(
+            summary = "Retrieve meta data cache statistics",
+            description = "Get the size, hit, miss and eviction counts of the in-process File meta data cache.",
+            tags = { "files" })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", content = { @Content(schema = @Schema(implementation = CacheStatsDTO.class), mediaType = "application/json") })
+    })
+    @GetMapping("/cache/stats")
+    public ResponseEntity<CustomApiResponse<CacheStatsDTO>> getCacheStats() {
+        return ResponseEntity.ok(new CustomApiResponse<>("Cache statistics fetched successfully.", fileService.getCacheStats()));
+    }
+
     @Operation(
             summary = "Retrieve a File by Id",
-            description = "Get a File meta data object by specifying its id.",
+            description = "Get a File meta data object by specifying its id. The response carries an ETag and Last-Modified, so If-None-Match and If-Modified-Since are answered with 304 when the meta data is unchanged.",
             tags = { "files", "get" })
     @ApiResponses({
             @ApiResponse(responseCode = "200", content = { @Content(schema = @Schema(implementation = FileMetaDataDTO.class), mediaType = "application/json") }),
+            @ApiResponse(responseCode = "304", description = "Meta data not modified.", content = { @Content(schema = @Schema()) }),
             @ApiResponse(responseCode = "404", content = { @Content(schema = @Schema()) })
     })
     @GetMapping("/{id}")
     public ResponseEntity<CustomApiResponse<FileMetaDataDTO>> getFileById(@PathVariable Long id) {
         Optional<FileMetaData> file = fileService.getFileById(id);
-        return file.map(metaData -> ResponseEntity.ok(new CustomApiResponse<>("File fetched successfully.", convertToFileMetaDataDTO(metaData))))
+        // Spring MVC compares the validators with the conditional request headers and sends 304 itself
+        return file.map(metaData -> withValidators(ResponseEntity.ok(), ConditionalRequests.metaDataETag(metaData), metaData.getLastModified())
+                        .body(new CustomApiResponse<>("File fetched successfully.", convertToFileMetaDataDTO(metaData))))
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
@@ -79,6 +271,8 @@ public class FileController {
     @ApiResponses({
             @ApiResponse(responseCode = "200", content = { @Content(schema = @Schema(implementation = FileMetaDataDTO.class), mediaType = "application/json") }),
             @ApiResponse(responseCode = "400", content = { @Content(schema = @Schema()) }),
+            @ApiResponse(responseCode = "413", description = "File too large, rejected while it arrives.", content = { @Content(schema = @Schema()) }),
+            @ApiResponse(responseCode = "415", description = "File type not allowed or content not of that type.", content = { @Content(schema = @Schema()) }),
             @ApiResponse(responseCode = "500", content = { @Content(schema = @Schema()) })
     })
     @PostMapping("/upload")
@@ -87,24 +281,100 @@ public class FileController {
             return ResponseEntity.badRequest().body(new CustomApiResponse<>("Invalid file type or size!", null));
         }
 
-        String fileName = storeFile(file);
-        String fileType = file.getContentType();
-        long fileSize = file.getSize();
-
         FileMetaData metaData = new FileMetaData();
-        metaData.setFileName(fileName);
-        metaData.setFileType(fileType);
-        metaData.setFileSize(fileSize);
-        metaData.setFilePath(Paths.get(fileStorageLocation, fileName).toString());
+        metaData.setFileName(file.getOriginalFilename());
+        metaData.setFileType(file.getContentType());
 
-        FileMetaData savedFile = fileService.saveFile(metaData);
+        BlobService.StagedBlob content = stageFile(file);
+        FileMetaData savedFile;
+        try {
+            savedFile = groupCommitService.save(metaData, content);
+        } finally {
+            blobService.discard(content);
+        }
 
         return ResponseEntity.ok(new CustomApiResponse<>("File uploaded successfully.", convertToFileMetaDataDTO(savedFile)));
     }
 
+    @Operation(
+            summary = "Upload several files",
+            description = "Upload many files in one request. The files are written in parallel and their meta data saved together; the result lists, in request order, the saved meta data of each file or why it was rejected.",
+            tags = { "files", "upload" })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", content = { @Content(schema = @Schema(implementation = BatchUploadResultDTO.class), mediaType = "application/json") }),
+            @ApiResponse(responseCode = "400", content = { @Content(schema = @Schema()) }),
+            @ApiResponse(responseCode = "413", description = "A file or the request too large, rejected while it arrives.", content = { @Content(schema = @Schema()) }),
+            @ApiResponse(responseCode = "415", description = "A file type not allowed or content not of that type.", content = { @Content(schema = @Schema()) })
+    })
+    @PostMapping("/upload/batch")
+    public ResponseEntity<CustomApiResponse<List<BatchUploadResultDTO>>> uploadFiles(@RequestParam("files") List<MultipartFile> files) throws InterruptedException {
+        if (files.isEmpty() || files.size() > maxBatchFiles) {
+            return ResponseEntity.badRequest().body(new CustomApiResponse<>("Between 1 and " + maxBatchFiles + " files must be uploaded!", null));
+        }
+
+        List<FileMetaData> accepted = new ArrayList<>();
+        List<MultipartFile> acceptedContents = new ArrayList<>();
+        for (MultipartFile file : files) {
+            if (isValidFile(file)) {
+                FileMetaData metaData = new FileMetaData();
+                metaData.setFileName(file.getOriginalFilename());
+                metaData.setFileType(file.getContentType());
+                accepted.add(metaData);
+                acceptedContents.add(file);
+            }
+        }
+        List<BatchUploadService.Result> saved = accepted.isEmpty()
+                ? List.of() : batchUploadService.upload(accepted, acceptedContents);
+
+        List<BatchUploadResultDTO> results = new ArrayList<>(files.size());
+        int next = 0;
+        int uploaded = 0;
+        for (MultipartFile file : files) {
+            if (next < acceptedContents.size() && acceptedContents.get(next) == file) {
+                BatchUploadService.Result result = saved.get(next++);
+                if (result.isSuccess()) {
+                    uploaded++;
+                    results.add(new BatchUploadResultDTO(file.getOriginalFilename(), true, "File uploaded successfully.",
+                            convertToFileMetaDataDTO(result.getFile())));
+                } else {
+                    results.add(new BatchUploadResultDTO(file.getOriginalFilename(), false, result.getError(), null));
+                }
+            } else {
+                results.add(new BatchUploadResultDTO(file.getOriginalFilename(), false, "Invalid file type or size!", null));
+            }
+        }
+        return ResponseEntity.ok(new CustomApiResponse<>(uploaded + " of " + files.size() + " files uploaded successfully.", results));
+    }
+
+    @Operation(
+            summary = "Upload a file by its content hash",
+            description = "Create a file from content the server already stores, identified by its SHA-256 digest and size. No bytes are transferred; if the content is unknown, upload the file instead.",
+            tags = { "files", "upload" })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", content = { @Content(schema = @Schema(implementation = FileMetaDataDTO.class), mediaType = "application/json") }),
+            @ApiResponse(responseCode = "400", content = { @Content(schema = @Schema()) }),
+            @ApiResponse(responseCode = "404", description = "Content not stored yet.", content = { @Content(schema = @Schema()) })
+    })
+    @PostMapping("/instant")
+    public ResponseEntity<CustomApiResponse<FileMetaDataDTO>> instantUpload(@RequestBody InstantUploadRequest request) {
+        String contentHash = request.getContentHash() == null ? "" : request.getContentHash().toLowerCase(Locale.ROOT);
+        if (!FileValidation.hasAllowedExtension(request.getFileName()) || !SHA256_PATTERN.matcher(contentHash).matches()) {
+            return ResponseEntity.badRequest().body(new CustomApiResponse<>("Invalid file type or content hash!", null));
+        }
+
+        FileMetaData metaData = new FileMetaData();
+        metaData.setFileName(request.getFileName());
+        metaData.setFileType(request.getFileType());
+
+        return fileService.saveFileByContentHash(metaData, contentHash, request.getFileSize())
+                .map(savedFile -> ResponseEntity.ok(new CustomApiResponse<>("File uploaded successfully.", convertToFileMetaDataDTO(savedFile))))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(new CustomApiResponse<>("Content not found, upload the file instead.", null)));
+    }
+
     @Operation(
             summary = "Download a file by its Id",
-            description = "Retrieve the actual content of a file given its meta data ID. This endpoint will provide the file as a byte array, allowing for direct downloads.",
+            description = "Retrieve the actual content of a file given its meta data ID. The file is streamed from disk rather than loaded into memory, allowing for direct downloads of large files. Range requests are supported for resuming and parallel segment downloads. The ETag is the SHA-256 digest of the content; If-None-Match and If-Modified-Since are answered with 304 and If-Match with 412 without reading the file. Content stored compressed is sent as stored, with Content-Encoding, when Accept-Encoding allows it, and decompressed on the fly otherwise.",
             tags = { "files", "download" }
     )
     @ApiResponses({
@@ -113,11 +383,31 @@ public class FileController {
                     description = "Successful retrieval of file.",
                     content = @Content(schema = @Schema(type = "string", format = "binary"), mediaType = "*/*")
             ),
+            @ApiResponse(
+                    responseCode = "206",
+                    description = "Requested byte range(s) of the file. Several ranges are returned as multipart/byteranges.",
+                    content = @Content(schema = @Schema(type = "string", format = "binary"), mediaType = "*/*")
+            ),
+            @ApiResponse(
+                    responseCode = "304",
+                    description = "File not modified.",
+                    content = @Content
+            ),
             @ApiResponse(
                     responseCode = "404",
                     description = "File not found.",
                     content = @Content
             ),
+            @ApiResponse(
+                    responseCode = "412",
+                    description = "Precondition failed.",
+                    content = @Content
+            ),
+            @ApiResponse(
+                    responseCode = "416",
+                    description = "Requested range not satisfiable.",
+                    content = @Content
+            ),
             @ApiResponse(
                     responseCode = "500",
                     description = "Internal server error.",
@@ -125,7 +415,7 @@ public class FileController {
             )
     })
     @GetMapping("/download/{id}")
-    public ResponseEntity<byte[]> downloadFile(@PathVariable Long id) {
+    public ResponseEntity<Resource> downloadFile(@PathVariable Long id, HttpServletRequest request) {
         Optional<FileMetaData> fileMetaDataOptional = fileService.getFileById(id);
 
         if (!fileMetaDataOptional.isPresent()) {
@@ -133,22 +423,155 @@ public class FileController {
         }
 
         FileMetaData fileMetaData = fileMetaDataOptional.get();
-        Path filePath = Paths.get(fileMetaData.getFilePath());
+        ContentEncoding storedEncoding = fileMetaData.getContentEncoding();
+        ContentEncoding sentEncoding = storedEncoding != null && storedEncoding.isAcceptedBy(request.getHeader(HttpHeaders.ACCEPT_ENCODING))
+                ? storedEncoding : null;
+        String etag = ConditionalRequests.downloadETag(fileMetaData, sentEncoding);
+        Instant lastModified = fileMetaData.getLastModified();
+        HttpStatus precondition = ConditionalRequests.evaluate(new ServletServerHttpRequest(request).getHeaders(), etag, lastModified);
+        if (precondition != null) {
+            // answered from the meta data alone, without touching the stored content
+            return withEncoding(withValidators(ResponseEntity.status(precondition), etag, lastModified), storedEncoding, sentEncoding).build();
+        }
+
+        Resource content;
+        Path localFile;
+        if (fileMetaData.getContentHash() == null) {
+            // stored before the blob store existed, directly at its recorded path
+            localFile = Paths.get(fileMetaData.getFilePath()).toAbsolutePath().normalize();
+            content = new FileSystemResource(localFile);
+        } else if (storedEncoding != null && sentEncoding == null) {
+            // the client cannot take the stored compressed bytes, so they are decompressed while sent
+            localFile = null;
+            content = blobService.content(fileMetaData.getContentHash(), storedEncoding, fileMetaData.getFileSize());
+        } else {
+            StorageResource stored = blobService.resource(fileMetaData.getContentHash());
+            localFile = stored.getLocalPath().orElse(null);
+            content = stored;
+        }
 
         try {
-            byte[] fileContent = Files.readAllBytes(filePath);
-            return ResponseEntity.ok()
+            long contentLength = content.contentLength();
+            ResponseEntity.BodyBuilder response = withEncoding(withValidators(ResponseEntity.ok(), etag, lastModified), storedEncoding, sentEncoding)
                     .header("Content-Type", fileMetaData.getFileType())
                     .header("Content-Disposition", "attachment; filename=\"" + fileMetaData.getFileName() + "\"")
-                    .body(fileContent);
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+            String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+            if (rangeHeader == null) {
+                response.contentLength(contentLength);
+                if (localFile != null && prepareSendfile(request, localFile, 0, contentLength)) {
+                    return response.build();
+                }
+                return response.body(content);
+            }
+
+            String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+            if (ifRange != null && !ConditionalRequests.ifRangeMatches(ifRange, etag, lastModified)) {
+                // The client's copy is outdated, so the whole current file is sent instead of the range.
+                // InputStreamResource is not range-processed by Spring MVC, unlike other Resource bodies.
+                response.contentLength(contentLength);
+                return response.body(new InputStreamResource(content.getInputStream()));
+            }
+
+            ResponseEntity<Resource> singleRange = singleRange(request, fileMetaData, etag, sentEncoding, content, localFile, contentLength, rangeHeader);
+            if (singleRange != null) {
+                return singleRange;
+            }
+            // Spring MVC answers a Range request for a Resource body itself: 206 with a single part or
+            // multipart/byteranges, or 416 when unsatisfiable. Each region is read by seeking into the file.
+            return response.body(content);
         } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    @Operation(
+            summary = "Download several files as a ZIP archive",
+            description = "Download the files with the given ids, or the files a search with q, mode and type (as for /search) finds, as one ZIP archive. The archive is streamed while it is built, so its size is not known in advance. PNG, JPEG, DOCX and XLSX files are stored as they are, other files deflated. Ids of files that do not exist are skipped.",
+            tags = { "files", "download" }
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", content = { @Content(schema = @Schema(type = "string", format = "binary"), mediaType = "application/zip") }),
+            @ApiResponse(responseCode = "400", content = { @Content(schema = @Schema()) }),
+            @ApiResponse(responseCode = "404", description = "No file found.", content = { @Content(schema = @Schema()) })
+    })
+    @GetMapping("/download/zip")
+    public ResponseEntity<?> downloadZip(@RequestParam(value = "ids", required = false) List<Long> ids,
+                                         @RequestParam(value = "q", defaultValue = "") String query,
+                                         @RequestParam(value = "mode", defaultValue = "substring") String mode,
+                                         @RequestParam(value = "type", required = false) String type) {
+        List<Long> fileIds;
+        if (ids != null) {
+            fileIds = new ArrayList<>(new LinkedHashSet<>(ids));
+            if (fileIds.isEmpty() || fileIds.size() > maxZipFiles || fileIds.contains(null)) {
+                return ResponseEntity.badRequest().body(new CustomApiResponse<>("Between 1 and " + maxZipFiles + " ids must be given!", null));
+            }
+        } else {
+            FileSearchMode searchMode = parseSearchMode(mode);
+            String invalid = validateSearch(searchMode, query, type);
+            if (invalid != null) {
+                return ResponseEntity.badRequest().body(new CustomApiResponse<>(invalid, null));
+            }
+            fileIds = archiveService.searchIds(searchMode, query, type, maxZipFiles);
+            if (fileIds.size() > maxZipFiles) {
+                return ResponseEntity.badRequest().body(new CustomApiResponse<>("More than " + maxZipFiles + " files found!", null));
+            }
+        }
+        if (fileIds.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        StreamingResponseBody body = outputStream -> archiveService.writeZip(fileIds, outputStream);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"files.zip\"")
+                .body(body);
+    }
+
+    @Operation(
+            summary = "Retrieve the thumbnail of an image file",
+            description = "Get a thumbnail of a PNG or JPEG file, generated in the background after upload. Returns 404 until it has been generated. Requested with v set to the file's content hash, the response may be cached for a long time, since a new version of the file has another hash; otherwise it has to be revalidated, which If-None-Match answers with 304.",
+            tags = { "files", "download" }
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", content = { @Content(schema = @Schema(type = "string", format = "binary"), mediaType = "image/*") }),
+            @ApiResponse(responseCode = "304", description = "Thumbnail not modified.", content = { @Content(schema = @Schema()) }),
+            @ApiResponse(responseCode = "404", description = "File not found, not an image, or thumbnail not generated yet.", content = { @Content(schema = @Schema()) })
+    })
+    @GetMapping("/thumbnail/{id}")
+    public ResponseEntity<Resource> getThumbnail(@PathVariable Long id, @RequestParam(value = "v", required = false) String version,
+                                                 HttpServletRequest request) {
+        Optional<FileMetaData> file = fileService.getFileById(id);
+        if (!file.isPresent() || !thumbnailService.supports(file.get())) {
+            return ResponseEntity.notFound().build();
+        }
+        Optional<FileDerivative> thumbnail = thumbnailService.findThumbnail(file.get());
+        if (!thumbnail.isPresent()) {
+            // skipped while the queue was full; a no-op if still queued or if generating it has recently failed
+            thumbnailService.schedule(id, file.get().getContentHash());
+            return ResponseEntity.notFound().build();
+        }
+
+        FileDerivative derivative = thumbnail.get();
+        String etag = ConditionalRequests.contentETag(derivative.getContentHash());
+        CacheControl cacheControl = file.get().getContentHash().equals(version)
+                ? CacheControl.maxAge(thumbnailMaxAge).cachePrivate().immutable()
+                : CacheControl.noCache().cachePrivate();
+        HttpStatus precondition = ConditionalRequests.evaluate(new ServletServerHttpRequest(request).getHeaders(), etag, derivative.getCreatedAt());
+        if (precondition != null) {
+            return withValidators(ResponseEntity.status(precondition), etag, derivative.getCreatedAt()).cacheControl(cacheControl).build();
+        }
+        return withValidators(ResponseEntity.ok(), etag, derivative.getCreatedAt())
+                .cacheControl(cacheControl)
+                .contentType(MediaType.parseMediaType(derivative.getContentType()))
+                .contentLength(derivative.getSize())
+                .body(blobService.resource(derivative.getContentHash()));
+    }
+
     @Operation(
             summary = "Delete a file meta data by its Id",
-            description = "Delete the meta data information of a file given its ID. This will not delete the actual file but only its reference in the system.",
+            description = "Delete the meta data information of a file given its ID. The stored content is removed in the background once no other file refers to the same content.",
             tags = { "files", "delete" }
     )
     @ApiResponses({
@@ -169,9 +592,32 @@ public class FileController {
         return ResponseEntity.ok(new CustomApiResponse<>("File deleted successfully.", null));
     }
 
+    @Operation(
+            summary = "Delete several files by their Ids",
+            description = "Delete the meta data of many files in one statement. Stored content no other file refers to is removed in the background. Ids of files that do not exist are reported as not found.",
+            tags = { "files", "delete" }
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", content = { @Content(schema = @Schema(implementation = BatchDeleteResultDTO.class), mediaType = "application/json") }),
+            @ApiResponse(responseCode = "400", content = { @Content(schema = @Schema()) })
+    })
+    @PostMapping("/delete/batch")
+    public ResponseEntity<CustomApiResponse<BatchDeleteResultDTO>> deleteFiles(@RequestBody BatchDeleteRequest request) {
+        List<Long> ids = request.getIds() == null ? List.of() : new ArrayList<>(new LinkedHashSet<>(request.getIds()));
+        if (ids.isEmpty() || ids.size() > maxBatchDeletes || ids.contains(null)) {
+            return ResponseEntity.badRequest().body(new CustomApiResponse<>("Between 1 and " + maxBatchDeletes + " ids must be given!", null));
+        }
+
+        List<Long> deleted = fileService.deleteFiles(ids);
+        HashSet<Long> deletedIds = new HashSet<>(deleted);
+        List<Long> notFound = ids.stream().filter(id -> !deletedIds.contains(id)).collect(Collectors.toList());
+        return ResponseEntity.ok(new CustomApiResponse<>(deleted.size() + " files deleted successfully.",
+                new BatchDeleteResultDTO(deleted, notFound)));
+    }
+
     @Operation(
             summary = "Update file and its meta data by its Id",
-            description = "Update the content and meta data of a file given its ID. This requires uploading a new file that will replace the old one.",
+            description = "Update the content and meta data of a file given its ID. This requires uploading a new file that will replace the old one. Send If-Match with the ETag of the download or the meta data to update only the version you have; if the file has changed since, 412 is returned. Without If-Match the file is updated whatever its version.",
             tags = { "files", "update" }
     )
     @ApiResponses({
@@ -190,6 +636,21 @@ public class FileController {
                     description = "File not found.",
                     content = @Content
             ),
+            @ApiResponse(
+                    responseCode = "413",
+                    description = "File too large, rejected while it arrives.",
+                    content = @Content
+            ),
+            @ApiResponse(
+                    responseCode = "415",
+                    description = "File type not allowed or content not of that type.",
+                    content = @Content
+            ),
+            @ApiResponse(
+                    responseCode = "412",
+                    description = "The file has been modified since the version named by If-Match.",
+                    content = @Content
+            ),
             @ApiResponse(
                     responseCode = "500",
                     description = "Internal server error.",
@@ -197,12 +658,17 @@ public class FileController {
             )
     })
     @PutMapping("/{id}")
-    public ResponseEntity<CustomApiResponse<FileMetaDataDTO>> updateFile(@PathVariable Long id, @RequestParam("file") MultipartFile file) throws IOException {
+    public ResponseEntity<CustomApiResponse<FileMetaDataDTO>> updateFile(@PathVariable Long id, @RequestParam("file") MultipartFile file,
+                                                                         @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) throws IOException {
         Optional<FileMetaData> existingFileMetaData = fileService.getFileById(id);
 
         if (!existingFileMetaData.isPresent()) {
             return ResponseEntity.notFound().build();
         }
+        // checked here to spare staging an upload that is bound to fail, and again on the locked row
+        if (ifMatch != null && !ConditionalRequests.ifMatch(ifMatch, existingFileMetaData.get())) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(new CustomApiResponse<>("File has been modified!", null));
+        }
 
         if (!isValidFile(file)) {
             return ResponseEntity.badRequest().body(new CustomApiResponse<>("Invalid file type or size!", null));
@@ -210,42 +676,144 @@ public class FileController {
 
         FileMetaData updatedMetaData = existingFileMetaData.get();
         updatedMetaData.setFileName(file.getOriginalFilename());
-        updatedMetaData.setFileSize(file.getSize());
         updatedMetaData.setFileType(file.getContentType());
 
-        Path targetLocation = Paths.get(fileStorageLocation).resolve(file.getOriginalFilename());
-        Files.copy(file.getInputStream(), targetLocation);
+        BlobService.StagedBlob content = stageFile(file);
+        Optional<FileMetaData> savedMetaData;
+        try {
+            savedMetaData = fileService.replaceFileContent(updatedMetaData, content,
+                    current -> ifMatch == null || ConditionalRequests.ifMatch(ifMatch, current));
+        } catch (FileService.PreconditionFailedException ex) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(new CustomApiResponse<>("File has been modified!", null));
+        } finally {
+            blobService.discard(content);
+        }
 
-        FileMetaData savedMetaData = fileService.saveFile(updatedMetaData);
+        return savedMetaData
+                .map(saved -> withValidators(ResponseEntity.ok(), ConditionalRequests.metaDataETag(saved), saved.getLastModified())
+                        .body(new CustomApiResponse<>("File updated successfully.", convertToFileMetaDataDTO(saved))))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
 
-        return ResponseEntity.ok(new CustomApiResponse<>("File updated successfully.", convertToFileMetaDataDTO(savedMetaData)));
+    private static FileSearchMode parseSearchMode(String mode) {
+        if ("prefix".equals(mode)) {
+            return FileSearchMode.PREFIX;
+        }
+        if ("substring".equals(mode)) {
+            return FileSearchMode.SUBSTRING;
+        }
+        return null;
     }
 
-    private boolean isValidFile(MultipartFile file) {
-        String[] allowedExtensions = { "png", "jpeg", "jpg", "docx", "pdf", "xlsx" };
-        String originalFileName = file.getOriginalFilename();
-        String fileExtension = originalFileName.substring(originalFileName.lastIndexOf(".") + 1);
-        boolean validExtension = Arrays.stream(allowedExtensions).anyMatch(ext -> ext.equalsIgnoreCase(fileExtension));
+    private String validateSearch(FileSearchMode searchMode, String query, String type) {
+        if (searchMode == null) {
+            return "Mode must be prefix or substring!";
+        }
+        if (query.isEmpty() && (type == null || type.isBlank())) {
+            return "A query or a type must be given!";
+        }
+        if (searchMode == FileSearchMode.SUBSTRING && !query.isEmpty() && query.length() < minSubstringLength) {
+            return "Substring queries need at least " + minSubstringLength + " characters!";
+        }
+        return null;
+    }
 
-        boolean validSize = file.getSize() <= 5 * 1024 * 1024;
+    private static <B extends ResponseEntity.HeadersBuilder<B>> B withValidators(B builder, String etag, Instant lastModified) {
+        builder.eTag(etag);
+        if (lastModified != null) {
+            builder.lastModified(lastModified);
+        }
+        return builder;
+    }
 
-        return validExtension && validSize;
+    /**
+     * Marks the response as depending on Accept-Encoding when the content is stored compressed, and names the
+     * content-coding when the stored bytes are sent as they are. Byte ranges then refer to the compressed bytes.
+     */
+    private static <B extends ResponseEntity.HeadersBuilder<B>> B withEncoding(B builder, ContentEncoding storedEncoding,
+                                                                               ContentEncoding sentEncoding) {
+        if (storedEncoding != null) {
+            builder.varyBy(HttpHeaders.ACCEPT_ENCODING);
+        }
+        if (sentEncoding != null) {
+            builder.header(HttpHeaders.CONTENT_ENCODING, sentEncoding.getToken());
+        }
+        return builder;
     }
 
-    private String storeFile(MultipartFile file) {
-        try {
-            Path fileStoragePath = Paths.get(fileStorageLocation).toAbsolutePath().normalize();
-            Files.createDirectories(fileStoragePath);
+    private boolean isValidFile(MultipartFile file) {
+        boolean validExtension = FileValidation.hasAllowedExtension(file.getOriginalFilename());
 
-            Path targetPath = fileStoragePath.resolve(file.getOriginalFilename());
-            file.transferTo(targetPath);
+        boolean validSize = file.getSize() <= FileValidation.MAX_FILE_SIZE;
 
-            return file.getOriginalFilename();
+        return validExtension && validSize;
+    }
+
+    private BlobService.StagedBlob stageFile(MultipartFile file) {
+        try (InputStream content = file.getInputStream()) {
+            return blobService.stage(content);
         } catch (IOException ex) {
             throw new RuntimeException("Error saving file", ex);
         }
     }
 
+    /**
+     * Hands the file over to the servlet container's sendfile support so the bytes go from the page cache
+     * straight to the socket without passing through the heap. Returns false when the connector does not
+     * support it or the file is too small to be worth it, in which case the caller streams the file itself.
+     */
+    private boolean prepareSendfile(HttpServletRequest request, Path filePath, long start, long end) {
+        if (!sendfileEnabled || end - start < sendfileMinSize
+                || !Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR))) {
+            return false;
+        }
+        request.setAttribute(SENDFILE_FILENAME_ATTR, filePath.toString());
+        request.setAttribute(SENDFILE_START_ATTR, start);
+        request.setAttribute(SENDFILE_END_ATTR, end);
+        return true;
+    }
+
+    /**
+     * Builds the 206 response for a single satisfiable range, served through sendfile or read from the storage
+     * backend starting at the range, or returns null to let the range be handled by Spring MVC (several ranges,
+     * unsatisfiable or malformed ranges, legacy files without sendfile).
+     */
+    private ResponseEntity<Resource> singleRange(HttpServletRequest request, FileMetaData fileMetaData, String etag, ContentEncoding sentEncoding,
+                                                 Resource content, Path localFile, long contentLength, String rangeHeader) throws IOException {
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+        if (ranges.size() != 1) {
+            return null;
+        }
+
+        HttpRange range = ranges.get(0);
+        long first = range.getRangeStart(contentLength);
+        long last = range.getRangeEnd(contentLength);
+        if (first >= contentLength || first > last) {
+            return null;
+        }
+        ResponseEntity.BodyBuilder response = withEncoding(withValidators(ResponseEntity.status(HttpStatus.PARTIAL_CONTENT), etag,
+                        fileMetaData.getLastModified()), fileMetaData.getContentEncoding(), sentEncoding)
+                .header("Content-Type", fileMetaData.getFileType())
+                .header("Content-Disposition", "attachment; filename=\"" + fileMetaData.getFileName() + "\"")
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .header(HttpHeaders.CONTENT_RANGE, "bytes " + first + "-" + last + "/" + contentLength)
+                .contentLength(last - first + 1);
+        if (localFile != null && prepareSendfile(request, localFile, first, last + 1)) {
+            return response.build();
+        }
+        if (content instanceof StorageResource stored) {
+            // Spring MVC would read and discard everything before the range, which for a remote store means
+            // downloading it
+            return response.body(new InputStreamResource(stored.getInputStream(first, last - first + 1)));
+        }
+        return null;
+    }
+
     private FileMetaDataDTO convertToFileMetaDataDTO(FileMetaData metaData) {
         FileMetaDataDTO dto = new FileMetaDataDTO();
         dto.setId(metaData.getId());
@@ -253,6 +821,7 @@ public class FileController {
         dto.setFileType(metaData.getFileType());
         dto.setFileSize(metaData.getFileSize());
         dto.setFilePath(metaData.getFilePath());
+        dto.setContentHash(metaData.getContentHash());
         return dto;
     }
 
@@ -263,6 +832,7 @@ public class FileController {
         metaData.setFileType(dto.getFileType());
         metaData.setFileSize(dto.getFileSize());
         metaData.setFilePath(dto.getFilePath());
+        metaData.setContentHash(dto.getContentHash());
         return metaData;
     }
 
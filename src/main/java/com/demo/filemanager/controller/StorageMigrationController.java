@@ -0,0 +1,63 @@
+package com.demo.filemanager.controller;
+
+import com.demo.filemanager.dto.StorageMigrationDTO;
+import com.demo.filemanager.model.response.CustomApiResponse;
+import com.demo.filemanager.service.StorageMigrationService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Optional;
+
+@Tag(name = "Storage migration", description = "Administrative APIs for moving flat stored files into the blob store")
+@RestController
+@RequestMapping("/api/admin/storage/migration")
+@RequiredArgsConstructor
+public class StorageMigrationController {
+
+    private final StorageMigrationService storageMigrationService;
+
+    @Operation(
+            summary = "Start the storage migration",
+            description = "Move files stored directly under the storage location into the hash-sharded blob store, in the background and without downtime.",
+            tags = { "admin" })
+    @ApiResponses({
+            @ApiResponse(responseCode = "202", content = { @Content(schema = @Schema(implementation = StorageMigrationDTO.class), mediaType = "application/json") }),
+            @ApiResponse(responseCode = "409", content = { @Content(schema = @Schema()) })
+    })
+    @PostMapping
+    public ResponseEntity<CustomApiResponse<StorageMigrationDTO>> startMigration() {
+        if (!storageMigrationService.start()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new CustomApiResponse<>("Storage migration is already running.", null));
+        }
+        return ResponseEntity.accepted().body(new CustomApiResponse<>("Storage migration started.",
+                storageMigrationService.getStatus().orElse(null)));
+    }
+
+    @Operation(
+            summary = "Retrieve the storage migration status",
+            description = "Get the progress of the running or most recent storage migration.",
+            tags = { "admin" })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", content = { @Content(schema = @Schema(implementation = StorageMigrationDTO.class), mediaType = "application/json") }),
+            @ApiResponse(responseCode = "404", content = { @Content(schema = @Schema()) })
+    })
+    @GetMapping
+    public ResponseEntity<CustomApiResponse<StorageMigrationDTO>> getMigrationStatus() {
+        Optional<StorageMigrationDTO> status = storageMigrationService.getStatus();
+        if (!status.isPresent()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(new CustomApiResponse<>("Storage migration status fetched successfully.", status.get()));
+    }
+}
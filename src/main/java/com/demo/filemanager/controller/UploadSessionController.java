@@ -0,0 +1,166 @@
+package com.demo.filemanager.controller;
+
+import com.demo.filemanager.dao.request.CreateUploadSessionRequest;
+import com.demo.filemanager.dto.FileMetaDataDTO;
+import com.demo.filemanager.dto.UploadSessionDTO;
+import com.demo.filemanager.model.FileMetaData;
+import com.demo.filemanager.model.UploadSession;
+import com.demo.filemanager.model.response.CustomApiResponse;
+import com.demo.filemanager.service.UploadSessionService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.Optional;
+
+@Tag(name = "Upload session", description = "Resumable chunked upload APIs")
+@RestController
+@RequestMapping("/api/files/uploads")
+@RequiredArgsConstructor
+public class UploadSessionController {
+
+    private final UploadSessionService uploadSessionService;
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadSessionController.class);
+
+    @Operation(
+            summary = "Create an upload session",
+            description = "Start a resumable upload. Parts are then sent to the session and committed into a single file.",
+            tags = { "files", "upload" })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", content = { @Content(schema = @Schema(implementation = UploadSessionDTO.class), mediaType = "application/json") }),
+            @ApiResponse(responseCode = "400", content = { @Content(schema = @Schema()) })
+    })
+    @PostMapping
+    public ResponseEntity<CustomApiResponse<UploadSessionDTO>> createSession(@RequestBody CreateUploadSessionRequest request) throws IOException {
+        try {
+            UploadSession session = uploadSessionService.createSession(request.getFileName(), request.getFileType());
+            return ResponseEntity.ok(new CustomApiResponse<>("Upload session created successfully.", convertToUploadSessionDTO(session)));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(new CustomApiResponse<>(ex.getMessage(), null));
+        }
+    }
+
+    @Operation(
+            summary = "Retrieve an upload session",
+            description = "Get an upload session together with the numbers of the parts received so far.",
+            tags = { "files", "upload" })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", content = { @Content(schema = @Schema(implementation = UploadSessionDTO.class), mediaType = "application/json") }),
+            @ApiResponse(responseCode = "404", content = { @Content(schema = @Schema()) })
+    })
+    @GetMapping("/{sessionId}")
+    public ResponseEntity<CustomApiResponse<UploadSessionDTO>> getSession(@PathVariable String sessionId) throws IOException {
+        Optional<UploadSession> session = findSession(sessionId);
+        if (!session.isPresent()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(new CustomApiResponse<>("Upload session fetched successfully.", convertToUploadSessionDTO(session.get())));
+    }
+
+    @Operation(
+            summary = "Upload a part",
+            description = "Send the raw bytes of one numbered part (starting at 1). Parts may be sent in any order or in parallel, and re-sending a part replaces it.",
+            tags = { "files", "upload" })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", content = { @Content(schema = @Schema(implementation = CustomApiResponse.class), mediaType = "application/json") }),
+            @ApiResponse(responseCode = "400", content = { @Content(schema = @Schema()) }),
+            @ApiResponse(responseCode = "404", content = { @Content(schema = @Schema()) }),
+            @ApiResponse(responseCode = "409", content = { @Content(schema = @Schema()) })
+    })
+    @PutMapping("/{sessionId}/parts/{partNumber}")
+    public ResponseEntity<CustomApiResponse<String>> uploadPart(@PathVariable String sessionId, @PathVariable int partNumber,
+                                                                HttpServletRequest request) throws IOException {
+        if (!findSession(sessionId).isPresent()) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            uploadSessionService.storePart(sessionId, partNumber, request.getInputStream());
+            return ResponseEntity.ok(new CustomApiResponse<>("Part uploaded successfully.", null));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(new CustomApiResponse<>(ex.getMessage(), null));
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new CustomApiResponse<>(ex.getMessage(), null));
+        }
+    }
+
+    @Operation(
+            summary = "Commit an upload session",
+            description = "Assemble parts 1..n into a single file and save its meta data. All parts must have been received.",
+            tags = { "files", "upload" })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", content = { @Content(schema = @Schema(implementation = FileMetaDataDTO.class), mediaType = "application/json") }),
+            @ApiResponse(responseCode = "404", content = { @Content(schema = @Schema()) }),
+            @ApiResponse(responseCode = "409", content = { @Content(schema = @Schema()) })
+    })
+    @PostMapping("/{sessionId}/commit")
+    public ResponseEntity<CustomApiResponse<FileMetaDataDTO>> commitSession(@PathVariable String sessionId) throws IOException {
+        if (!findSession(sessionId).isPresent()) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            FileMetaData savedFile = uploadSessionService.commit(sessionId);
+            return ResponseEntity.ok(new CustomApiResponse<>("File uploaded successfully.", convertToFileMetaDataDTO(savedFile)));
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new CustomApiResponse<>(ex.getMessage(), null));
+        }
+    }
+
+    @Operation(
+            summary = "Abort an upload session",
+            description = "Discard an upload session and all parts received so far.",
+            tags = { "files", "upload" })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", content = { @Content(schema = @Schema(implementation = CustomApiResponse.class), mediaType = "application/json") }),
+            @ApiResponse(responseCode = "404", content = { @Content(schema = @Schema()) })
+    })
+    @DeleteMapping("/{sessionId}")
+    public ResponseEntity<CustomApiResponse<String>> abortSession(@PathVariable String sessionId) throws IOException {
+        if (!findSession(sessionId).isPresent()) {
+            return ResponseEntity.notFound().build();
+        }
+        uploadSessionService.abort(sessionId);
+        return ResponseEntity.ok(new CustomApiResponse<>("Upload session aborted successfully.", null));
+    }
+
+    private Optional<UploadSession> findSession(String sessionId) {
+        try {
+            return uploadSessionService.getSession(sessionId);
+        } catch (IllegalArgumentException ex) {
+            return Optional.empty();
+        }
+    }
+
+    private UploadSessionDTO convertToUploadSessionDTO(UploadSession session) throws IOException {
+        UploadSessionDTO dto = new UploadSessionDTO();
+        dto.setId(session.getId());
+        dto.setFileName(session.getFileName());
+        dto.setFileType(session.getFileType());
+        dto.setStatus(session.getStatus().name());
+        dto.setReceivedParts(uploadSessionService.getReceivedParts(session.getId()));
+        dto.setExpiresAt(uploadSessionService.expiresAt(session));
+        return dto;
+    }
+
+    private FileMetaDataDTO convertToFileMetaDataDTO(FileMetaData metaData) {
+        FileMetaDataDTO dto = new FileMetaDataDTO();
+        dto.setId(metaData.getId());
+        dto.setFileName(metaData.getFileName());
+        dto.setFileType(metaData.getFileType());
+        dto.setFileSize(metaData.getFileSize());
+        dto.setFilePath(metaData.getFilePath());
+        dto.setContentHash(metaData.getContentHash());
+        return dto;
+    }
+}
@@ -0,0 +1,15 @@
+package com.demo.filemanager.dao.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CreateUploadSessionRequest {
+    private String fileName;
+    private String fileType;
+}
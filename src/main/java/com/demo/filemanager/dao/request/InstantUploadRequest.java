@@ -0,0 +1,17 @@
+package com.demo.filemanager.dao.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class InstantUploadRequest {
+    private String fileName;
+    private String fileType;
+    private String contentHash;
+    private long fileSize;
+}
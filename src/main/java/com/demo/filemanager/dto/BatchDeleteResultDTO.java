@@ -0,0 +1,15 @@
+package com.demo.filemanager.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchDeleteResultDTO {
+    private List<Long> deleted;
+    private List<Long> notFound;
+}
@@ -0,0 +1,15 @@
+package com.demo.filemanager.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchUploadResultDTO {
+    private String fileName;
+    private boolean success;
+    private String message;
+    private FileMetaDataDTO file;
+}
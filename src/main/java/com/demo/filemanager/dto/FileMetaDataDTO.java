@@ -1,12 +1,17 @@
 package com.demo.filemanager.dto;
 
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 @Data
+@NoArgsConstructor
+@AllArgsConstructor
 public class FileMetaDataDTO {
     private Long id;
     private String fileName;
     private String filePath;
     private String fileType;
     private long fileSize;
-}
\ No newline at end of file
+    private String contentHash;
+}
@@ -0,0 +1,18 @@
+package com.demo.filemanager.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FilePageDTO {
+    private List<FileMetaDataDTO> items;
+    /**
+     * Opaque cursor to pass back for the next page, or null on the last page.
+     */
+    private String nextCursor;
+}
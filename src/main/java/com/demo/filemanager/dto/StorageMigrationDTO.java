@@ -0,0 +1,18 @@
+package com.demo.filemanager.dto;
+
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+public class StorageMigrationDTO {
+    private String state;
+    private long scanned;
+    private long migrated;
+    private long skipped;
+    private long missing;
+    private long failed;
+    private long removed;
+    private Instant startedAt;
+    private Instant finishedAt;
+}
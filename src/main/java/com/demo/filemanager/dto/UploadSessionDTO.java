@@ -0,0 +1,16 @@
+package com.demo.filemanager.dto;
+
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+public class UploadSessionDTO {
+    private String id;
+    private String fileName;
+    private String fileType;
+    private String status;
+    private List<Integer> receivedParts;
+    private Instant expiresAt;
+}
@@ -0,0 +1,5 @@
+package com.demo.filemanager.enums;
+
+public enum DerivativeKind {
+    THUMBNAIL
+}
@@ -0,0 +1,6 @@
+package com.demo.filemanager.enums;
+
+public enum FileSortOrder {
+    ID,
+    FILE_NAME
+}
@@ -0,0 +1,6 @@
+package com.demo.filemanager.enums;
+
+public enum PurgeTarget {
+    BLOB,
+    LEGACY_FILE
+}
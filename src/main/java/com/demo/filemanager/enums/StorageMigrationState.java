@@ -0,0 +1,7 @@
+package com.demo.filemanager.enums;
+
+public enum StorageMigrationState {
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,29 @@
+package com.demo.filemanager.model;
+
+import com.demo.filemanager.enums.ContentEncoding;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import lombok.Data;
+
+/**
+ * A stored file body, kept once per SHA-256 digest and shared by every {@link FileMetaData} with that content.
+ */
+@Entity
+@Data
+public class ContentBlob {
+
+    @Id
+    @Column(length = 64)
+    private String hash;
+    // size and hash are those of the content as uploaded, whether or not it is stored compressed
+    private long size;
+    private long refCount;
+    // how the stored object is compressed; null when it is stored as uploaded
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private ContentEncoding encoding;
+
+}
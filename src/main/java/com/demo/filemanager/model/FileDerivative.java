@@ -0,0 +1,46 @@
+package com.demo.filemanager.model;
+
+import com.demo.filemanager.enums.DerivativeKind;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.Data;
+
+import java.time.Instant;
+
+/**
+ * Content generated from a file, such as its thumbnail, kept in the blob store like the file itself. At most one
+ * per file and kind; it describes the file content with digest {@code sourceHash} and is stale once the file has
+ * other content.
+ */
+@Entity
+@Data
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_file_derivative_file_kind", columnNames = { "fileId", "kind" }))
+public class FileDerivative {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "file_derivative_seq")
+    @SequenceGenerator(name = "file_derivative_seq", sequenceName = "file_derivative_seq", allocationSize = 50)
+    private Long id;
+    private Long fileId;
+    @Enumerated(EnumType.STRING)
+    @Column(length = 32)
+    private DerivativeKind kind;
+    @Column(length = 64)
+    private String sourceHash;
+    @Column(length = 64)
+    private String contentHash;
+    private String contentType;
+    private long size;
+    private int width;
+    private int height;
+    private Instant createdAt;
+
+}
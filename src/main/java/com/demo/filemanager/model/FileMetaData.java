@@ -1,21 +1,45 @@
 package com.demo.filemanager.model;
 
+import com.demo.filemanager.enums.ContentEncoding;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
 import lombok.Data;
 
+import java.time.Instant;
+
 @Entity
 @Data
+@Table(indexes = {
+        @Index(name = "idx_file_meta_data_content_hash", columnList = "contentHash"),
+        @Index(name = "idx_file_meta_data_file_name_id", columnList = "fileName, id")
+})
 public class FileMetaData {
 
+    // ids come from a sequence in blocks of 50 (pooled optimizer), so new rows need no round trip each and
+    // their inserts can be sent in JDBC batches, which IDENTITY columns rule out
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "file_meta_data_seq")
+    @SequenceGenerator(name = "file_meta_data_seq", sequenceName = "file_meta_data_seq", allocationSize = 50)
     private Long id;
     private String fileName;
     private String filePath;
     private String fileType;
     private long fileSize;
+    @Column(length = 64)
+    private String contentHash;
+    // copied from the blob, so a download knows how the content is stored without looking the blob up
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private ContentEncoding contentEncoding;
+    // when the content or meta data last changed; null for files stored before it was recorded
+    private Instant lastModified;
 
 }
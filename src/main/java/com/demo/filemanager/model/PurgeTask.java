@@ -0,0 +1,36 @@
+package com.demo.filemanager.model;
+
+import com.demo.filemanager.enums.PurgeTarget;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+import java.time.Instant;
+
+/**
+ * Stored content waiting to be removed by the purger: a blob by its digest, or a file stored before the blob
+ * store existed by its path. Queued in the transaction that dropped the last reference to it.
+ */
+@Entity
+@Data
+@Table(indexes = @Index(name = "idx_purge_task_not_before", columnList = "notBefore, id"))
+public class PurgeTask {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "purge_task_seq")
+    @SequenceGenerator(name = "purge_task_seq", sequenceName = "purge_task_seq", allocationSize = 50)
+    private Long id;
+    @Enumerated(EnumType.STRING)
+    private PurgeTarget target;
+    private String location;
+    private Instant notBefore;
+    private int attempts;
+
+}
@@ -0,0 +1,28 @@
+package com.demo.filemanager.model;
+
+import com.demo.filemanager.enums.UploadSessionStatus;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Entity
+@Data
+@Table(indexes = @Index(name = "idx_upload_session_last_activity", columnList = "lastActivityAt"))
+public class UploadSession {
+
+    @Id
+    private String id;
+    private String fileName;
+    private String fileType;
+    @Enumerated(EnumType.STRING)
+    private UploadSessionStatus status;
+    private Instant createdAt;
+    private Instant lastActivityAt;
+
+}
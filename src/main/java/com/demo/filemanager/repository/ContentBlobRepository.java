@@ -0,0 +1,23 @@
+package com.demo.filemanager.repository;
+
+import com.demo.filemanager.model.ContentBlob;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface ContentBlobRepository extends JpaRepository<ContentBlob, String> {
+
+    /**
+     * Loads a blob and locks its row until the surrounding transaction ends, serializing reference count
+     * changes for the same content.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b from ContentBlob b where b.hash = :hash")
+    Optional<ContentBlob> findByHashForUpdate(@Param("hash") String hash);
+}
@@ -0,0 +1,19 @@
+package com.demo.filemanager.repository;
+
+import com.demo.filemanager.enums.DerivativeKind;
+import com.demo.filemanager.model.FileDerivative;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface FileDerivativeRepository extends JpaRepository<FileDerivative, Long> {
+
+    Optional<FileDerivative> findByFileIdAndKind(Long fileId, DerivativeKind kind);
+
+    List<FileDerivative> findByFileIdIn(Collection<Long> fileIds);
+
+}
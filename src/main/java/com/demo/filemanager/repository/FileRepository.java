@@ -1,10 +1,80 @@
 package com.demo.filemanager.repository;
 
+import com.demo.filemanager.dto.FileMetaDataDTO;
 import com.demo.filemanager.model.FileMetaData;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
 @Repository
 public interface FileRepository extends JpaRepository<FileMetaData, Long> {
 
+    String DTO_PROJECTION = "select new com.demo.filemanager.dto.FileMetaDataDTO("
+            + "f.id, f.fileName, f.filePath, f.fileType, f.fileSize, f.contentHash) from FileMetaData f ";
+
+    @Query(DTO_PROJECTION + "where f.id > :afterId order by f.id")
+    List<FileMetaDataDTO> findPageById(@Param("afterId") long afterId, Pageable pageable);
+
+    @Query(DTO_PROJECTION + "order by f.fileName, f.id")
+    List<FileMetaDataDTO> findFirstPageByFileName(Pageable pageable);
+
+    /**
+     * Rows after (afterName, afterId) in (fileName, id) order. The leading {@code >=} lets the database
+     * range-scan the (fileName, id) index instead of evaluating the OR for every row.
+     */
+    @Query(DTO_PROJECTION + "where f.fileName >= :afterName "
+            + "and (f.fileName > :afterName or f.id > :afterId) order by f.fileName, f.id")
+    List<FileMetaDataDTO> findPageByFileName(@Param("afterName") String afterName, @Param("afterId") long afterId,
+                                             Pageable pageable);
+
+    /**
+     * Rows after {@code afterId} whose lower-cased name and type match the LIKE patterns, escaped with
+     * {@code !}, in id order. The name pattern is served by the trigram index of SearchIndexConfiguration.
+     */
+    @Query(DTO_PROJECTION + "where lower(f.fileName) like :namePattern escape '!' "
+            + "and lower(coalesce(f.fileType, '')) like :typePattern escape '!' and f.id > :afterId order by f.id")
+    List<FileMetaDataDTO> searchPage(@Param("namePattern") String namePattern, @Param("typePattern") String typePattern,
+                                     @Param("afterId") long afterId, Pageable pageable);
+
+    /**
+     * Streams every row through a database cursor. Must be consumed inside a transaction.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query(DTO_PROJECTION + "order by f.id")
+    Stream<FileMetaDataDTO> streamAllBy();
+
+    /**
+     * Rows stored before the blob store existed, i.e. without a content hash, in id order.
+     */
+    @Query(DTO_PROJECTION + "where f.contentHash is null and f.id > :afterId order by f.id")
+    List<FileMetaDataDTO> findLegacyPage(@Param("afterId") long afterId, Pageable pageable);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select f from FileMetaData f where f.id = :id")
+    Optional<FileMetaData> findByIdForUpdate(@Param("id") Long id);
+
+    /**
+     * Loads and locks the rows with the given ids, in id order so that overlapping deletes cannot deadlock.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select f from FileMetaData f where f.id in :ids order by f.id")
+    List<FileMetaData> findAllByIdForUpdate(@Param("ids") Collection<Long> ids);
+
+    boolean existsByFilePath(String filePath);
+
 }
@@ -0,0 +1,27 @@
+package com.demo.filemanager.repository;
+
+import com.demo.filemanager.enums.PurgeTarget;
+import com.demo.filemanager.model.PurgeTask;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface PurgeTaskRepository extends JpaRepository<PurgeTask, Long> {
+
+    @Query("select t from PurgeTask t where t.notBefore <= :now order by t.notBefore, t.id")
+    List<PurgeTask> findDue(@Param("now") Instant now, Pageable pageable);
+
+    default PurgeTask enqueue(PurgeTarget target, String location) {
+        PurgeTask task = new PurgeTask();
+        task.setTarget(target);
+        task.setLocation(location);
+        task.setNotBefore(Instant.now());
+        return save(task);
+    }
+}
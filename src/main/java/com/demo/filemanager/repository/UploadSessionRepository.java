@@ -0,0 +1,37 @@
+package com.demo.filemanager.repository;
+
+import com.demo.filemanager.enums.UploadSessionStatus;
+import com.demo.filemanager.model.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+
+    List<UploadSession> findByLastActivityAtBefore(Instant cutoff);
+
+    /**
+     * Records activity on an open session. Returns 0 when the session does not exist or is not open.
+     */
+    @Transactional
+    @Modifying
+    @Query("update UploadSession s set s.lastActivityAt = :now where s.id = :id and s.status = :status")
+    int touch(@Param("id") String id, @Param("status") UploadSessionStatus status, @Param("now") Instant now);
+
+    /**
+     * Moves a session from one status to another. Returns 0 when the session is not in the expected status,
+     * which makes the update usable as an atomic claim between concurrent requests.
+     */
+    @Transactional
+    @Modifying
+    @Query("update UploadSession s set s.status = :to, s.lastActivityAt = :now where s.id = :id and s.status = :from")
+    int transition(@Param("id") String id, @Param("from") UploadSessionStatus from,
+                   @Param("to") UploadSessionStatus to, @Param("now") Instant now);
+}
@@ -0,0 +1,103 @@
+package com.demo.filemanager.service;
+
+import com.demo.filemanager.dto.FileMetaDataDTO;
+import com.demo.filemanager.dto.FilePageDTO;
+import com.demo.filemanager.enums.FileSearchMode;
+import com.demo.filemanager.model.FileMetaData;
+import com.demo.filemanager.util.FileValidation;
+import com.demo.filemanager.util.ZipStreamWriter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Downloads of many files as one ZIP archive, written to the response while the files are read. The meta data
+ * is read a chunk of files at a time and every file is copied straight from storage into its entry, so memory
+ * use does not grow with the size of the archive. Files in formats that are compressed already are copied in
+ * without being compressed again, the others deflated.
+ */
+@Service
+@RequiredArgsConstructor
+public class ArchiveService {
+
+    private static final int CHUNK_SIZE = 500;
+
+    private final FileService fileService;
+    private final BlobService blobService;
+
+    /**
+     * The ids of the files a search finds, in id order, at most one more than the limit so that callers can tell
+     * when there are too many.
+     */
+    public List<Long> searchIds(FileSearchMode mode, String query, String contentType, int limit) {
+        List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            FilePageDTO page = fileService.searchFiles(mode, query, contentType, cursor, Math.min(limit + 1 - ids.size(), CHUNK_SIZE));
+            for (FileMetaDataDTO file : page.getItems()) {
+                ids.add(file.getId());
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null && ids.size() <= limit);
+        return ids;
+    }
+
+    /**
+     * Writes a ZIP archive of the files with the given ids, in id order, to the stream. Ids of files that do not
+     * exist (any more) are skipped. Entries are named after the files, numbered when several files share a name.
+     */
+    public void writeZip(Collection<Long> ids, OutputStream out) throws IOException {
+        List<Long> sortedIds = ids.stream().distinct().sorted().toList();
+        ZipStreamWriter zip = new ZipStreamWriter(out);
+        Set<String> entryNames = new HashSet<>();
+        for (int from = 0; from < sortedIds.size(); from += CHUNK_SIZE) {
+            List<Long> chunk = sortedIds.subList(from, Math.min(from + CHUNK_SIZE, sortedIds.size()));
+            for (FileMetaData file : fileService.getFilesByIds(chunk)) {
+                String name = entryName(file, entryNames);
+                try (InputStream content = content(file).getInputStream()) {
+                    zip.addEntry(name, file.getLastModified(), file.getFileSize(), !FileValidation.isCompressed(name), content);
+                }
+            }
+        }
+        zip.finish();
+    }
+
+    private Resource content(FileMetaData file) {
+        if (file.getContentHash() == null) {
+            // stored before the blob store existed, directly at its recorded path
+            return new FileSystemResource(Paths.get(file.getFilePath()).toAbsolutePath().normalize());
+        }
+        return blobService.content(file.getContentHash(), file.getContentEncoding(), file.getFileSize());
+    }
+
+    /**
+     * The file name without directories, so that no entry can be extracted outside the target directory, made
+     * unique within the archive by a number before the extension: report.pdf, report (2).pdf, ...
+     */
+    static String entryName(FileMetaData file, Set<String> taken) {
+        String name = file.getFileName() == null ? "" : file.getFileName().replace('/', '_').replace('\\', '_');
+        if (name.isBlank() || name.equals(".") || name.equals("..")) {
+            name = "file-" + file.getId();
+        }
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        String candidate = name;
+        for (int n = 2; !taken.add(candidate.toLowerCase(Locale.ROOT)); n++) {
+            candidate = base + " (" + n + ")" + extension;
+        }
+        return candidate;
+    }
+}
@@ -0,0 +1,136 @@
+package com.demo.filemanager.service;
+
+import com.demo.filemanager.model.FileMetaData;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Uploads of many files in one request. The files are staged on a bounded pool, so their bytes are written and
+ * hashed in parallel, and their meta data is then saved in a single transaction with batched inserts. A file
+ * that fails is reported on its own and does not fail the others.
+ */
+@Service
+@RequiredArgsConstructor
+public class BatchUploadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchUploadService.class);
+
+    private final FileService fileService;
+    private final BlobService blobService;
+
+    @Value("${file.upload.batch.threads:4}")
+    private int threads = 4;
+
+    private ExecutorService stagingExecutor;
+
+    /**
+     * The outcome for one file of a batch: the saved meta data, or why the file was not saved.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class Result {
+        private final FileMetaData file;
+        private final String error;
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        stagingExecutor = Executors.newFixedThreadPool(threads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stagingExecutor.shutdownNow();
+    }
+
+    /**
+     * Saves each file with the content read from the source at the same position, returning one result per file
+     * in the same order. If saving the batch fails as a whole, the files are saved one by one so that only the
+     * files at fault fail.
+     */
+    public List<Result> upload(List<FileMetaData> files, List<? extends InputStreamSource> contents) throws InterruptedException {
+        List<Future<BlobService.StagedBlob>> staging = new ArrayList<>(files.size());
+        for (InputStreamSource content : contents) {
+            staging.add(stagingExecutor.submit(() -> {
+                try (InputStream in = content.getInputStream()) {
+                    return blobService.stage(in);
+                }
+            }));
+        }
+
+        Result[] results = new Result[files.size()];
+        List<Integer> staged = new ArrayList<>(files.size());
+        List<BlobService.StagedBlob> stagedContents = new ArrayList<>(files.size());
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    stagedContents.add(staging.get(i).get());
+                    staged.add(i);
+                } catch (ExecutionException ex) {
+                    logger.warn("Could not stage {}", files.get(i).getFileName(), ex.getCause());
+                    results[i] = new Result(null, "Error saving file");
+                }
+            }
+            saveStaged(files, staged, stagedContents, results);
+        } catch (InterruptedException ex) {
+            // whatever is still being staged is discarded along with what has been staged already
+            for (Future<BlobService.StagedBlob> task : staging) {
+                task.cancel(true);
+            }
+            throw ex;
+        } finally {
+            stagedContents.forEach(blobService::discard);
+        }
+        return List.of(results);
+    }
+
+    private void saveStaged(List<FileMetaData> files, List<Integer> staged, List<BlobService.StagedBlob> stagedContents,
+                            Result[] results) {
+        if (staged.isEmpty()) {
+            return;
+        }
+        List<FileMetaData> stagedFiles = new ArrayList<>(staged.size());
+        for (int i : staged) {
+            stagedFiles.add(files.get(i));
+        }
+        try {
+            List<FileMetaData> saved = fileService.saveFiles(stagedFiles, stagedContents);
+            for (int j = 0; j < staged.size(); j++) {
+                results[staged.get(j)] = new Result(saved.get(j), null);
+            }
+            return;
+        } catch (RuntimeException ex) {
+            logger.warn("Saving a batch of {} files failed, saving them one by one", staged.size(), ex);
+        }
+        for (int j = 0; j < staged.size(); j++) {
+            FileMetaData file = stagedFiles.get(j);
+            file.setId(null);
+            try {
+                results[staged.get(j)] = new Result(fileService.saveFile(file, stagedContents.get(j)), null);
+            } catch (RuntimeException ex) {
+                logger.warn("Could not save {}", file.getFileName(), ex);
+                results[staged.get(j)] = new Result(null, "Error saving file");
+            }
+        }
+    }
+}
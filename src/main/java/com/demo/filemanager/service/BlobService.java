@@ -0,0 +1,428 @@
+package com.demo.filemanager.service;
+
+import com.demo.filemanager.enums.ContentEncoding;
+import com.demo.filemanager.enums.PurgeTarget;
+import com.demo.filemanager.model.ContentBlob;
+import com.demo.filemanager.repository.ContentBlobRepository;
+import com.demo.filemanager.repository.PurgeTaskRepository;
+import com.demo.filemanager.storage.DecodingResource;
+import com.demo.filemanager.storage.StorageBackend;
+import com.demo.filemanager.storage.StorageResource;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Content-addressable storage for file bodies. Content is hashed while it is written to a local staging file,
+ * then kept once per SHA-256 digest under the key {@code ab/cd/<digest>} of the configured
+ * {@link StorageBackend} and reference counted by the files using it.
+ * <p>
+ * Reference counts only change while the blob row is locked, and the stored object is created or removed under
+ * that same lock, so a row that exists always has its content stored. A blob nobody refers to any more keeps its
+ * row, at zero references, until the purger removes it; content uploaded again before then simply revives it.
+ */
+@Service
+@RequiredArgsConstructor
+public class BlobService {
+
+    private static final String BLOBS_DIRECTORY = "blobs";
+    private static final String STAGING_DIRECTORY = ".tmp";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final int COMPRESSION_PROBE_SIZE = 64 * 1024;
+
+    private static final Logger logger = LoggerFactory.getLogger(BlobService.class);
+
+    private final ContentBlobRepository contentBlobRepository;
+    private final StorageBackend storageBackend;
+    private final PurgeTaskRepository purgeTaskRepository;
+
+    @Value("${file.storage.location}")
+    private String fileStorageLocation;
+
+    @Value("${file.storage.compression.enabled:false}")
+    private boolean compressionEnabled = false;
+
+    @Value("${file.storage.compression.encoding:zstd}")
+    private String compressionEncoding = "zstd";
+
+    // media types, or type prefixes ending in '/', worth trying to compress
+    @Value("${file.storage.compression.types:text/,application/json,application/xml,application/pdf,image/svg+xml}")
+    private List<String> compressibleTypes = List.of("text/", "application/json", "application/xml", "application/pdf", "image/svg+xml");
+
+    @Value("${file.storage.compression.min-size:1024}")
+    private long compressionMinSize = 1024;
+
+    // compressed size over original size at or below which the compressed form is kept
+    @Value("${file.storage.compression.max-ratio:0.9}")
+    private double compressionMaxRatio = 0.9;
+
+    /**
+     * Content written to a staging file and hashed, but not yet part of the blob store.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class StagedBlob {
+        private final Path stagingFile;
+        private final String hash;
+        private final long size;
+    }
+
+    /**
+     * Streams the content to a staging file, computing its SHA-256 digest on the way.
+     */
+    public StagedBlob stage(InputStream content) throws IOException {
+        MessageDigest digest = sha256();
+        Path stagingFile = createStagingFile();
+        long size = 0;
+        try (OutputStream out = Files.newOutputStream(stagingFile, StandardOpenOption.TRUNCATE_EXISTING)) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = content.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+                size += read;
+            }
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(stagingFile);
+            throw ex;
+        }
+        return new StagedBlob(stagingFile, HexFormat.of().formatHex(digest.digest()), size);
+    }
+
+    /**
+     * Stages a file that is already on disk in the storage location by hashing it in place. Like every staging
+     * file it stays where it is until discarded; the blob store takes a hard link to it when the blob is retained.
+     */
+    public StagedBlob stage(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        long size = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                size += buffer.remaining();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return new StagedBlob(file, HexFormat.of().formatHex(digest.digest()), size);
+    }
+
+    /**
+     * Stages a file that has to stay where it is, such as a file stored before the blob store existed. The
+     * staging file is a hard link to it where the file system allows, otherwise a copy.
+     */
+    public StagedBlob stageCopy(Path file) throws IOException {
+        Path stagingFile = linkOrCopy(file);
+        try {
+            return stage(stagingFile);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(stagingFile);
+            throw ex;
+        }
+    }
+
+    public void discard(StagedBlob staged) {
+        try {
+            Files.deleteIfExists(staged.getStagingFile());
+        } catch (IOException ex) {
+            logger.warn("Could not remove staging file {}", staged.getStagingFile(), ex);
+        }
+    }
+
+    /**
+     * Adds a reference to the staged content. Unless the digest is already stored, the content is added to the blob
+     * store, compressed if the content type qualifies and it pays off. The staging file is left in place until the
+     * caller discards it, so that the same staged content can be retained again when the transaction is rolled back
+     * and retried. Two transactions creating the same new blob concurrently end in a constraint violation for one of
+     * them, which the caller may retry.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public ContentBlob retain(StagedBlob staged, String contentType) {
+        Optional<ContentBlob> existing = contentBlobRepository.findByHashForUpdate(staged.getHash());
+        ContentBlob blob = existing.orElseGet(() -> {
+            ContentBlob created = new ContentBlob();
+            created.setHash(staged.getHash());
+            created.setSize(staged.getSize());
+            return created;
+        });
+        blob.setRefCount(blob.getRefCount() + 1);
+        blob = contentBlobRepository.saveAndFlush(blob);
+
+        try {
+            if (existing.isEmpty() || storageBackend.stat(key(staged.getHash())).isEmpty()) {
+                // identical content stored by a transaction that did not commit is simply replaced, as it may have
+                // been stored with another encoding than the one recorded now
+                blob.setEncoding(store(staged, contentType));
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Error storing blob " + staged.getHash(), ex);
+        }
+        return blob;
+    }
+
+    /**
+     * Adds a reference to content that is already stored, without any bytes being transferred.
+     * Returns empty when no blob with that digest and size exists.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Optional<ContentBlob> retainExisting(String hash, long size) {
+        return contentBlobRepository.findByHashForUpdate(hash)
+                .filter(blob -> blob.getSize() == size && isStored(hash))
+                .map(blob -> {
+                    blob.setRefCount(blob.getRefCount() + 1);
+                    return contentBlobRepository.save(blob);
+                });
+    }
+
+    /**
+     * Drops a reference to the content, queueing the blob for removal once nothing refers to it any more.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void release(String hash) {
+        release(hash, 1);
+    }
+
+    /**
+     * Drops several references to the same content at once.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void release(String hash, long references) {
+        contentBlobRepository.findByHashForUpdate(hash).ifPresent(blob -> {
+            blob.setRefCount(Math.max(0, blob.getRefCount() - references));
+            contentBlobRepository.save(blob);
+            if (blob.getRefCount() == 0) {
+                purgeTaskRepository.enqueue(PurgeTarget.BLOB, hash);
+            }
+        });
+    }
+
+    /**
+     * Queues a file stored before the blob store existed for removal, which happens once no row refers to it.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void releaseLegacyFile(String filePath) {
+        purgeTaskRepository.enqueue(PurgeTarget.LEGACY_FILE, filePath);
+    }
+
+    /**
+     * Removes the blob and its stored content if it is still unreferenced. Returns false when it was revived or
+     * already removed, which makes purging the same blob twice harmless.
+     * <p>
+     * The stored content is only deleted once the row's removal has committed, and not at all if the content has
+     * been uploaded again by then, so a rolled back purge never leaves a row without its content.
+     */
+    @Transactional
+    public boolean purge(String hash) {
+        Optional<ContentBlob> blob = contentBlobRepository.findByHashForUpdate(hash).filter(row -> row.getRefCount() == 0);
+        if (blob.isEmpty()) {
+            return false;
+        }
+        contentBlobRepository.delete(blob.get());
+        contentBlobRepository.flush();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    deleteStored(hash);
+                }
+            });
+        } else {
+            deleteStored(hash);
+        }
+        return true;
+    }
+
+    private void deleteStored(String hash) {
+        if (contentBlobRepository.existsById(hash)) {
+            // uploaded again since the row was removed
+            return;
+        }
+        try {
+            storageBackend.delete(key(hash));
+        } catch (IOException ex) {
+            // the row is gone already; what is left is an unreferenced object, not a row without content
+            logger.warn("Could not remove stored content of blob {}", hash, ex);
+        }
+    }
+
+    /**
+     * The file a row stored before the blob store existed refers to. Only files inside the storage location and
+     * outside the blob store are considered, whatever the row says; null otherwise.
+     */
+    public Path legacyFile(String filePath) {
+        if (filePath == null) {
+            return null;
+        }
+        Path storageRoot = storagePath();
+        Path file = Paths.get(filePath).toAbsolutePath().normalize();
+        if (!file.startsWith(storageRoot) || file.startsWith(storageRoot.resolve(BLOBS_DIRECTORY))) {
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * The stored content, to be streamed or, for backends keeping it in a local file, sent straight from that file.
+     */
+    public StorageResource resource(String hash) {
+        return new StorageResource(storageBackend, key(hash));
+    }
+
+    /**
+     * The content as uploaded, decompressed while it is read when it is stored compressed.
+     */
+    public Resource content(String hash, ContentEncoding encoding, long size) {
+        StorageResource stored = resource(hash);
+        return encoding == null ? stored : new DecodingResource(stored, encoding, size);
+    }
+
+    /**
+     * The path recorded in {@link com.demo.filemanager.model.FileMetaData#getFilePath()}, relative to the
+     * configured storage location like the paths of files stored before the blob store existed.
+     */
+    public String filePath(String hash) {
+        return Paths.get(fileStorageLocation, BLOBS_DIRECTORY, hash.substring(0, 2), hash.substring(2, 4), hash).toString();
+    }
+
+    private boolean isStored(String hash) {
+        try {
+            return storageBackend.stat(key(hash)).isPresent();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Error looking up blob " + hash, ex);
+        }
+    }
+
+    private ContentEncoding store(StagedBlob staged, String contentType) throws IOException {
+        String key = key(staged.getHash());
+        ContentEncoding encoding = ContentEncoding.fromToken(compressionEncoding);
+        Path compressed = compress(staged, contentType, encoding);
+        // the backend may move the file it is given, so it gets a link to the staging file rather than the file itself
+        Path stored = compressed != null ? compressed : linkOrCopy(staged.getStagingFile());
+        try {
+            storageBackend.putFile(key, stored);
+        } finally {
+            Files.deleteIfExists(stored);
+        }
+        return compressed != null ? encoding : null;
+    }
+
+    /**
+     * A new staging file with the file's content: a hard link to it where the file system allows, otherwise a copy.
+     */
+    private Path linkOrCopy(Path file) throws IOException {
+        Path stagingFile = createStagingFile();
+        try {
+            Files.delete(stagingFile);
+            try {
+                Files.createLink(stagingFile, file);
+            } catch (UnsupportedOperationException | IOException ex) {
+                Files.copy(file, stagingFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return stagingFile;
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(stagingFile);
+            throw ex;
+        }
+    }
+
+    /**
+     * Compresses the staged content into a new staging file, or returns null when it is not worth storing
+     * compressed. Content whose first bytes do not shrink enough is not compressed any further.
+     */
+    private Path compress(StagedBlob staged, String contentType, ContentEncoding encoding) throws IOException {
+        if (!compressionEnabled || staged.getSize() < compressionMinSize || !isCompressible(contentType)) {
+            return null;
+        }
+        if (staged.getSize() > COMPRESSION_PROBE_SIZE && !probeCompresses(staged, encoding)) {
+            return null;
+        }
+
+        Path compressed = createStagingFile();
+        try {
+            try (OutputStream out = encoding.encode(Files.newOutputStream(compressed, StandardOpenOption.TRUNCATE_EXISTING))) {
+                Files.copy(staged.getStagingFile(), out);
+            }
+            if (Files.size(compressed) > staged.getSize() * compressionMaxRatio) {
+                Files.delete(compressed);
+                return null;
+            }
+            return compressed;
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(compressed);
+            throw ex;
+        }
+    }
+
+    private boolean probeCompresses(StagedBlob staged, ContentEncoding encoding) throws IOException {
+        byte[] probe = new byte[COMPRESSION_PROBE_SIZE];
+        int length;
+        try (InputStream in = Files.newInputStream(staged.getStagingFile())) {
+            length = in.readNBytes(probe, 0, probe.length);
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(length);
+        try (OutputStream out = encoding.encode(compressed)) {
+            out.write(probe, 0, length);
+        }
+        return compressed.size() <= length * compressionMaxRatio;
+    }
+
+    private boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String mediaType = contentType.split(";", 2)[0].trim().toLowerCase(Locale.ROOT);
+        return compressibleTypes.stream()
+                .map(type -> type.trim().toLowerCase(Locale.ROOT))
+                .anyMatch(type -> type.endsWith("/") ? mediaType.startsWith(type) : mediaType.equals(type));
+    }
+
+    private static String key(String hash) {
+        return hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash;
+    }
+
+    private Path createStagingFile() throws IOException {
+        Path stagingDirectory = storagePath().resolve(STAGING_DIRECTORY);
+        Files.createDirectories(stagingDirectory);
+        return Files.createTempFile(stagingDirectory, "upload-", ".tmp");
+    }
+
+    private Path storagePath() {
+        return Paths.get(fileStorageLocation).toAbsolutePath().normalize();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+}
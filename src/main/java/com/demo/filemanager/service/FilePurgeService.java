@@ -0,0 +1,137 @@
+package com.demo.filemanager.service;
+
+import com.demo.filemanager.model.PurgeTask;
+import com.demo.filemanager.repository.FileRepository;
+import com.demo.filemanager.repository.PurgeTaskRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Removes stored content queued by deletes. The queue is a table, so content queued before a restart is still
+ * removed after it. Each run takes at most {@code file.purge.batch-size} due tasks and works through them on a
+ * few threads, and runs are spaced by {@code file.purge.interval}, which bounds the load purging puts on the
+ * storage. A task that fails is retried later, waiting longer after every attempt.
+ * <p>
+ * Purging is idempotent, so several instances sharing the database may pick up the same task.
+ */
+@Service
+@RequiredArgsConstructor
+public class FilePurgeService {
+
+    private static final int MAX_BACKOFF_STEPS = 60;
+
+    private static final Logger logger = LoggerFactory.getLogger(FilePurgeService.class);
+
+    private final PurgeTaskRepository purgeTaskRepository;
+    private final FileRepository fileRepository;
+    private final BlobService blobService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${file.purge.batch-size:100}")
+    private int batchSize = 100;
+
+    @Value("${file.purge.threads:4}")
+    private int threads = 4;
+
+    @Value("${file.purge.retry-delay:PT1M}")
+    private Duration retryDelay = Duration.ofMinutes(1);
+
+    private final AtomicLong backlog = new AtomicLong();
+
+    private ExecutorService workers;
+    private Counter purgedCounter;
+    private Counter failedCounter;
+
+    @PostConstruct
+    public void init() {
+        workers = Executors.newFixedThreadPool(threads);
+        Gauge.builder("file.purge.backlog", backlog, AtomicLong::get)
+                .description("Stored files queued for removal")
+                .register(meterRegistry);
+        purgedCounter = Counter.builder("file.purge.purged")
+                .description("Queued files removed")
+                .register(meterRegistry);
+        failedCounter = Counter.builder("file.purge.failed")
+                .description("Attempts to remove a queued file that failed and will be retried")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Purges one batch of due tasks and refreshes the backlog gauge.
+     */
+    @Scheduled(fixedDelayString = "${file.purge.interval:PT1S}")
+    public void purgeBatch() {
+        List<PurgeTask> due = purgeTaskRepository.findDue(Instant.now(), PageRequest.of(0, batchSize));
+        List<Future<?>> tasks = new ArrayList<>(due.size());
+        for (PurgeTask task : due) {
+            tasks.add(workers.submit(() -> purge(task)));
+        }
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException ex) {
+            logger.error("Purging stored files failed", ex.getCause());
+        }
+        backlog.set(purgeTaskRepository.count());
+    }
+
+    void purge(PurgeTask task) {
+        try {
+            switch (task.getTarget()) {
+                case BLOB -> blobService.purge(task.getLocation());
+                case LEGACY_FILE -> purgeLegacyFile(task.getLocation());
+            }
+            purgeTaskRepository.deleteById(task.getId());
+            purgedCounter.increment();
+        } catch (IOException | RuntimeException ex) {
+            failedCounter.increment();
+            task.setAttempts(task.getAttempts() + 1);
+            task.setNotBefore(Instant.now().plus(retryDelay.multipliedBy(Math.min(task.getAttempts(), MAX_BACKOFF_STEPS))));
+            logger.warn("Could not purge {} {}, attempt {}", task.getTarget(), task.getLocation(), task.getAttempts(), ex);
+            purgeTaskRepository.save(task);
+        }
+    }
+
+    private void purgeLegacyFile(String filePath) throws IOException {
+        if (fileRepository.existsByFilePath(filePath)) {
+            // several rows shared the file, e.g. uploads with the same name
+            return;
+        }
+        Path file = blobService.legacyFile(filePath);
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+}
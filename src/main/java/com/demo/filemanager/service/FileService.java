@@ -1,12 +1,43 @@
 package com.demo.filemanager.service;
 
+import com.demo.filemanager.dto.CacheStatsDTO;
+import com.demo.filemanager.dto.FileMetaDataDTO;
+import com.demo.filemanager.dto.FilePageDTO;
+import com.demo.filemanager.enums.FileSearchMode;
+import com.demo.filemanager.enums.FileSortOrder;
+import com.demo.filemanager.model.ContentBlob;
 import com.demo.filemanager.model.FileMetaData;
 import com.demo.filemanager.repository.FileRepository;
+import com.demo.filemanager.util.CacheLoading;
+import com.demo.filemanager.util.ReplicaReads;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import lombok.AllArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Service
 @AllArgsConstructor
@@ -14,20 +45,376 @@ public class FileService {
 
     private FileRepository fileRepository;
 
+    private BlobService blobService;
+
+    private ThumbnailService thumbnailService;
+
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * Meta data by id. Holds private copies because callers modify the entities they are given, and is
+     * invalidated once a change has committed so that no reader can cache a row read before the change.
+     */
+    private AsyncCache<Long, FileMetaData> fileMetaDataCache;
+
     public List<FileMetaData> getAllFiles() {
-        return fileRepository.findAll();
+        return ReplicaReads.read(fileRepository::findAll);
+    }
+
+    /**
+     * Returns one page of files in keyset order, starting after the position encoded in the cursor
+     * (null for the first page). Only the columns of the DTO are read.
+     */
+    public FilePageDTO getFilePage(FileSortOrder sortOrder, String cursor, int size) {
+        Pageable limit = PageRequest.of(0, size + 1);
+        List<FileMetaDataDTO> rows;
+        if (sortOrder == FileSortOrder.FILE_NAME) {
+            if (cursor == null) {
+                rows = ReplicaReads.read(() -> fileRepository.findFirstPageByFileName(limit));
+            } else {
+                String[] position = decodeCursor(cursor, 2);
+                rows = ReplicaReads.read(() -> fileRepository.findPageByFileName(position[1], parseId(position[0]), limit));
+            }
+        } else {
+            long afterId = cursor == null ? 0 : parseId(decodeCursor(cursor, 1)[0]);
+            rows = ReplicaReads.read(() -> fileRepository.findPageById(afterId, limit));
+        }
+
+        if (rows.size() <= size) {
+            return new FilePageDTO(rows, null);
+        }
+        List<FileMetaDataDTO> page = rows.subList(0, size);
+        FileMetaDataDTO last = page.get(size - 1);
+        String nextCursor = sortOrder == FileSortOrder.FILE_NAME
+                ? encodeCursor(last.getId().toString(), last.getFileName())
+                : encodeCursor(last.getId().toString());
+        return new FilePageDTO(new ArrayList<>(page), nextCursor);
+    }
+
+    /**
+     * Returns one page, in id order, of the files whose name starts with or contains the query, ignoring case.
+     * The content type, when given, is matched exactly, or as a family when it ends in {@code /} or {@code /*}
+     * (e.g. {@code image/*}). An empty query matches every name.
+     */
+    public FilePageDTO searchFiles(FileSearchMode mode, String query, String contentType, String cursor, int size) {
+        String name = escapeLike(query == null ? "" : query.toLowerCase(Locale.ROOT));
+        String namePattern = mode == FileSearchMode.PREFIX ? name + "%" : "%" + name + "%";
+        String typePattern = "%";
+        if (contentType != null && !contentType.isBlank()) {
+            String type = contentType.trim().toLowerCase(Locale.ROOT);
+            if (type.endsWith("/*")) {
+                typePattern = escapeLike(type.substring(0, type.length() - 1)) + "%";
+            } else if (type.endsWith("/")) {
+                typePattern = escapeLike(type) + "%";
+            } else {
+                typePattern = escapeLike(type);
+            }
+        }
+        long afterId = cursor == null ? 0 : parseId(decodeCursor(cursor, 1)[0]);
+        String typeFilter = typePattern;
+
+        List<FileMetaDataDTO> rows = ReplicaReads.read(
+                () -> fileRepository.searchPage(namePattern, typeFilter, afterId, PageRequest.of(0, size + 1)));
+        if (rows.size() <= size) {
+            return new FilePageDTO(rows, null);
+        }
+        List<FileMetaDataDTO> page = rows.subList(0, size);
+        return new FilePageDTO(new ArrayList<>(page), encodeCursor(page.get(size - 1).getId().toString()));
+    }
+
+    /**
+     * Passes every file to the consumer as it is read from a database cursor, without building a list.
+     */
+    @Transactional(readOnly = true)
+    public void streamFiles(Consumer<FileMetaDataDTO> consumer) {
+        // the transaction takes its connection at the first query, so inside this method is early enough
+        ReplicaReads.read(() -> {
+            try (Stream<FileMetaDataDTO> files = fileRepository.streamAllBy()) {
+                files.forEach(consumer);
+            }
+            return null;
+        });
     }
 
+    /**
+     * Meta data by id, read from the primary: the cache would keep a row that a lagging replica returned after
+     * a change had committed and invalidated it.
+     */
     public Optional<FileMetaData> getFileById(Long id) {
-        return fileRepository.findById(id);
+        FileMetaData cached = CacheLoading.get(fileMetaDataCache, id,
+                key -> fileRepository.findById(key).map(FileService::copyOf).orElse(null));
+        return Optional.ofNullable(cached).map(FileService::copyOf);
+    }
+
+    /**
+     * The files with the given ids that exist, in id order, read in one query past the cache.
+     */
+    public List<FileMetaData> getFilesByIds(Collection<Long> ids) {
+        List<FileMetaData> files = new ArrayList<>(ReplicaReads.read(() -> fileRepository.findAllById(ids)));
+        files.sort(Comparator.comparing(FileMetaData::getId));
+        return files;
+    }
+
+    public CacheStatsDTO getCacheStats() {
+        CacheStats stats = fileMetaDataCache.synchronous().stats();
+        return new CacheStatsDTO(fileMetaDataCache.synchronous().estimatedSize(), stats.hitCount(), stats.missCount(),
+                stats.hitRate(), stats.evictionCount());
     }
 
     public FileMetaData saveFile(FileMetaData fileMetaData) {
-        return fileRepository.save(fileMetaData);
+        FileMetaData saved = fileRepository.save(fileMetaData);
+        invalidateAfterCommit(saved.getId());
+        return saved;
+    }
+
+    /**
+     * Saves a new file whose content has been staged, storing the content in the blob store unless
+     * identical content is already there.
+     */
+    public FileMetaData saveFile(FileMetaData fileMetaData, BlobService.StagedBlob content) {
+        return inTransactionWithRetry(() -> {
+            attachBlob(fileMetaData, blobService.retain(content, fileMetaData.getFileType()));
+            fileMetaData.setLastModified(Instant.now());
+            FileMetaData saved = fileRepository.save(fileMetaData);
+            thumbnailService.generateAfterCommit(saved);
+            return saved;
+        });
+    }
+
+    /**
+     * Saves several new files whose content has been staged in one transaction. Blobs are retained first, in
+     * digest order so that batches sharing content cannot deadlock, and the rows are inserted together at commit,
+     * where Hibernate sends them in JDBC batches. Returns the saved files in the order given.
+     */
+    public List<FileMetaData> saveFiles(List<FileMetaData> files, List<BlobService.StagedBlob> contents) {
+        if (files.size() != contents.size()) {
+            throw new IllegalArgumentException("Every file needs its content");
+        }
+        return inTransactionWithRetry(() -> {
+            Integer[] byHash = new Integer[files.size()];
+            for (int i = 0; i < byHash.length; i++) {
+                byHash[i] = i;
+            }
+            Arrays.sort(byHash, Comparator.comparing(i -> contents.get(i).getHash()));
+            Instant now = Instant.now();
+            for (int i : byHash) {
+                attachBlob(files.get(i), blobService.retain(contents.get(i), files.get(i).getFileType()));
+                files.get(i).setLastModified(now);
+            }
+            List<FileMetaData> saved = fileRepository.saveAll(files);
+            saved.forEach(thumbnailService::generateAfterCommit);
+            return saved;
+        });
+    }
+
+    /**
+     * Saves a new file by referring to content that is already stored, so no bytes have to be uploaded.
+     * Returns empty when no stored content matches the digest and size.
+     */
+    @Transactional
+    public Optional<FileMetaData> saveFileByContentHash(FileMetaData fileMetaData, String contentHash, long fileSize) {
+        return blobService.retainExisting(contentHash, fileSize).map(blob -> {
+            attachBlob(fileMetaData, blob);
+            fileMetaData.setLastModified(Instant.now());
+            FileMetaData saved = fileRepository.save(fileMetaData);
+            thumbnailService.generateAfterCommit(saved);
+            return saved;
+        });
+    }
+
+    /**
+     * Replaces the content, name and type of an existing file, dropping its reference to the previous content.
+     * The row is locked and the precondition tested against it first, so that of two clients changing the same
+     * version of a file only one succeeds. Returns empty when the file no longer exists, and throws
+     * {@link PreconditionFailedException} when the precondition does not hold.
+     */
+    public Optional<FileMetaData> replaceFileContent(FileMetaData fileMetaData, BlobService.StagedBlob content,
+                                                     Predicate<FileMetaData> precondition) {
+        return Optional.ofNullable(inTransactionWithRetry(() -> fileRepository.findByIdForUpdate(fileMetaData.getId())
+                .map(current -> {
+                    if (!precondition.test(current)) {
+                        throw new PreconditionFailedException("File has been modified");
+                    }
+                    String previousHash = current.getContentHash();
+                    String previousPath = current.getFilePath();
+                    current.setFileName(fileMetaData.getFileName());
+                    current.setFileType(fileMetaData.getFileType());
+                    attachBlob(current, blobService.retain(content, current.getFileType()));
+                    current.setLastModified(Instant.now());
+                    FileMetaData saved = fileRepository.save(current);
+                    if (previousHash != null) {
+                        blobService.release(previousHash);
+                    } else if (previousPath != null) {
+                        blobService.releaseLegacyFile(previousPath);
+                    }
+                    // the thumbnail of the previous content is dropped and one of the new content generated
+                    thumbnailService.removeDerivatives(List.of(saved.getId())).forEach(blobService::release);
+                    thumbnailService.generateAfterCommit(saved);
+                    invalidateAfterCommit(saved.getId());
+                    return saved;
+                })
+                .orElse(null)));
     }
 
+    /**
+     * Moves a file stored before the blob store existed onto the staged copy of its content. Nothing happens when
+     * the row was deleted, or given new content, since {@code legacyPath} was read.
+     */
+    public Optional<FileMetaData> migrateLegacyFile(Long id, String legacyPath, BlobService.StagedBlob content) {
+        return Optional.ofNullable(inTransactionWithRetry(() -> fileRepository.findByIdForUpdate(id)
+                .filter(row -> row.getContentHash() == null && legacyPath.equals(row.getFilePath()))
+                .map(row -> {
+                    attachBlob(row, blobService.retain(content, row.getFileType()));
+                    FileMetaData saved = fileRepository.save(row);
+                    thumbnailService.generateAfterCommit(saved);
+                    invalidateAfterCommit(saved.getId());
+                    return saved;
+                })
+                .orElse(null)));
+    }
+
+    /**
+     * Deletes a file and queues content nothing refers to any more for removal by the purger. The row is locked
+     * first, so the content released is the one it holds once a concurrent replacement has committed, and no
+     * thumbnail of it can be recorded while it is being deleted.
+     */
+    @Transactional
     public void deleteFile(Long id) {
+        Optional<FileMetaData> fileMetaData = fileRepository.findByIdForUpdate(id);
+        if (fileMetaData.isEmpty()) {
+            return;
+        }
         fileRepository.deleteById(id);
+        releaseContent(List.of(fileMetaData.get()));
+        invalidateAfterCommit(id);
+    }
+
+    /**
+     * Deletes the files with the given ids in one statement and queues content nothing refers to any more for
+     * removal by the purger. Returns the ids of the files that existed.
+     */
+    @Transactional
+    public List<Long> deleteFiles(Collection<Long> ids) {
+        List<FileMetaData> rows = fileRepository.findAllByIdForUpdate(ids);
+        if (rows.isEmpty()) {
+            return List.of();
+        }
+        List<Long> deleted = rows.stream().map(FileMetaData::getId).toList();
+        fileRepository.deleteAllByIdInBatch(deleted);
+        releaseContent(rows);
+        deleted.forEach(this::invalidateAfterCommit);
+        return deleted;
+    }
+
+    /**
+     * Drops the references of deleted rows, locked by the caller, and of their thumbnails.
+     */
+    private void releaseContent(List<FileMetaData> rows) {
+        // released in digest order, like blobs are retained in saveFiles, so that deletes never deadlock
+        Map<String, Long> references = new TreeMap<>();
+        for (String derivativeHash : thumbnailService.removeDerivatives(rows.stream().map(FileMetaData::getId).toList())) {
+            references.merge(derivativeHash, 1L, Long::sum);
+        }
+        for (FileMetaData row : rows) {
+            if (row.getContentHash() != null) {
+                references.merge(row.getContentHash(), 1L, Long::sum);
+            } else if (row.getFilePath() != null) {
+                blobService.releaseLegacyFile(row.getFilePath());
+            }
+        }
+        references.forEach(blobService::release);
+    }
+
+    /**
+     * Drops the cached entry once the current transaction has completed, or right away outside a transaction.
+     * Invalidating earlier would let a concurrent reader load and cache the row as it was before the change.
+     * A load of the same id still in flight is dropped with the entry, so its result is never cached.
+     */
+    private void invalidateAfterCommit(Long id) {
+        if (id == null) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            fileMetaDataCache.synchronous().invalidate(id);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                fileMetaDataCache.synchronous().invalidate(id);
+            }
+        });
+    }
+
+    private static FileMetaData copyOf(FileMetaData fileMetaData) {
+        FileMetaData copy = new FileMetaData();
+        copy.setId(fileMetaData.getId());
+        copy.setFileName(fileMetaData.getFileName());
+        copy.setFilePath(fileMetaData.getFilePath());
+        copy.setFileType(fileMetaData.getFileType());
+        copy.setFileSize(fileMetaData.getFileSize());
+        copy.setContentHash(fileMetaData.getContentHash());
+        copy.setContentEncoding(fileMetaData.getContentEncoding());
+        copy.setLastModified(fileMetaData.getLastModified());
+        return copy;
+    }
+
+    private static String encodeCursor(String... position) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(String.join("\n", position).getBytes(StandardCharsets.UTF_8));
     }
 
+    private static String[] decodeCursor(String cursor, int parts) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] position = decoded.split("\n", parts);
+            if (position.length != parts) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return position;
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Invalid cursor", ex);
+        }
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+
+    private static long parseId(String id) {
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid cursor", ex);
+        }
+    }
+
+    private void attachBlob(FileMetaData fileMetaData, ContentBlob blob) {
+        fileMetaData.setContentHash(blob.getHash());
+        fileMetaData.setFileSize(blob.getSize());
+        fileMetaData.setContentEncoding(blob.getEncoding());
+        fileMetaData.setFilePath(blobService.filePath(blob.getHash()));
+    }
+
+    /**
+     * Runs the action in a transaction, retrying once if it lost a race with another transaction creating
+     * the same new blob.
+     */
+    private <T> T inTransactionWithRetry(Supplier<T> action) {
+        try {
+            return transactionTemplate.execute(status -> action.get());
+        } catch (DataIntegrityViolationException ex) {
+            return transactionTemplate.execute(status -> action.get());
+        }
+    }
+
+    /**
+     * Thrown when a file no longer is in the state a change was made against, e.g. the version named by If-Match.
+     */
+    public static class PreconditionFailedException extends RuntimeException {
+
+        public PreconditionFailedException(String message) {
+            super(message);
+        }
+    }
 }
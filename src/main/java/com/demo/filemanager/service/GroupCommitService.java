@@ -0,0 +1,213 @@
+package com.demo.filemanager.service;
+
+import com.demo.filemanager.config.ReplicaRoutingDataSource;
+import com.demo.filemanager.model.FileMetaData;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves the meta data of single uploads in groups, so that concurrent uploads share one transaction, and one
+ * commit, instead of paying for a commit each. The first upload to arrive opens a group, which collects the uploads
+ * arriving within {@code file.upload.group-commit.max-wait}, up to {@code max-size}, and is then saved with
+ * {@link FileService#saveFiles}. Uploads arriving while a group commits form the next group. Each caller waits for
+ * the commit of its group and gets its saved meta data, id included, only once the row is durable.
+ * <p>
+ * If a group fails as a whole, its files are saved one by one so that only the files at fault fail. As the group is
+ * saved by a thread of its own, the uploaders are recorded as recent writers with the read replica routing, if
+ * configured, before they are answered. When {@code file.upload.group-commit.enabled} is false every upload is
+ * saved in its own transaction.
+ */
+@Service
+@RequiredArgsConstructor
+public class GroupCommitService {
+
+    private static final Logger logger = LoggerFactory.getLogger(GroupCommitService.class);
+
+    // how often a committer waiting for uploads checks whether it is to stop
+    private static final long CLOSE_CHECK_MILLIS = 100;
+
+    private final FileService fileService;
+    private final MeterRegistry meterRegistry;
+    private final ObjectProvider<ReplicaRoutingDataSource> replicaRouting;
+
+    @Value("${file.upload.group-commit.enabled:false}")
+    private boolean enabled;
+
+    @Value("${file.upload.group-commit.max-wait:PT0.005S}")
+    private Duration maxWait = Duration.ofMillis(5);
+
+    @Value("${file.upload.group-commit.max-size:100}")
+    private int maxSize = 100;
+
+    private final BlockingQueue<PendingSave> queue = new LinkedBlockingQueue<>();
+    private volatile boolean closed;
+    private Thread committer;
+    private DistributionSummary groupSize;
+
+    private record PendingSave(FileMetaData file, BlobService.StagedBlob content, Authentication uploader,
+                               CompletableFuture<FileMetaData> saved) {
+    }
+
+    @PostConstruct
+    public void init() {
+        groupSize = DistributionSummary.builder("file.upload.group-commit.size")
+                .description("Uploads saved per transaction")
+                .register(meterRegistry);
+        if (enabled) {
+            committer = new Thread(this::commitGroups, "group-commit");
+            committer.setDaemon(true);
+            committer.start();
+        }
+    }
+
+    /**
+     * Saves what is still queued, finishing the group being committed, and stops.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        closed = true;
+        if (committer != null) {
+            committer.join(TimeUnit.SECONDS.toMillis(30));
+        }
+    }
+
+    /**
+     * Saves a new file whose content has been staged, like {@link FileService#saveFile(FileMetaData,
+     * BlobService.StagedBlob)}, returning once it has committed. The staged content must be kept until then.
+     */
+    public FileMetaData save(FileMetaData fileMetaData, BlobService.StagedBlob content) {
+        if (committer == null) {
+            return fileService.saveFile(fileMetaData, content);
+        }
+        PendingSave pending = new PendingSave(fileMetaData, content,
+                SecurityContextHolder.getContext().getAuthentication(), new CompletableFuture<>());
+        queue.add(pending);
+        // the committer only stops once closed with nothing queued, so a save it may have missed is taken back
+        if (closed && queue.remove(pending)) {
+            return fileService.saveFile(fileMetaData, content);
+        }
+        try {
+            // not interruptible: the caller discards the staged content when this returns
+            return pending.saved().join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    private void commitGroups() {
+        while (!closed || !queue.isEmpty()) {
+            List<PendingSave> group = nextGroup();
+            try {
+                commit(group);
+            } catch (Throwable ex) {
+                // never leave a caller waiting
+                group.forEach(pending -> pending.saved().completeExceptionally(ex));
+                logger.error("Saving a group of {} uploads failed", group.size(), ex);
+            }
+        }
+    }
+
+    /**
+     * Waits for the first save, then collects those arriving within the window. Once closed, takes what is queued
+     * without waiting.
+     */
+    private List<PendingSave> nextGroup() {
+        List<PendingSave> group = new ArrayList<>();
+        try {
+            PendingSave first = null;
+            while (first == null) {
+                if (closed) {
+                    queue.drainTo(group, maxSize);
+                    return group;
+                }
+                first = queue.poll(CLOSE_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            group.add(first);
+            queue.drainTo(group, maxSize - group.size());
+            long deadline = System.nanoTime() + maxWait.toNanos();
+            while (group.size() < maxSize) {
+                PendingSave next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    break;
+                }
+                group.add(next);
+                queue.drainTo(group, maxSize - group.size());
+            }
+        } catch (InterruptedException ex) {
+            // not expected, as shutdown lets the committer finish; what has been collected is saved all the same
+        }
+        return group;
+    }
+
+    private void commit(List<PendingSave> group) {
+        if (group.isEmpty()) {
+            return;
+        }
+        groupSize.record(group.size());
+        List<FileMetaData> files = new ArrayList<>(group.size());
+        List<BlobService.StagedBlob> contents = new ArrayList<>(group.size());
+        for (PendingSave pending : group) {
+            files.add(pending.file());
+            contents.add(pending.content());
+        }
+        FileMetaData[] saved = new FileMetaData[group.size()];
+        RuntimeException[] failures = new RuntimeException[group.size()];
+        try {
+            fileService.saveFiles(files, contents).toArray(saved);
+        } catch (RuntimeException ex) {
+            if (group.size() == 1) {
+                failures[0] = ex;
+            } else {
+                logger.warn("Saving a group of {} uploads failed, saving them one by one", group.size(), ex);
+                for (int i = 0; i < group.size(); i++) {
+                    PendingSave pending = group.get(i);
+                    pending.file().setId(null);
+                    try {
+                        saved[i] = fileService.saveFile(pending.file(), pending.content());
+                    } catch (RuntimeException failure) {
+                        failures[i] = failure;
+                    }
+                }
+            }
+        }
+
+        // recorded before anyone is answered, so that no uploader's next read can miss the upload
+        ReplicaRoutingDataSource routing = replicaRouting.getIfAvailable();
+        if (routing != null) {
+            for (int i = 0; i < group.size(); i++) {
+                if (saved[i] != null) {
+                    routing.recordWrite(group.get(i).uploader());
+                }
+            }
+        }
+        for (int i = 0; i < group.size(); i++) {
+            if (saved[i] != null) {
+                group.get(i).saved().complete(saved[i]);
+            } else {
+                group.get(i).saved().completeExceptionally(failures[i]);
+            }
+        }
+    }
+}
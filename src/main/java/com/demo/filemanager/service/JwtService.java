@@ -1,11 +1,30 @@
 package com.demo.filemanager.service;
 
+import io.jsonwebtoken.Claims;
 import org.springframework.security.core.userdetails.UserDetails;
 
+import java.util.Optional;
+
 public interface JwtService {
     String extractUserName(String token);
 
     String generateToken(UserDetails userDetails);
 
     boolean isTokenValid(String token, UserDetails userDetails);
+
+    /**
+     * Verifies the signature and expiry of the token once and returns its claims, so that a request can
+     * check everything else against them without parsing the token again.
+     *
+     * @throws io.jsonwebtoken.JwtException if the token is malformed, badly signed or expired
+     */
+    Claims verifyToken(String token);
+
+    boolean isTokenValid(Claims claims, UserDetails userDetails);
+
+    /**
+     * Rebuilds the principal from the subject and role claims of a verified token, without loading the user.
+     * Returns empty for tokens issued without a role claim.
+     */
+    Optional<UserDetails> extractPrincipal(Claims claims);
 }
@@ -4,66 +4,180 @@ import java.security.Key;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
+import com.demo.filemanager.enums.Role;
+import com.demo.filemanager.model.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
 
 @Service
+@RequiredArgsConstructor
 public class JwtServiceImpl implements JwtService {
+    private static final String ROLE_CLAIM = "role";
+
+    private final MeterRegistry meterRegistry;
+
     @Value("${token.signing.key}")
     private String jwtSigningKey;
+
+    @Value("${token.cache.enabled:true}")
+    private boolean tokenCacheEnabled = true;
+
+    @Value("${token.cache.max-size:10000}")
+    private long tokenCacheMaxSize = 10000;
+
+    private Key signingKey;
+    private JwtParser parser;
+    /**
+     * Claims of tokens whose signature has already been verified, each kept until the token expires.
+     */
+    private Cache<String, Claims> verifiedTokens;
+    private Timer validTokenTimer;
+    private Timer expiredTokenTimer;
+    private Timer invalidTokenTimer;
+
+    @PostConstruct
+    public void init() {
+        byte[] keyBytes = Decoders.BASE64.decode(jwtSigningKey);
+        signingKey = Keys.hmacShaKeyFor(keyBytes);
+        parser = Jwts.parserBuilder().setSigningKey(signingKey).build();
+        validTokenTimer = verificationTimer("valid");
+        expiredTokenTimer = verificationTimer("expired");
+        invalidTokenTimer = verificationTimer("invalid");
+        if (tokenCacheEnabled) {
+            verifiedTokens = Caffeine.newBuilder()
+                    .maximumSize(tokenCacheMaxSize)
+                    .expireAfter(new Expiry<String, Claims>() {
+                        @Override
+                        public long expireAfterCreate(String token, Claims claims, long currentTime) {
+                            if (claims.getExpiration() == null) {
+                                return 0;
+                            }
+                            long millisLeft = claims.getExpiration().getTime() - System.currentTimeMillis();
+                            return TimeUnit.MILLISECONDS.toNanos(Math.max(millisLeft, 0));
+                        }
+
+                        @Override
+                        public long expireAfterUpdate(String token, Claims claims, long currentTime, long currentDuration) {
+                            return currentDuration;
+                        }
+
+                        @Override
+                        public long expireAfterRead(String token, Claims claims, long currentTime, long currentDuration) {
+                            return currentDuration;
+                        }
+                    })
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "token.verified");
+        }
+    }
+
     @Override
     public String extractUserName(String token) {
-        return extractClaim(token, Claims::getSubject);
+        return verifyToken(token).getSubject();
     }
 
     @Override
     public String generateToken(UserDetails userDetails) {
-        return generateToken(new HashMap<>(), userDetails);
+        Map<String, Object> extraClaims = new HashMap<>();
+        if (userDetails instanceof User user && user.getRole() != null) {
+            extraClaims.put(ROLE_CLAIM, user.getRole().name());
+        }
+        return generateToken(extraClaims, userDetails);
     }
 
     @Override
     public boolean isTokenValid(String token, UserDetails userDetails) {
-        final String userName = extractUserName(token);
-        return (userName.equals(userDetails.getUsername())) && !isTokenExpired(token);
+        return isTokenValid(verifyToken(token), userDetails);
     }
 
-    private <T> T extractClaim(String token, Function<Claims, T> claimsResolvers) {
-        final Claims claims = extractAllClaims(token);
-        return claimsResolvers.apply(claims);
+    @Override
+    public Claims verifyToken(String token) {
+        if (verifiedTokens == null) {
+            return parse(token);
+        }
+        Claims claims = verifiedTokens.get(token, this::parse);
+        if (isTokenExpired(claims)) {
+            // the cache evicts on expiry, but only to within its own clock granularity
+            verifiedTokens.invalidate(token);
+            throw new ExpiredJwtException(null, claims, "JWT expired at " + claims.getExpiration());
+        }
+        return claims;
     }
 
-    private String generateToken(Map<String, Object> extraClaims, UserDetails userDetails) {
-        return Jwts.builder().setClaims(extraClaims).setSubject(userDetails.getUsername())
-                .setIssuedAt(new Date(System.currentTimeMillis()))
-                .setExpiration(new Date(System.currentTimeMillis() + 1000 * 60 * 24))
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256).compact();
+    @Override
+    public boolean isTokenValid(Claims claims, UserDetails userDetails) {
+        return claims.getSubject().equals(userDetails.getUsername()) && !isTokenExpired(claims);
     }
 
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    @Override
+    public Optional<UserDetails> extractPrincipal(Claims claims) {
+        String role = claims.get(ROLE_CLAIM, String.class);
+        if (role == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(User.builder().email(claims.getSubject()).role(Role.valueOf(role)).build());
+        } catch (IllegalArgumentException ex) {
+            return Optional.empty();
+        }
     }
 
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
+    /**
+     * Verifies the signature and parses the claims, timed by outcome.
+     */
+    private Claims parse(String token) {
+        long start = System.nanoTime();
+        try {
+            Claims claims = parser.parseClaimsJws(token).getBody();
+            validTokenTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return claims;
+        } catch (ExpiredJwtException ex) {
+            expiredTokenTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw ex;
+        } catch (JwtException | IllegalArgumentException ex) {
+            invalidTokenTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw ex;
+        }
     }
 
-    private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder().setSigningKey(getSigningKey()).build().parseClaimsJws(token)
-                .getBody();
+    private Timer verificationTimer(String outcome) {
+        return Timer.builder("auth.token.verification")
+                .description("Time to verify the signature of a token not found among the verified ones")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
     }
 
-    private Key getSigningKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(jwtSigningKey);
-        return Keys.hmacShaKeyFor(keyBytes);
+    private String generateToken(Map<String, Object> extraClaims, UserDetails userDetails) {
+        return Jwts.builder().setClaims(extraClaims).setSubject(userDetails.getUsername())
+                .setIssuedAt(new Date(System.currentTimeMillis()))
+                .setExpiration(new Date(System.currentTimeMillis() + 1000 * 60 * 24))
+                .signWith(signingKey, SignatureAlgorithm.HS256).compact();
+    }
+
+    private boolean isTokenExpired(Claims claims) {
+        return claims.getExpiration() == null || claims.getExpiration().before(new Date());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,190 @@
+package com.demo.filemanager.service;
+
+import com.demo.filemanager.dto.FileMetaDataDTO;
+import com.demo.filemanager.dto.StorageMigrationDTO;
+import com.demo.filemanager.enums.StorageMigrationState;
+import com.demo.filemanager.repository.FileRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Moves files stored before the blob store existed, directly under {@code file.storage.location} by their
+ * original name, into the hash-sharded blob store and points their meta data at it.
+ * <p>
+ * Runs online: each file is linked into the blob store and its row updated in its own transaction, and the flat
+ * file is only removed once a grace period has passed and no row refers to it any more, so downloads that
+ * resolved the old path just before the switch still find it.
+ */
+@Service
+@RequiredArgsConstructor
+public class StorageMigrationService {
+
+    private static final int PAGE_SIZE = 500;
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageMigrationService.class);
+
+    private final FileRepository fileRepository;
+    private final FileService fileService;
+    private final BlobService blobService;
+
+    @Value("${file.storage.migration.threads:4}")
+    private int threads = 4;
+
+    @Value("${file.storage.migration.grace-period:PT30S}")
+    private Duration gracePeriod = Duration.ofSeconds(30);
+
+    private final AtomicReference<Run> currentRun = new AtomicReference<>();
+
+    /**
+     * Starts a migration in the background. Returns false when one is already running.
+     */
+    public boolean start() {
+        Run previous = currentRun.get();
+        if (previous != null && previous.state == StorageMigrationState.RUNNING) {
+            return false;
+        }
+        Run run = new Run();
+        if (!currentRun.compareAndSet(previous, run)) {
+            return false;
+        }
+        Thread coordinator = new Thread(() -> migrate(run), "storage-migration");
+        coordinator.setDaemon(true);
+        coordinator.start();
+        return true;
+    }
+
+    public Optional<StorageMigrationDTO> getStatus() {
+        return Optional.ofNullable(currentRun.get()).map(Run::toDTO);
+    }
+
+    void migrate(Run run) {
+        logger.info("Storage migration started");
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        Set<String> migratedPaths = ConcurrentHashMap.newKeySet();
+        try {
+            long afterId = 0;
+            List<FileMetaDataDTO> page;
+            do {
+                page = fileRepository.findLegacyPage(afterId, PageRequest.of(0, PAGE_SIZE));
+                List<Future<?>> tasks = new ArrayList<>(page.size());
+                for (FileMetaDataDTO file : page) {
+                    tasks.add(workers.submit(() -> migrateFile(file, run, migratedPaths)));
+                }
+                for (Future<?> task : tasks) {
+                    task.get();
+                }
+                if (!page.isEmpty()) {
+                    afterId = page.get(page.size() - 1).getId();
+                }
+            } while (page.size() == PAGE_SIZE);
+
+            Thread.sleep(gracePeriod.toMillis());
+            for (String path : migratedPaths) {
+                removeLegacyFile(path, run);
+            }
+            run.finish(StorageMigrationState.COMPLETED);
+            logger.info("Storage migration completed: {}", run.toDTO());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            run.finish(StorageMigrationState.FAILED);
+        } catch (ExecutionException | RuntimeException ex) {
+            logger.error("Storage migration failed", ex);
+            run.finish(StorageMigrationState.FAILED);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private void migrateFile(FileMetaDataDTO file, Run run, Set<String> migratedPaths) {
+        run.scanned.incrementAndGet();
+        Path legacyFile = blobService.legacyFile(file.getFilePath());
+        if (legacyFile == null || !Files.isRegularFile(legacyFile)) {
+            run.missing.incrementAndGet();
+            return;
+        }
+
+        BlobService.StagedBlob staged = null;
+        try {
+            staged = blobService.stageCopy(legacyFile);
+            if (fileService.migrateLegacyFile(file.getId(), file.getFilePath(), staged).isPresent()) {
+                migratedPaths.add(file.getFilePath());
+                run.migrated.incrementAndGet();
+            } else {
+                run.skipped.incrementAndGet();
+            }
+        } catch (IOException | RuntimeException ex) {
+            logger.warn("Could not migrate file {} at {}", file.getId(), file.getFilePath(), ex);
+            run.failed.incrementAndGet();
+        } finally {
+            if (staged != null) {
+                blobService.discard(staged);
+            }
+        }
+    }
+
+    private void removeLegacyFile(String path, Run run) {
+        if (fileRepository.existsByFilePath(path)) {
+            // several rows shared the file, e.g. uploads with the same name; one has not been migrated
+            return;
+        }
+        try {
+            if (Files.deleteIfExists(blobService.legacyFile(path))) {
+                run.removed.incrementAndGet();
+            }
+        } catch (IOException ex) {
+            logger.warn("Could not remove migrated file {}", path, ex);
+        }
+    }
+
+    static class Run {
+        private final Instant startedAt = Instant.now();
+        private volatile Instant finishedAt;
+        private volatile StorageMigrationState state = StorageMigrationState.RUNNING;
+        private final AtomicLong scanned = new AtomicLong();
+        private final AtomicLong migrated = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong missing = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong removed = new AtomicLong();
+
+        private void finish(StorageMigrationState finalState) {
+            finishedAt = Instant.now();
+            state = finalState;
+        }
+
+        StorageMigrationDTO toDTO() {
+            StorageMigrationDTO dto = new StorageMigrationDTO();
+            dto.setState(state.name());
+            dto.setScanned(scanned.get());
+            dto.setMigrated(migrated.get());
+            dto.setSkipped(skipped.get());
+            dto.setMissing(missing.get());
+            dto.setFailed(failed.get());
+            dto.setRemoved(removed.get());
+            dto.setStartedAt(startedAt);
+            dto.setFinishedAt(finishedAt);
+            return dto;
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.demo.filemanager.service;
+
+import com.demo.filemanager.enums.DerivativeKind;
+import com.demo.filemanager.model.ContentBlob;
+import com.demo.filemanager.model.FileDerivative;
+import com.demo.filemanager.model.FileMetaData;
+import com.demo.filemanager.repository.FileDerivativeRepository;
+import com.demo.filemanager.repository.FileRepository;
+import com.demo.filemanager.util.FileValidation;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thumbnails of image files, generated in the background once new content has committed, so an upload never waits
+ * for them. Generation runs on a small pool with a bounded queue; when the queue is full the thumbnail is skipped
+ * and generated the first time it is asked for instead.
+ * <p>
+ * Images are decoded subsampled to about twice the thumbnail size, which keeps the memory a large image needs
+ * small, then scaled to fit {@code file.thumbnail.size} pixels. Thumbnails are stored in the blob store and
+ * replaced when the file gets new content.
+ * <p>
+ * Content that could not be turned into a thumbnail, such as an image that does not decode, is remembered for
+ * {@code file.thumbnail.failure-ttl} and not scheduled again in that time, however often its thumbnail is asked for.
+ */
+@Service
+@RequiredArgsConstructor
+public class ThumbnailService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailService.class);
+
+    private final FileRepository fileRepository;
+    private final FileDerivativeRepository fileDerivativeRepository;
+    private final BlobService blobService;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${file.thumbnail.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${file.thumbnail.size:256}")
+    private int size = 256;
+
+    @Value("${file.thumbnail.threads:2}")
+    private int threads = 2;
+
+    @Value("${file.thumbnail.queue-capacity:1000}")
+    private int queueCapacity = 1000;
+
+    @Value("${file.thumbnail.failure-cache-size:10000}")
+    private long failureCacheSize = 10000;
+
+    @Value("${file.thumbnail.failure-ttl:PT1H}")
+    private Duration failureTtl = Duration.ofHours(1);
+
+    // file id and content digest of the thumbnails queued or being generated
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    // file id and content digest of the thumbnails that could not be generated
+    private Cache<String, Boolean> failures;
+
+    private ThreadPoolExecutor workers;
+    private Counter generatedCounter;
+    private Counter failedCounter;
+    private Counter skippedCounter;
+
+    @PostConstruct
+    public void init() {
+        failures = Caffeine.newBuilder()
+                .maximumSize(failureCacheSize)
+                .expireAfterWrite(failureTtl)
+                .build();
+        AtomicInteger threadNumber = new AtomicInteger();
+        workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "thumbnail-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    // never compete with request threads
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        Gauge.builder("file.thumbnail.queue.depth", workers, pool -> pool.getQueue().size())
+                .description("Thumbnails waiting to be generated")
+                .register(meterRegistry);
+        generatedCounter = Counter.builder("file.thumbnail.generated")
+                .description("Thumbnails generated")
+                .register(meterRegistry);
+        failedCounter = Counter.builder("file.thumbnail.failed")
+                .description("Thumbnails that could not be generated")
+                .register(meterRegistry);
+        skippedCounter = Counter.builder("file.thumbnail.skipped")
+                .description("Thumbnails not queued because the queue was full")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Whether a thumbnail can be generated for the file: an image kept in the blob store.
+     */
+    public boolean supports(FileMetaData fileMetaData) {
+        return enabled && fileMetaData.getContentHash() != null && FileValidation.isImage(fileMetaData.getFileName());
+    }
+
+    /**
+     * Queues the thumbnail of the file's current content once the current transaction has committed, or right
+     * away outside a transaction.
+     */
+    public void generateAfterCommit(FileMetaData fileMetaData) {
+        if (!supports(fileMetaData)) {
+            return;
+        }
+        Long fileId = fileMetaData.getId();
+        String sourceHash = fileMetaData.getContentHash();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            schedule(fileId, sourceHash);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                schedule(fileId, sourceHash);
+            }
+        });
+    }
+
+    /**
+     * Queues the thumbnail of a file's content unless it is already queued or has recently failed. Never blocks.
+     */
+    public void schedule(Long fileId, String sourceHash) {
+        String key = key(fileId, sourceHash);
+        if (failures.getIfPresent(key) != null || !pending.add(key)) {
+            return;
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    generate(fileId, sourceHash);
+                } finally {
+                    pending.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            pending.remove(key);
+            skippedCounter.increment();
+            logger.debug("Thumbnail queue full, skipping file {}", fileId);
+        }
+    }
+
+    /**
+     * The thumbnail of the file's current content, if it has been generated.
+     */
+    public Optional<FileDerivative> findThumbnail(FileMetaData fileMetaData) {
+        if (fileMetaData.getContentHash() == null) {
+            return Optional.empty();
+        }
+        return fileDerivativeRepository.findByFileIdAndKind(fileMetaData.getId(), DerivativeKind.THUMBNAIL)
+                .filter(thumbnail -> fileMetaData.getContentHash().equals(thumbnail.getSourceHash()));
+    }
+
+    /**
+     * Deletes the derivatives of the given files and returns the digests of their content, for the caller to
+     * release along with the content of the files.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<String> removeDerivatives(Collection<Long> fileIds) {
+        List<FileDerivative> derivatives = fileDerivativeRepository.findByFileIdIn(fileIds);
+        if (derivatives.isEmpty()) {
+            return List.of();
+        }
+        fileDerivativeRepository.deleteAllInBatch(derivatives);
+        return derivatives.stream().map(FileDerivative::getContentHash).toList();
+    }
+
+    void generate(Long fileId, String sourceHash) {
+        try {
+            Optional<FileMetaData> file = fileRepository.findById(fileId)
+                    .filter(row -> sourceHash.equals(row.getContentHash()));
+            if (file.isEmpty()) {
+                // deleted, or given other content whose own thumbnail is queued
+                return;
+            }
+            BufferedImage image = read(file.get());
+            if (image == null) {
+                failures.put(key(fileId, sourceHash), Boolean.TRUE);
+                logger.debug("File {} is not an image that can be read", fileId);
+                return;
+            }
+            BufferedImage thumbnail = scale(image);
+            boolean opaque = !thumbnail.getColorModel().hasAlpha();
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            ImageIO.write(thumbnail, opaque ? "jpeg" : "png", encoded);
+
+            BlobService.StagedBlob staged = blobService.stage(new ByteArrayInputStream(encoded.toByteArray()));
+            try {
+                save(fileId, sourceHash, staged, opaque ? "image/jpeg" : "image/png", thumbnail);
+            } finally {
+                blobService.discard(staged);
+            }
+            generatedCounter.increment();
+        } catch (IOException | RuntimeException ex) {
+            failures.put(key(fileId, sourceHash), Boolean.TRUE);
+            failedCounter.increment();
+            logger.warn("Could not generate the thumbnail of file {}", fileId, ex);
+        }
+    }
+
+    private static String key(Long fileId, String sourceHash) {
+        return fileId + ":" + sourceHash;
+    }
+
+    private BufferedImage read(FileMetaData file) throws IOException {
+        try (InputStream in = blobService.content(file.getContentHash(), file.getContentEncoding(), file.getFileSize()).getInputStream();
+             ImageInputStream imageInput = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInput);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInput, true, true);
+                int longestSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, longestSide / (2 * size));
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private BufferedImage scale(BufferedImage image) {
+        double factor = Math.min(1.0, (double) size / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * factor));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * factor));
+        BufferedImage scaled = new BufferedImage(width, height,
+                image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    /**
+     * Records the thumbnail if the file still has the content it was generated from. The file row is locked
+     * first, as when its content is replaced, so a thumbnail of replaced content is never recorded.
+     */
+    private void save(Long fileId, String sourceHash, BlobService.StagedBlob staged, String contentType, BufferedImage thumbnail) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> saveLocked(fileId, sourceHash, staged, contentType, thumbnail));
+        } catch (DataIntegrityViolationException ex) {
+            // lost a race creating the same blob or derivative row
+            transactionTemplate.executeWithoutResult(status -> saveLocked(fileId, sourceHash, staged, contentType, thumbnail));
+        }
+    }
+
+    private void saveLocked(Long fileId, String sourceHash, BlobService.StagedBlob staged, String contentType, BufferedImage thumbnail) {
+        if (fileRepository.findByIdForUpdate(fileId).filter(row -> sourceHash.equals(row.getContentHash())).isEmpty()) {
+            return;
+        }
+        // no content type, so the thumbnail is never stored compressed: it already is
+        ContentBlob blob = blobService.retain(staged, null);
+        FileDerivative derivative = fileDerivativeRepository.findByFileIdAndKind(fileId, DerivativeKind.THUMBNAIL)
+                .orElseGet(() -> {
+                    FileDerivative created = new FileDerivative();
+                    created.setFileId(fileId);
+                    created.setKind(DerivativeKind.THUMBNAIL);
+                    return created;
+                });
+        String previousHash = derivative.getContentHash();
+        derivative.setSourceHash(sourceHash);
+        derivative.setContentHash(blob.getHash());
+        derivative.setContentType(contentType);
+        derivative.setSize(blob.getSize());
+        derivative.setWidth(thumbnail.getWidth());
+        derivative.setHeight(thumbnail.getHeight());
+        derivative.setCreatedAt(Instant.now());
+        fileDerivativeRepository.save(derivative);
+        if (previousHash != null) {
+            blobService.release(previousHash);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.demo.filemanager.service;
+
+import com.demo.filemanager.enums.UploadSessionStatus;
+import com.demo.filemanager.model.FileMetaData;
+import com.demo.filemanager.model.UploadSession;
+import com.demo.filemanager.repository.UploadSessionRepository;
+import com.demo.filemanager.util.FileValidation;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Resumable uploads for files too large for a single multipart request. A session collects numbered parts
+ * on disk, in any order and in parallel, and a commit concatenates them into one file in the blob store.
+ */
+@Service
+@RequiredArgsConstructor
+public class UploadSessionService {
+
+    private static final String SESSIONS_DIRECTORY = ".sessions";
+    private static final String PART_SUFFIX = ".part";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadSessionService.class);
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final FileService fileService;
+    private final BlobService blobService;
+
+    @Value("${file.storage.location}")
+    private String fileStorageLocation;
+
+    @Value("${file.upload.session.max-part-size:67108864}")
+    private long maxPartSize = 64L * 1024 * 1024;
+
+    @Value("${file.upload.session.max-parts:10000}")
+    private int maxParts = 10000;
+
+    @Value("${file.upload.session.ttl:PT24H}")
+    private Duration sessionTtl = Duration.ofHours(24);
+
+    public UploadSession createSession(String fileName, String fileType) throws IOException {
+        if (!FileValidation.isPlainFileName(fileName) || !FileValidation.hasAllowedExtension(fileName)) {
+            throw new IllegalArgumentException("Invalid file type!");
+        }
+
+        Instant now = Instant.now();
+        UploadSession session = new UploadSession();
+        session.setId(UUID.randomUUID().toString());
+        session.setFileName(fileName);
+        session.setFileType(fileType);
+        session.setStatus(UploadSessionStatus.OPEN);
+        session.setCreatedAt(now);
+        session.setLastActivityAt(now);
+
+        Files.createDirectories(sessionDirectory(session.getId()));
+        return uploadSessionRepository.save(session);
+    }
+
+    public Optional<UploadSession> getSession(String sessionId) {
+        return uploadSessionRepository.findById(sessionId);
+    }
+
+    public Instant expiresAt(UploadSession session) {
+        return session.getLastActivityAt().plus(sessionTtl);
+    }
+
+    /**
+     * Stores one part. The bytes are written to a temporary file and moved into place only once complete,
+     * so a dropped connection never leaves a truncated part that looks received. Re-sending a part replaces it.
+     */
+    public void storePart(String sessionId, int partNumber, InputStream content) throws IOException {
+        if (partNumber < 1 || partNumber > maxParts) {
+            throw new IllegalArgumentException("Part number must be between 1 and " + maxParts);
+        }
+        if (uploadSessionRepository.touch(sessionId, UploadSessionStatus.OPEN, Instant.now()) == 0) {
+            throw new IllegalStateException("Upload session is not open");
+        }
+
+        Path sessionDirectory = sessionDirectory(sessionId);
+        Path tempFile = Files.createTempFile(sessionDirectory, partNumber + "-", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tempFile, StandardOpenOption.TRUNCATE_EXISTING)) {
+                copyWithLimit(content, out, maxPartSize);
+            }
+            Files.move(tempFile, sessionDirectory.resolve(partNumber + PART_SUFFIX),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    public List<Integer> getReceivedParts(String sessionId) throws IOException {
+        List<Integer> parts = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(sessionDirectory(sessionId), "*" + PART_SUFFIX)) {
+            for (Path part : stream) {
+                String name = part.getFileName().toString();
+                parts.add(Integer.parseInt(name.substring(0, name.length() - PART_SUFFIX.length())));
+            }
+        } catch (NoSuchFileException ex) {
+            return Collections.emptyList();
+        }
+        Collections.sort(parts);
+        return parts;
+    }
+
+    /**
+     * Concatenates parts 1..n into the stored file with channel-to-channel transfers and records its meta data.
+     * Parts must be contiguous; on failure the session is reopened so the missing parts can still be sent.
+     */
+    public FileMetaData commit(String sessionId) throws IOException {
+        if (uploadSessionRepository.transition(sessionId, UploadSessionStatus.OPEN, UploadSessionStatus.COMMITTING, Instant.now()) == 0) {
+            throw new IllegalStateException("Upload session is not open");
+        }
+
+        Path sessionDirectory = sessionDirectory(sessionId);
+        Path assembled = sessionDirectory.resolve("assembled");
+        try {
+            UploadSession session = uploadSessionRepository.findById(sessionId)
+                    .orElseThrow(() -> new IllegalStateException("Upload session is not open"));
+
+            List<Integer> parts = getReceivedParts(sessionId);
+            if (parts.isEmpty() || parts.get(parts.size() - 1) != parts.size()) {
+                throw new IllegalStateException("Upload session is missing parts");
+            }
+
+            try (FileChannel target = FileChannel.open(assembled, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                for (int part : parts) {
+                    try (FileChannel source = FileChannel.open(sessionDirectory.resolve(part + PART_SUFFIX), StandardOpenOption.READ)) {
+                        long size = source.size();
+                        long position = 0;
+                        while (position < size) {
+                            position += source.transferTo(position, size - position, target);
+                        }
+                    }
+                }
+                target.force(true);
+            }
+
+            FileMetaData metaData = new FileMetaData();
+            metaData.setFileName(session.getFileName());
+            metaData.setFileType(session.getFileType());
+            FileMetaData savedFile = fileService.saveFile(metaData, blobService.stage(assembled));
+
+            discard(sessionId);
+            return savedFile;
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(assembled);
+            uploadSessionRepository.transition(sessionId, UploadSessionStatus.COMMITTING, UploadSessionStatus.OPEN, Instant.now());
+            throw ex;
+        }
+    }
+
+    public void abort(String sessionId) throws IOException {
+        discard(sessionId);
+    }
+
+    /**
+     * Removes sessions that have seen no activity for longer than the configured TTL, together with their parts.
+     */
+    @Scheduled(fixedDelayString = "${file.upload.session.sweep-interval:PT5M}")
+    public void expireSessions() {
+        Instant cutoff = Instant.now().minus(sessionTtl);
+        for (UploadSession session : uploadSessionRepository.findByLastActivityAtBefore(cutoff)) {
+            try {
+                discard(session.getId());
+                logger.info("Expired upload session {}", session.getId());
+            } catch (IOException ex) {
+                logger.warn("Could not remove expired upload session {}", session.getId(), ex);
+            }
+        }
+    }
+
+    private void discard(String sessionId) throws IOException {
+        uploadSessionRepository.deleteById(sessionId);
+        FileSystemUtils.deleteRecursively(sessionDirectory(sessionId));
+    }
+
+    private Path sessionDirectory(String sessionId) {
+        // session ids come from the URL; only well-formed UUIDs may name a directory
+        String directoryName = UUID.fromString(sessionId).toString();
+        Path sessions = Paths.get(fileStorageLocation, SESSIONS_DIRECTORY).toAbsolutePath().normalize();
+        Path directory = sessions.resolve(directoryName).normalize();
+        if (!directory.startsWith(sessions)) {
+            throw new IllegalArgumentException("Invalid upload session id");
+        }
+        return directory;
+    }
+
+    private static void copyWithLimit(InputStream in, OutputStream out, long limit) throws IOException {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            total += read;
+            if (total > limit) {
+                throw new IllegalArgumentException("Part exceeds the maximum size of " + limit + " bytes");
+            }
+            out.write(buffer, 0, read);
+        }
+    }
+}
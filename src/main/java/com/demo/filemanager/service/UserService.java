@@ -1,7 +1,28 @@
 package com.demo.filemanager.service;
 
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 
 public interface UserService {
     UserDetailsService userDetailsService();
+
+    /**
+     * Stores a re-encoded password for a user, e.g. after the configured hashing cost was raised.
+     */
+    UserDetailsPasswordService userDetailsPasswordService();
+
+    /**
+     * Loads the principal of an already authenticated request. Principals are cached by email and carry no
+     * password, so this must not be used to check credentials.
+     *
+     * @throws org.springframework.security.core.userdetails.UsernameNotFoundException if no such user exists
+     */
+    UserDetails loadPrincipal(String email);
+
+    /**
+     * Drops the cached principal once the current transaction has completed. Call whenever a user is changed
+     * or deleted.
+     */
+    void evictPrincipal(String email);
 }
@@ -1,16 +1,24 @@
 package com.demo.filemanager.service;
 
+import com.demo.filemanager.model.User;
 import com.demo.filemanager.repository.UserRepository;
+import com.demo.filemanager.util.CacheLoading;
+import com.demo.filemanager.util.ReplicaReads;
+import com.github.benmanes.caffeine.cache.AsyncCache;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 @Service
 @RequiredArgsConstructor
 public class UserServiceImpl implements UserService {
     private final UserRepository userRepository;
+    private final AsyncCache<String, User> userPrincipalCache;
     @Override
     public UserDetailsService userDetailsService() {
         return new UserDetailsService() {
@@ -21,4 +29,49 @@ public class UserServiceImpl implements UserService {
             }
         };
     }
+
+    @Override
+    public UserDetailsPasswordService userDetailsPasswordService() {
+        return (userDetails, newPassword) -> {
+            User user = userRepository.findByEmail(userDetails.getUsername())
+                    .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+            user.setPassword(newPassword);
+            User saved = userRepository.save(user);
+            evictPrincipal(saved.getEmail());
+            return saved;
+        };
+    }
+
+    @Override
+    public UserDetails loadPrincipal(String email) {
+        // a user who has just signed up may not have reached the replica yet, so a miss is retried on the primary
+        User principal = CacheLoading.get(userPrincipalCache, email, key -> ReplicaReads.read(() -> userRepository.findByEmail(key))
+                .or(() -> userRepository.findByEmail(key))
+                .map(UserServiceImpl::principalOf)
+                .orElse(null));
+        if (principal == null) {
+            throw new UsernameNotFoundException("User not found");
+        }
+        return principal;
+    }
+
+    @Override
+    public void evictPrincipal(String email) {
+        // evicting before commit would let a concurrent request cache the user as it was before the change
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            userPrincipalCache.synchronous().invalidate(email);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                userPrincipalCache.synchronous().invalidate(email);
+            }
+        });
+    }
+
+    private static User principalOf(User user) {
+        return User.builder().id(user.getId()).firstName(user.getFirstName()).lastName(user.getLastName())
+                .email(user.getEmail()).role(user.getRole()).build();
+    }
 }
@@ -0,0 +1,56 @@
+package com.demo.filemanager.storage;
+
+import com.demo.filemanager.enums.ContentEncoding;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Content stored compressed, read back as it was uploaded. The bytes are decompressed as they are streamed, so
+ * reading from an offset decompresses everything before it.
+ */
+public class DecodingResource extends AbstractResource {
+
+    private final Resource encoded;
+    private final ContentEncoding encoding;
+    private final long decodedLength;
+
+    public DecodingResource(Resource encoded, ContentEncoding encoding, long decodedLength) {
+        this.encoded = encoded;
+        this.encoding = encoding;
+        this.decodedLength = decodedLength;
+    }
+
+    @Override
+    public boolean exists() {
+        return encoded.exists();
+    }
+
+    @Override
+    public long contentLength() {
+        return decodedLength;
+    }
+
+    @Override
+    public long lastModified() throws IOException {
+        return encoded.lastModified();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        InputStream in = encoded.getInputStream();
+        try {
+            return encoding.decode(in);
+        } catch (IOException | RuntimeException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public String getDescription() {
+        return encoding.getToken() + "-decoded " + encoded.getDescription();
+    }
+}
@@ -0,0 +1,76 @@
+package com.demo.filemanager.storage;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Local storage that serves small objects from memory-mapped buffers kept for recently read keys, so a hot file
+ * costs no open, read or close system calls once mapped. Objects above {@code maxMappedFileSize} are read like in
+ * {@link LocalStorageBackend}, and the mappings kept are bounded by their total size.
+ * <p>
+ * Objects are only ever replaced by renaming a new file into place, never truncated, so a mapping stays valid
+ * until it is dropped, at worst serving the previous content of a key briefly.
+ */
+public class MappedStorageBackend extends LocalStorageBackend {
+
+    private final long maxMappedFileSize;
+    private final Cache<String, MappedByteBuffer> mappings;
+
+    public MappedStorageBackend(Path root, long maxMappedFileSize, long maxMappedBytes) {
+        super(root);
+        this.maxMappedFileSize = maxMappedFileSize;
+        this.mappings = Caffeine.newBuilder()
+                .maximumWeight(maxMappedBytes)
+                .weigher((String key, MappedByteBuffer buffer) -> Math.max(1, buffer.capacity()))
+                .build();
+    }
+
+    @Override
+    public void put(String key, InputStream content, long size) throws IOException {
+        super.put(key, content, size);
+        mappings.invalidate(key);
+    }
+
+    @Override
+    public void putFile(String key, Path file) throws IOException {
+        super.putFile(key, file);
+        mappings.invalidate(key);
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        MappedByteBuffer mapping = mappings.getIfPresent(key);
+        if (mapping == null) {
+            Path path = resolve(key);
+            if (Files.size(path) > maxMappedFileSize) {
+                return super.get(key, offset, length);
+            }
+            // mapped outside the cache's locks; two threads mapping the same key at once is harmless
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            mappings.put(key, mapping);
+        }
+
+        ByteBuffer view = mapping.duplicate();
+        int start = (int) Math.min(offset, view.capacity());
+        int end = length < 0 ? view.capacity() : (int) Math.min(view.capacity(), start + length);
+        view.position(start).limit(end);
+        return new ByteBufferInputStream(view);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        super.delete(key);
+        mappings.invalidate(key);
+    }
+}
@@ -0,0 +1,158 @@
+package com.demo.filemanager.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+
+/**
+ * Objects in a bucket of an S3-compatible object store, addressed path-style ({@code <endpoint>/<bucket>/<key>})
+ * as MinIO, Ceph and similar stores expect. Requests are signed with Signature Version 4; uploads stream the
+ * content with an unsigned payload, so the endpoint should be HTTPS outside of tests.
+ */
+public class S3StorageBackend implements StorageBackend {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofMinutes(5);
+
+    // requests that may be sent twice without harm
+    private static final Set<String> RETRIED_METHODS = Set.of("GET", "HEAD", "DELETE");
+
+    private final HttpClient httpClient;
+    private final URI endpoint;
+    private final String bucket;
+    private final String prefix;
+    private final AwsV4Signer signer;
+
+    public S3StorageBackend(URI endpoint, String bucket, String prefix, String region, String accessKey, String secretKey) {
+        this.httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+        this.endpoint = endpoint;
+        this.bucket = bucket;
+        this.prefix = prefix == null ? "" : prefix;
+        this.signer = new AwsV4Signer(accessKey, secretKey, region, "s3");
+    }
+
+    @Override
+    public void put(String key, InputStream content, long size) throws IOException {
+        HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.fromPublisher(
+                HttpRequest.BodyPublishers.ofInputStream(() -> content), size);
+        HttpResponse<String> response = send(request("PUT", key, Collections.emptyMap(), AwsV4Signer.UNSIGNED_PAYLOAD)
+                .PUT(body).build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("PUT " + key + " failed with status " + response.statusCode() + ": " + response.body());
+        }
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        if (length == 0) {
+            return InputStream.nullInputStream();
+        }
+        Map<String, String> headers = Collections.emptyMap();
+        if (offset > 0 || length > 0) {
+            headers = Map.of("Range", "bytes=" + offset + "-" + (length > 0 ? String.valueOf(offset + length - 1) : ""));
+        }
+        HttpResponse<InputStream> response = send(request("GET", key, headers, AwsV4Signer.EMPTY_PAYLOAD_HASH)
+                .GET().build(), HttpResponse.BodyHandlers.ofInputStream());
+        int status = response.statusCode();
+        if (status == 200 || status == 206) {
+            return response.body();
+        }
+        response.body().close();
+        if (status == 404) {
+            throw new NoSuchFileException(key);
+        }
+        if (status == 416) {
+            // the offset is at or past the end of the object
+            return InputStream.nullInputStream();
+        }
+        throw new IOException("GET " + key + " failed with status " + status);
+    }
+
+    @Override
+    public Optional<StorageStat> stat(String key) throws IOException {
+        HttpResponse<Void> response = send(request("HEAD", key, Collections.emptyMap(), AwsV4Signer.EMPTY_PAYLOAD_HASH)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() == 404) {
+            return Optional.empty();
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("HEAD " + key + " failed with status " + response.statusCode());
+        }
+        OptionalLong size = response.headers().firstValueAsLong("Content-Length");
+        Instant lastModified = response.headers().firstValue("Last-Modified")
+                .map(value -> ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant())
+                .orElse(null);
+        return Optional.of(new StorageStat(size.orElse(0), lastModified));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        HttpResponse<String> response = send(request("DELETE", key, Collections.emptyMap(), AwsV4Signer.EMPTY_PAYLOAD_HASH)
+                .DELETE().build(), HttpResponse.BodyHandlers.ofString());
+        int status = response.statusCode();
+        if (status != 204 && status != 200 && status != 404) {
+            throw new IOException("DELETE " + key + " failed with status " + status + ": " + response.body());
+        }
+    }
+
+    private HttpRequest.Builder request(String method, String key, Map<String, String> headers, String payloadHash) {
+        URI uri = objectUri(key);
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri).timeout(REQUEST_TIMEOUT);
+        headers.forEach(builder::header);
+        signer.sign(method, uri, headers, payloadHash, Instant.now()).forEach(builder::header);
+        return builder;
+    }
+
+    private URI objectUri(String key) {
+        StringBuilder path = new StringBuilder(endpoint.getRawPath() == null ? "" : endpoint.getRawPath().replaceAll("/+$", ""));
+        path.append('/').append(encode(bucket));
+        for (String segment : (prefix + key).split("/")) {
+            if (!segment.isEmpty()) {
+                path.append('/').append(encode(segment));
+            }
+        }
+        return endpoint.resolve(path.toString());
+    }
+
+    private static String encode(String segment) {
+        // RFC 3986 unreserved characters stay as they are, as Signature Version 4 requires
+        return URLEncoder.encode(segment, StandardCharsets.UTF_8).replace("+", "%20").replace("*", "%2A").replace("%7E", "~");
+    }
+
+    /**
+     * Sends a request, once more if it is idempotent and failed on the way, as when a pooled connection turns out
+     * to have been closed by the store. Uploads are not sent again, as their content has been read already.
+     */
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException {
+        try {
+            try {
+                return httpClient.send(request, handler);
+            } catch (IOException ex) {
+                if (!RETRIED_METHODS.contains(request.method()) || ex instanceof InterruptedIOException
+                        || ex instanceof HttpTimeoutException) {
+                    throw ex;
+                }
+                return httpClient.send(request, handler);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during " + request.method() + " " + request.uri());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.demo.filemanager.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Where file content is kept. Objects are addressed by a relative key such as {@code ab/cd/<sha256>}, written
+ * whole and read as streams, optionally starting at an offset, so no implementation ever needs an object in memory.
+ * Selected with {@code file.storage.backend}.
+ */
+public interface StorageBackend {
+
+    /**
+     * Stores exactly {@code size} bytes read from the content under the key, replacing any object already there.
+     * Readers see either the previous object or the complete new one.
+     */
+    void put(String key, InputStream content, long size) throws IOException;
+
+    /**
+     * Stores a local file under the key. The file may be moved rather than copied, so the caller must not use it
+     * afterwards.
+     */
+    default void putFile(String key, Path file) throws IOException {
+        try (InputStream content = Files.newInputStream(file)) {
+            put(key, content, Files.size(file));
+        }
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Opens {@code length} bytes of the object starting at {@code offset}, or everything from the offset when the
+     * length is negative. Reading past the end of the object yields fewer bytes.
+     *
+     * @throws java.nio.file.NoSuchFileException if there is no object with that key
+     */
+    InputStream get(String key, long offset, long length) throws IOException;
+
+    Optional<StorageStat> stat(String key) throws IOException;
+
+    /**
+     * Removes the object; does nothing when there is none.
+     */
+    void delete(String key) throws IOException;
+
+    /**
+     * The local file holding the object, for backends that keep one, so it can be handed to zero-copy transfers.
+     */
+    default Optional<Path> localPath(String key) {
+        return Optional.empty();
+    }
+}
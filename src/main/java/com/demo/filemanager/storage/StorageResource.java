@@ -0,0 +1,81 @@
+package com.demo.filemanager.storage;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * An object of a {@link StorageBackend} as a Spring {@link org.springframework.core.io.Resource}, so downloads can
+ * return it as the response body whatever the backend. The object is looked up once per resource.
+ */
+public class StorageResource extends AbstractResource {
+
+    private final StorageBackend storageBackend;
+    private final String key;
+    private StorageStat stat;
+
+    public StorageResource(StorageBackend storageBackend, String key) {
+        this.storageBackend = storageBackend;
+        this.key = key;
+    }
+
+    @Override
+    public boolean exists() {
+        try {
+            return stat() != null;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return requireStat().getSize();
+    }
+
+    @Override
+    public long lastModified() throws IOException {
+        StorageStat found = requireStat();
+        return found.getLastModified() == null ? 0 : found.getLastModified().toEpochMilli();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return storageBackend.get(key, 0, -1);
+    }
+
+    /**
+     * Opens {@code length} bytes starting at {@code offset} without reading what comes before.
+     */
+    public InputStream getInputStream(long offset, long length) throws IOException {
+        return storageBackend.get(key, offset, length);
+    }
+
+    public Optional<Path> getLocalPath() {
+        return storageBackend.localPath(key);
+    }
+
+    @Override
+    public String getDescription() {
+        return "Storage object [" + key + "]";
+    }
+
+    private StorageStat stat() throws IOException {
+        if (stat == null) {
+            stat = storageBackend.stat(key).orElse(null);
+        }
+        return stat;
+    }
+
+    private StorageStat requireStat() throws IOException {
+        StorageStat found = stat();
+        if (found == null) {
+            throw new FileNotFoundException(getDescription() + " does not exist");
+        }
+        return found;
+    }
+}
@@ -0,0 +1,13 @@
+package com.demo.filemanager.storage;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.Instant;
+
+@Getter
+@RequiredArgsConstructor
+public class StorageStat {
+    private final long size;
+    private final Instant lastModified;
+}
@@ -0,0 +1,47 @@
+package com.demo.filemanager.util;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Cache loads that block on I/O outside the cache's own locks.
+ * <p>
+ * A synchronous Caffeine {@code Cache.get(key, loader)} runs the loader inside {@code ConcurrentHashMap.compute},
+ * i.e. while holding a {@code synchronized} bin lock. A JDBC call made there pins a virtual thread to its carrier
+ * and blocks every other thread hashing to the same bin. Here only an empty future is installed under the lock;
+ * the caller that installed it runs the loader afterwards and concurrent callers for the same key wait on that
+ * future. Invalidating the key while the load is in flight still keeps its result out of the cache.
+ */
+public final class CacheLoading {
+
+    private CacheLoading() {
+    }
+
+    /**
+     * Returns the cached value, loading it on the calling thread when absent. A {@code null} result is returned
+     * but not cached.
+     */
+    public static <K, V> V get(AsyncCache<K, V> cache, K key, Function<? super K, ? extends V> loader) {
+        CompletableFuture<V> pending = new CompletableFuture<>();
+        CompletableFuture<V> entry = cache.get(key, (k, executor) -> pending);
+        if (entry == pending) {
+            try {
+                pending.complete(loader.apply(key));
+            } catch (RuntimeException | Error ex) {
+                pending.completeExceptionally(ex);
+                throw ex;
+            }
+        }
+        try {
+            return entry.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+}
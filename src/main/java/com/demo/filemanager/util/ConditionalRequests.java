@@ -0,0 +1,141 @@
+package com.demo.filemanager.util;
+
+import com.demo.filemanager.enums.ContentEncoding;
+import com.demo.filemanager.model.FileMetaData;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Validators of files and the evaluation of the conditional request headers comparing against them.
+ * <p>
+ * A download is identified by the digest of its content, which changes exactly when the bytes do; files stored
+ * before the blob store existed, and the meta data of any file, by a digest of the meta data fields. Content sent
+ * compressed, as it is stored, is a representation of its own with the content-coding appended to its ETag.
+ * Timestamps are compared with the one-second precision of HTTP dates.
+ */
+public final class ConditionalRequests {
+
+    private ConditionalRequests() {
+    }
+
+    public static String contentETag(String contentHash) {
+        return "\"" + contentHash + "\"";
+    }
+
+    public static String metaDataETag(FileMetaData fileMetaData) {
+        String fields = fileMetaData.getId() + "\n" + fileMetaData.getFileName() + "\n" + fileMetaData.getFilePath() + "\n"
+                + fileMetaData.getFileType() + "\n" + fileMetaData.getFileSize() + "\n" + fileMetaData.getContentHash() + "\n"
+                + fileMetaData.getLastModified();
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(fields.getBytes(StandardCharsets.UTF_8));
+            return "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    public static String downloadETag(FileMetaData fileMetaData) {
+        return downloadETag(fileMetaData, null);
+    }
+
+    /**
+     * The ETag of a download sent with the given content-coding, or as uploaded when that is null.
+     */
+    public static String downloadETag(FileMetaData fileMetaData, ContentEncoding sentEncoding) {
+        if (fileMetaData.getContentHash() == null) {
+            return metaDataETag(fileMetaData);
+        }
+        return sentEncoding == null
+                ? contentETag(fileMetaData.getContentHash())
+                : contentETag(fileMetaData.getContentHash() + "-" + sentEncoding.getToken());
+    }
+
+    /**
+     * Evaluates the preconditions of a GET in the order RFC 9110 gives them. Returns the status to answer with
+     * instead of the content, 412 or 304, or null when the content is to be sent.
+     */
+    public static HttpStatus evaluate(HttpHeaders headers, String etag, Instant lastModified) {
+        List<String> ifMatch = headers.getIfMatch();
+        long ifUnmodifiedSince = headers.getIfUnmodifiedSince();
+        if (!ifMatch.isEmpty()) {
+            if (!matches(ifMatch, etag, false)) {
+                return HttpStatus.PRECONDITION_FAILED;
+            }
+        } else if (ifUnmodifiedSince != -1 && lastModified != null
+                && lastModified.getEpochSecond() > ifUnmodifiedSince / 1000) {
+            return HttpStatus.PRECONDITION_FAILED;
+        }
+
+        List<String> ifNoneMatch = headers.getIfNoneMatch();
+        if (!ifNoneMatch.isEmpty()) {
+            return matches(ifNoneMatch, etag, true) ? HttpStatus.NOT_MODIFIED : null;
+        }
+        long ifModifiedSince = headers.getIfModifiedSince();
+        if (ifModifiedSince != -1 && lastModified != null && lastModified.getEpochSecond() <= ifModifiedSince / 1000) {
+            return HttpStatus.NOT_MODIFIED;
+        }
+        return null;
+    }
+
+    /**
+     * Whether an If-Match header lets a file be changed: it has to name the current ETag of either its download,
+     * in any of the forms it is sent in, or its meta data.
+     */
+    public static boolean ifMatch(String ifMatch, FileMetaData current) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfMatch(ifMatch);
+        List<String> candidates = headers.getIfMatch();
+        return matches(candidates, downloadETag(current), false)
+                || (current.getContentEncoding() != null && matches(candidates, downloadETag(current, current.getContentEncoding()), false))
+                || matches(candidates, metaDataETag(current), false);
+    }
+
+    /**
+     * Whether an If-Range header still describes the current file, so that the requested range can be sent rather
+     * than the whole file. Only strong validators qualify.
+     */
+    public static boolean ifRangeMatches(String ifRange, String etag, Instant lastModified) {
+        String value = ifRange.trim();
+        if (value.startsWith("\"")) {
+            return value.equals(etag);
+        }
+        if (value.startsWith("W/") || lastModified == null) {
+            return false;
+        }
+        try {
+            return ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond() == lastModified.getEpochSecond();
+        } catch (DateTimeParseException ex) {
+            return false;
+        }
+    }
+
+    private static boolean matches(List<String> candidates, String etag, boolean weakComparison) {
+        for (String candidate : candidates) {
+            if ("*".equals(candidate)) {
+                return true;
+            }
+            if (weakComparison) {
+                if (stripWeak(candidate).equals(stripWeak(etag))) {
+                    return true;
+                }
+            } else if (candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+}
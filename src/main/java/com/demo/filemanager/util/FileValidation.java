@@ -0,0 +1,73 @@
+package com.demo.filemanager.util;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+public final class FileValidation {
+
+    public static final String[] ALLOWED_EXTENSIONS = { "png", "jpeg", "jpg", "docx", "pdf", "xlsx" };
+
+    public static final String[] IMAGE_EXTENSIONS = { "png", "jpeg", "jpg" };
+
+    // formats compressed already, which deflating again only slows down
+    public static final String[] COMPRESSED_EXTENSIONS = { "png", "jpeg", "jpg", "docx", "xlsx" };
+
+    public static final long MAX_FILE_SIZE = 5 * 1024 * 1024;
+
+    // leading bytes every file of the type starts with; docx and xlsx are ZIP containers
+    private static final byte[] PNG_SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+    private static final byte[] JPEG_SIGNATURE = { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF };
+    private static final byte[] PDF_SIGNATURE = { '%', 'P', 'D', 'F', '-' };
+    private static final byte[] ZIP_SIGNATURE = { 'P', 'K', 3, 4 };
+    private static final Map<String, byte[]> SIGNATURES = Map.of("png", PNG_SIGNATURE, "jpeg", JPEG_SIGNATURE,
+            "jpg", JPEG_SIGNATURE, "pdf", PDF_SIGNATURE, "docx", ZIP_SIGNATURE, "xlsx", ZIP_SIGNATURE);
+
+    // bytes of content that are enough to check any signature
+    public static final int SIGNATURE_LENGTH = 8;
+
+    private FileValidation() {
+    }
+
+    public static String extensionOf(String fileName) {
+        if (fileName == null) {
+            return "";
+        }
+        return fileName.substring(fileName.lastIndexOf(".") + 1);
+    }
+
+    public static boolean hasAllowedExtension(String fileName) {
+        String fileExtension = extensionOf(fileName);
+        return Arrays.stream(ALLOWED_EXTENSIONS).anyMatch(ext -> ext.equalsIgnoreCase(fileExtension));
+    }
+
+    /**
+     * Whether a name names a file and nothing else: no directories, absolute or relative, and no "." or "..".
+     */
+    public static boolean isPlainFileName(String fileName) {
+        return fileName != null && !fileName.isBlank() && fileName.indexOf('/') < 0 && fileName.indexOf('\\') < 0
+                && fileName.indexOf('\0') < 0 && !fileName.equals(".") && !fileName.equals("..");
+    }
+
+    public static boolean isImage(String fileName) {
+        String fileExtension = extensionOf(fileName);
+        return Arrays.stream(IMAGE_EXTENSIONS).anyMatch(ext -> ext.equalsIgnoreCase(fileExtension));
+    }
+
+    public static boolean isCompressed(String fileName) {
+        String fileExtension = extensionOf(fileName);
+        return Arrays.stream(COMPRESSED_EXTENSIONS).anyMatch(ext -> ext.equalsIgnoreCase(fileExtension));
+    }
+
+    /**
+     * Whether the first {@code length} bytes of a file's content start like a file of the type its name claims.
+     * Empty content matches any type, as does content of a type without a known signature.
+     */
+    public static boolean hasMatchingSignature(String fileName, byte[] head, int length) {
+        byte[] signature = SIGNATURES.get(extensionOf(fileName).toLowerCase(Locale.ROOT));
+        if (signature == null || length == 0) {
+            return true;
+        }
+        return length >= signature.length && Arrays.equals(head, 0, signature.length, signature, 0, signature.length);
+    }
+}
@@ -0,0 +1,174 @@
+package com.demo.filemanager.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads a {@code multipart/form-data} body part by part as it arrives: {@link #nextPart()} returns the headers of
+ * the next part, and {@link #read(byte[], int, int)} its content up to the boundary. Nothing is buffered beyond a
+ * fixed window, so the caller decides, from the headers and the first bytes, whether a part's content is worth
+ * reading on.
+ */
+public class MultipartStreamParser {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_HEADER_SIZE = 8 * 1024;
+
+    private final InputStream in;
+    // CRLF, "--" and the boundary; the first one in the body lacks the CRLF, which the constructor supplies
+    private final byte[] delimiter;
+    private final byte[] buffer;
+    private int head;
+    private int tail;
+    private boolean inPart;
+    private boolean finished;
+
+    public MultipartStreamParser(InputStream in, String boundary) {
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.buffer = new byte[Math.max(BUFFER_SIZE, 4 * delimiter.length)];
+        buffer[0] = '\r';
+        buffer[1] = '\n';
+        tail = 2;
+        // the preamble is read like the content of a part before the first one
+        inPart = true;
+    }
+
+    /**
+     * The headers of the next part, by lower-case name, skipping what is left of the current part's content; null
+     * after the last part.
+     */
+    public Map<String, String> nextPart() throws IOException {
+        if (finished) {
+            return null;
+        }
+        byte[] skip = new byte[1024];
+        while (read(skip, 0, skip.length) != -1) {
+            // the rest of the current part
+        }
+        require(2);
+        if (buffer[head] == '-' && buffer[head + 1] == '-') {
+            finished = true;
+            return null;
+        }
+
+        Map<String, String> headers = new LinkedHashMap<>();
+        int lineEnd = lineEnd();
+        if (lineEnd != head) {
+            throw new MalformedMultipartException("Unexpected characters after a boundary");
+        }
+        head += 2;
+        int headerBytes = 0;
+        while ((lineEnd = lineEnd()) != head) {
+            headerBytes += lineEnd - head + 2;
+            if (headerBytes > MAX_HEADER_SIZE) {
+                throw new MalformedMultipartException("Part headers exceed " + MAX_HEADER_SIZE + " bytes");
+            }
+            String line = new String(buffer, head, lineEnd - head, StandardCharsets.UTF_8);
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+            head = lineEnd + 2;
+        }
+        head += 2;
+        inPart = true;
+        return headers;
+    }
+
+    /**
+     * Reads content of the current part, returning -1 at its end.
+     */
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (!inPart) {
+            return -1;
+        }
+        while (true) {
+            int boundary = indexOf(delimiter, head, tail);
+            int available = boundary >= 0 ? boundary - head : tail - head - (delimiter.length - 1);
+            if (boundary == head) {
+                head += delimiter.length;
+                inPart = false;
+                return -1;
+            }
+            if (available > 0) {
+                int n = Math.min(len, available);
+                System.arraycopy(buffer, head, b, off, n);
+                head += n;
+                return n;
+            }
+            if (!fill()) {
+                throw new MalformedMultipartException("Multipart body ends before its closing boundary");
+            }
+        }
+    }
+
+    /**
+     * The index of the CRLF ending the line at head, reading more as needed.
+     */
+    private int lineEnd() throws IOException {
+        int from = head;
+        while (true) {
+            for (int i = from; i < tail - 1; i++) {
+                if (buffer[i] == '\r' && buffer[i + 1] == '\n') {
+                    return i;
+                }
+            }
+            from = Math.max(head, tail - 1);
+            int consumed = head;
+            if (tail - head >= MAX_HEADER_SIZE || !fill()) {
+                throw new MalformedMultipartException("Unterminated part header");
+            }
+            from -= consumed - head;
+        }
+    }
+
+    private void require(int bytes) throws IOException {
+        while (tail - head < bytes) {
+            if (!fill()) {
+                throw new MalformedMultipartException("Multipart body ends before its closing boundary");
+            }
+        }
+    }
+
+    /**
+     * Moves the unread bytes to the front of the buffer and reads more after them; false at the end of the input.
+     */
+    private boolean fill() throws IOException {
+        if (head > 0) {
+            System.arraycopy(buffer, head, buffer, 0, tail - head);
+            tail -= head;
+            head = 0;
+        }
+        int read = in.read(buffer, tail, buffer.length - tail);
+        if (read == -1) {
+            return false;
+        }
+        tail += read;
+        return true;
+    }
+
+    private int indexOf(byte[] pattern, int from, int to) {
+        outer:
+        for (int i = from; i <= to - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (buffer[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    public static class MalformedMultipartException extends IOException {
+
+        public MalformedMultipartException(String message) {
+            super(message);
+        }
+    }
+}
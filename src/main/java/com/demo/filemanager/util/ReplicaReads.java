@@ -0,0 +1,33 @@
+package com.demo.filemanager.util;
+
+import java.util.function.Supplier;
+
+/**
+ * Marks reads that may be served by a read replica. Read-only transactions begun inside {@link #read(Supplier)}
+ * are routed to a replica when replicas are configured (see {@code ReplicaRoutingDataSource}); everything else,
+ * including read-only transactions begun elsewhere, keeps using the primary. Use it for reads that tolerate data
+ * a few seconds old, whose callers do not write based on what they read.
+ */
+public final class ReplicaReads {
+
+    private static final ThreadLocal<Boolean> ACTIVE = new ThreadLocal<>();
+
+    private ReplicaReads() {
+    }
+
+    public static <T> T read(Supplier<T> read) {
+        if (Boolean.TRUE.equals(ACTIVE.get())) {
+            return read.get();
+        }
+        ACTIVE.set(Boolean.TRUE);
+        try {
+            return read.get();
+        } finally {
+            ACTIVE.remove();
+        }
+    }
+
+    public static boolean isActive() {
+        return Boolean.TRUE.equals(ACTIVE.get());
+    }
+}
@@ -0,0 +1,260 @@
+package com.demo.filemanager.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a ZIP archive to a stream as its entries are added, each copied from its input in one pass.
+ * <p>
+ * The CRC and sizes of every entry follow its data in a data descriptor, as streaming archivers write them, so no
+ * entry has to be read twice. Readers that go through an archive from the front, such as
+ * {@link java.util.zip.ZipInputStream}, only accept data descriptors after deflated data, so every entry is
+ * deflated: content that is compressed already goes into stored deflate blocks, copied without being compressed
+ * again at a few bytes per 64 KB. Archives and entries beyond 4 GB or 65535 entries use the ZIP64 extensions.
+ * Apart from the copy buffer, only the central directory is held in memory, a few dozen bytes per entry.
+ */
+public class ZipStreamWriter {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    private static final short ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP32_LIMIT = 0xFFFFFFFFL;
+    private static final int ENTRY_COUNT_LIMIT = 0xFFFF;
+    // Entries larger than this get ZIP64 headers: deflating incompressible data, or storing it in deflate blocks,
+    // adds well below the margin.
+    private static final long ZIP64_ENTRY_THRESHOLD = 0xF0000000L;
+
+    private static final short VERSION_DEFAULT = 20;
+    private static final short VERSION_ZIP64 = 45;
+    private static final short FLAG_DATA_DESCRIPTOR = 0x0008;
+    private static final short FLAG_UTF8 = 0x0800;
+    private static final short METHOD_DEFLATED = 8;
+
+    private final CountingOutputStream out;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final byte[] buffer = new byte[64 * 1024];
+    private final List<Entry> entries = new ArrayList<>();
+    private boolean finished;
+
+    public ZipStreamWriter(OutputStream out) {
+        this.out = new CountingOutputStream(out);
+    }
+
+    /**
+     * Copies the content into a new entry, compressed unless {@code compress} is false. The expected size, which may
+     * be a guess, only decides whether the entry gets ZIP64 headers; the entry records the bytes actually read. The
+     * input is not closed.
+     */
+    public void addEntry(String name, Instant lastModified, long expectedSize, boolean compress, InputStream content) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("Archive already finished");
+        }
+        Entry entry = new Entry();
+        entry.name = name.getBytes(StandardCharsets.UTF_8);
+        entry.dosTime = dosTime(lastModified == null ? Instant.now() : lastModified);
+        entry.zip64 = expectedSize >= ZIP64_ENTRY_THRESHOLD;
+        entry.offset = out.count;
+
+        writeLocalHeader(entry);
+        long start = out.count;
+        CRC32 crc = new CRC32();
+        long size = 0;
+        deflater.reset();
+        deflater.setLevel(compress ? Deflater.DEFAULT_COMPRESSION : Deflater.NO_COMPRESSION);
+        DeflaterOutputStream target = new DeflaterOutputStream(out, deflater, 8192);
+        int read;
+        while ((read = content.read(buffer)) != -1) {
+            target.write(buffer, 0, read);
+            crc.update(buffer, 0, read);
+            size += read;
+        }
+        target.finish();
+        entry.crc = crc.getValue();
+        entry.size = size;
+        entry.compressedSize = out.count - start;
+        if (!entry.zip64 && (entry.size >= ZIP32_LIMIT || entry.compressedSize >= ZIP32_LIMIT)) {
+            throw new IOException("Entry " + name + " is " + size + " bytes, more than the " + expectedSize + " expected");
+        }
+        writeDataDescriptor(entry);
+        entries.add(entry);
+    }
+
+    /**
+     * Writes the central directory. The underlying stream is flushed but not closed.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        deflater.end();
+        long directoryOffset = out.count;
+        for (Entry entry : entries) {
+            writeCentralHeader(entry);
+        }
+        long directorySize = out.count - directoryOffset;
+        boolean zip64 = entries.size() >= ENTRY_COUNT_LIMIT || directoryOffset >= ZIP32_LIMIT || directorySize >= ZIP32_LIMIT;
+        if (zip64) {
+            long zip64EndOffset = out.count;
+            ByteBuffer end = header(56);
+            end.putInt(ZIP64_END_SIGNATURE).putLong(44).putShort(VERSION_ZIP64).putShort(VERSION_ZIP64).putInt(0).putInt(0)
+                    .putLong(entries.size()).putLong(entries.size()).putLong(directorySize).putLong(directoryOffset);
+            write(end);
+            ByteBuffer locator = header(20);
+            locator.putInt(ZIP64_LOCATOR_SIGNATURE).putInt(0).putLong(zip64EndOffset).putInt(1);
+            write(locator);
+        }
+        ByteBuffer end = header(22);
+        end.putInt(END_SIGNATURE).putShort((short) 0).putShort((short) 0)
+                .putShort((short) Math.min(entries.size(), ENTRY_COUNT_LIMIT))
+                .putShort((short) Math.min(entries.size(), ENTRY_COUNT_LIMIT))
+                .putInt((int) Math.min(directorySize, ZIP32_LIMIT))
+                .putInt((int) Math.min(directoryOffset, ZIP32_LIMIT))
+                .putShort((short) 0);
+        write(end);
+        out.flush();
+    }
+
+    private void writeLocalHeader(Entry entry) throws IOException {
+        int extraLength = entry.zip64 ? 20 : 0;
+        ByteBuffer header = header(30 + entry.name.length + extraLength);
+        header.putInt(LOCAL_HEADER_SIGNATURE)
+                .putShort(entry.zip64 ? VERSION_ZIP64 : VERSION_DEFAULT)
+                .putShort((short) (FLAG_DATA_DESCRIPTOR | FLAG_UTF8))
+                .putShort(METHOD_DEFLATED)
+                .putInt(entry.dosTime)
+                // CRC and sizes follow in the data descriptor
+                .putInt(0)
+                .putInt(entry.zip64 ? (int) ZIP32_LIMIT : 0)
+                .putInt(entry.zip64 ? (int) ZIP32_LIMIT : 0)
+                .putShort((short) entry.name.length)
+                .putShort((short) extraLength)
+                .put(entry.name);
+        if (entry.zip64) {
+            header.putShort(ZIP64_EXTRA_ID).putShort((short) 16).putLong(0).putLong(0);
+        }
+        write(header);
+    }
+
+    private void writeDataDescriptor(Entry entry) throws IOException {
+        ByteBuffer descriptor = header(entry.zip64 ? 24 : 16);
+        descriptor.putInt(DATA_DESCRIPTOR_SIGNATURE).putInt((int) entry.crc);
+        if (entry.zip64) {
+            descriptor.putLong(entry.compressedSize).putLong(entry.size);
+        } else {
+            descriptor.putInt((int) entry.compressedSize).putInt((int) entry.size);
+        }
+        write(descriptor);
+    }
+
+    private void writeCentralHeader(Entry entry) throws IOException {
+        // only the values too large for their field go into the ZIP64 extra field, in this order
+        boolean largeSize = entry.size >= ZIP32_LIMIT;
+        boolean largeCompressedSize = entry.compressedSize >= ZIP32_LIMIT;
+        boolean largeOffset = entry.offset >= ZIP32_LIMIT;
+        int zip64Values = (largeSize ? 1 : 0) + (largeCompressedSize ? 1 : 0) + (largeOffset ? 1 : 0);
+        int extraLength = zip64Values == 0 ? 0 : 4 + 8 * zip64Values;
+        short version = entry.zip64 || zip64Values > 0 ? VERSION_ZIP64 : VERSION_DEFAULT;
+
+        ByteBuffer header = header(46 + entry.name.length + extraLength);
+        header.putInt(CENTRAL_HEADER_SIGNATURE)
+                .putShort(version)
+                .putShort(version)
+                .putShort((short) (FLAG_DATA_DESCRIPTOR | FLAG_UTF8))
+                .putShort(METHOD_DEFLATED)
+                .putInt(entry.dosTime)
+                .putInt((int) entry.crc)
+                .putInt((int) Math.min(entry.compressedSize, ZIP32_LIMIT))
+                .putInt((int) Math.min(entry.size, ZIP32_LIMIT))
+                .putShort((short) entry.name.length)
+                .putShort((short) extraLength)
+                // comment length, disk number, internal and external attributes
+                .putShort((short) 0).putShort((short) 0).putShort((short) 0).putInt(0)
+                .putInt((int) Math.min(entry.offset, ZIP32_LIMIT))
+                .put(entry.name);
+        if (zip64Values > 0) {
+            header.putShort(ZIP64_EXTRA_ID).putShort((short) (8 * zip64Values));
+            if (largeSize) {
+                header.putLong(entry.size);
+            }
+            if (largeCompressedSize) {
+                header.putLong(entry.compressedSize);
+            }
+            if (largeOffset) {
+                header.putLong(entry.offset);
+            }
+        }
+        write(header);
+    }
+
+    private static ByteBuffer header(int length) {
+        return ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void write(ByteBuffer header) throws IOException {
+        out.write(header.array(), 0, header.position());
+    }
+
+    /**
+     * MS-DOS time and date in the local time zone, the time in the low half so that, written little-endian, it
+     * comes first as the headers expect.
+     */
+    private static int dosTime(Instant instant) {
+        LocalDateTime time = LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+        if (time.getYear() < 1980) {
+            time = LocalDateTime.of(1980, 1, 1, 0, 0);
+        }
+        int dosTime = time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+        int dosDate = (time.getYear() - 1980) << 9 | time.getMonthValue() << 5 | time.getDayOfMonth();
+        return dosDate << 16 | dosTime;
+    }
+
+    private static class Entry {
+        private byte[] name;
+        private int dosTime;
+        private boolean zip64;
+        private long offset;
+        private long crc;
+        private long size;
+        private long compressedSize;
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.demo.filemanager.benchmark;
+
+import com.demo.filemanager.FilemanagerApplication;
+import com.demo.filemanager.controller.FileController;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Time to upload many small files through the batch endpoint versus one upload request per file. The application
+ * is started against the PostgreSQL database configured in {@code application.properties}, with a temporary
+ * storage location, and the controller is called directly so HTTP and authentication stay out of the figures.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.demo.filemanager.benchmark.BatchUploadBenchmark -Dexec.args="1000 5"}.
+ * Arguments are the number of files and how many rounds to measure after one warm-up round. Each file has
+ * distinct content, so every upload creates a new blob as well as a new row.
+ */
+public class BatchUploadBenchmark {
+
+    private static final int FILE_SIZE = 1024;
+
+    public static void main(String[] args) throws Exception {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Path storage = Files.createTempDirectory("batch-upload-benchmark");
+        try (ConfigurableApplicationContext context = SpringApplication.run(FilemanagerApplication.class,
+                "--server.port=0", "--file.storage.location=" + storage, "--spring.jpa.show-sql=false",
+                "--file.upload.batch.max-files=" + files)) {
+            FileController controller = context.getBean(FileController.class);
+
+            for (int round = 0; round <= rounds; round++) {
+                List<MultipartFile> batch = newFiles(files, "batch-" + round);
+                long start = System.nanoTime();
+                if (controller.uploadFiles(batch).getStatusCode() != HttpStatus.OK) {
+                    throw new IllegalStateException("Batch upload failed");
+                }
+                Duration batchTime = Duration.ofNanos(System.nanoTime() - start);
+
+                List<MultipartFile> single = newFiles(files, "single-" + round);
+                start = System.nanoTime();
+                for (MultipartFile file : single) {
+                    if (controller.uploadFile(file).getStatusCode() != HttpStatus.OK) {
+                        throw new IllegalStateException("Upload failed");
+                    }
+                }
+                Duration singleTime = Duration.ofNanos(System.nanoTime() - start);
+
+                System.out.printf("%s files=%d batch=%dms one-by-one=%dms speedup=%.1fx%n",
+                        round == 0 ? "warm-up" : "round " + round, files, batchTime.toMillis(), singleTime.toMillis(),
+                        (double) singleTime.toNanos() / batchTime.toNanos());
+            }
+        }
+    }
+
+    private static List<MultipartFile> newFiles(int count, String prefix) {
+        List<MultipartFile> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] content = new byte[FILE_SIZE];
+            byte[] label = (prefix + "-" + i + "-" + System.nanoTime()).getBytes(StandardCharsets.UTF_8);
+            System.arraycopy(label, 0, content, 0, label.length);
+            files.add(new MockMultipartFile("files", prefix + "-" + i + ".pdf", "application/pdf", content));
+        }
+        return files;
+    }
+}
@@ -0,0 +1,98 @@
+package com.demo.filemanager.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH result files written with {@code -rf json}, such as those of {@code mvn -Pbenchmark verify},
+ * benchmark by benchmark and parameter by parameter. A benchmark has regressed when its score is worse by more
+ * than the threshold and by more than the error margins of both runs; worse means lower for throughput and higher
+ * for the time modes. Exits with status 1 when any benchmark has regressed.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.demo.filemanager.benchmark.BenchmarkComparison
+ * -Dexec.args="target/jmh-result-baseline.json target/jmh-result-20240102-030405.json 5"}. The last argument is
+ * the threshold in percent, 5 by default.
+ */
+public class BenchmarkComparison {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BenchmarkComparison <baseline.json> <current.json> [threshold %]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 5;
+        Map<String, JsonNode> baseline = read(new File(args[0]));
+        Map<String, JsonNode> current = read(new File(args[1]));
+
+        int regressions = 0;
+        System.out.printf("%-90s %14s %14s %9s%n", "benchmark", "baseline", "current", "change");
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            JsonNode now = entry.getValue();
+            JsonNode before = baseline.get(entry.getKey());
+            String unit = now.path("primaryMetric").path("scoreUnit").asText();
+            double score = now.path("primaryMetric").path("score").asDouble();
+            if (before == null) {
+                System.out.printf("%-90s %14s %14.3f %9s  %s new%n", entry.getKey(), "-", score, "", unit);
+                continue;
+            }
+            double baselineScore = before.path("primaryMetric").path("score").asDouble();
+            double change = (score - baselineScore) / baselineScore * 100;
+            boolean higherIsBetter = "thrpt".equals(now.path("mode").asText());
+            double worse = higherIsBetter ? -change : change;
+            double margin = error(before) + error(now);
+            boolean regressed = worse > threshold && Math.abs(score - baselineScore) > margin;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-90s %14.3f %14.3f %+8.1f%%  %s%s%n", entry.getKey(), baselineScore, score, change, unit,
+                    regressed ? "  REGRESSION" : "");
+        }
+        for (String removed : baseline.keySet()) {
+            if (!current.containsKey(removed)) {
+                System.out.printf("%-90s  not in the current run%n", removed);
+            }
+        }
+        System.out.printf("%d of %d benchmarks regressed by more than %.1f%%%n", regressions, current.size(), threshold);
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * The results by benchmark name, mode and parameters, e.g. {@code StorageIoBenchmark.download avgt
+     * backend=local,size=4096}.
+     */
+    private static Map<String, JsonNode> read(File file) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            Map<String, String> params = new TreeMap<>();
+            Iterator<Map.Entry<String, JsonNode>> fields = result.path("params").fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> param = fields.next();
+                params.put(param.getKey(), param.getValue().asText());
+            }
+            String name = result.path("benchmark").asText().replace("com.demo.filemanager.benchmark.", "");
+            StringBuilder key = new StringBuilder(name).append(' ').append(result.path("mode").asText());
+            if (!params.isEmpty()) {
+                key.append(' ');
+                params.forEach((param, value) -> key.append(param).append('=').append(value).append(','));
+                key.setLength(key.length() - 1);
+            }
+            results.put(key.toString(), result);
+        }
+        return results;
+    }
+
+    private static double error(JsonNode result) {
+        double error = result.path("primaryMetric").path("scoreError").asDouble();
+        return Double.isNaN(error) ? 0 : error;
+    }
+}
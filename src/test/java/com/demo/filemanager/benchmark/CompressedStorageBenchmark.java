@@ -0,0 +1,132 @@
+package com.demo.filemanager.benchmark;
+
+import com.demo.filemanager.enums.ContentEncoding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of storing content compressed, for 4 MB of content of each kind.
+ * <ul>
+ *     <li>{@code identity}: sending content stored as uploaded</li>
+ *     <li>{@code gzipAsStored}, {@code zstdAsStored}: sending the stored compressed bytes to a client accepting
+ *     them, which is the same work on fewer bytes</li>
+ *     <li>{@code gzipDecode}, {@code zstdDecode}: decompressing for a client that does not accept the encoding</li>
+ *     <li>{@code gzipEncode}, {@code zstdEncode}: compressing once, when new content is stored</li>
+ * </ul>
+ * The disk bytes each encoding needs are printed at setup. Run with {@code mvn test-compile exec:java
+ * -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=CompressedStorageBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressedStorageBenchmark {
+
+    private static final int CONTENT_SIZE = 4 * 1024 * 1024;
+
+    // text: log-like lines, as compressible as typical text and JSON; random: as incompressible as images
+    @Param({ "text", "random" })
+    public String kind;
+
+    private byte[] content;
+    private byte[] gzip;
+    private byte[] zstd;
+
+    @Setup
+    public void setup() throws IOException {
+        content = "text".equals(kind) ? text() : random();
+        gzip = encode(ContentEncoding.GZIP, content);
+        zstd = encode(ContentEncoding.ZSTD, content);
+        System.out.printf("%n%s: %d bytes as uploaded, %d gzip (%.1f%%), %d zstd (%.1f%%)%n", kind, content.length,
+                gzip.length, 100.0 * gzip.length / content.length, zstd.length, 100.0 * zstd.length / content.length);
+    }
+
+    @Benchmark
+    public long identity() throws IOException {
+        return new ByteArrayInputStream(content).transferTo(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public long gzipAsStored() throws IOException {
+        return new ByteArrayInputStream(gzip).transferTo(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public long zstdAsStored() throws IOException {
+        return new ByteArrayInputStream(zstd).transferTo(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public long gzipDecode() throws IOException {
+        return decode(ContentEncoding.GZIP, gzip);
+    }
+
+    @Benchmark
+    public long zstdDecode() throws IOException {
+        return decode(ContentEncoding.ZSTD, zstd);
+    }
+
+    @Benchmark
+    public int gzipEncode() throws IOException {
+        return encode(ContentEncoding.GZIP, content).length;
+    }
+
+    @Benchmark
+    public int zstdEncode() throws IOException {
+        return encode(ContentEncoding.ZSTD, content).length;
+    }
+
+    private static long decode(ContentEncoding encoding, byte[] stored) throws IOException {
+        try (InputStream in = encoding.decode(new ByteArrayInputStream(stored))) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    private static byte[] encode(ContentEncoding encoding, byte[] content) throws IOException {
+        ByteArrayOutputStream stored = new ByteArrayOutputStream(content.length / 4);
+        try (OutputStream out = encoding.encode(stored)) {
+            out.write(content);
+        }
+        return stored.toByteArray();
+    }
+
+    private static byte[] text() {
+        Random random = new Random(42);
+        String[] levels = { "INFO", "DEBUG", "WARN" };
+        StringBuilder text = new StringBuilder(CONTENT_SIZE);
+        while (text.length() < CONTENT_SIZE) {
+            text.append(String.format("2024-01-02 03:%02d:%02d.%03d %s [http-nio-8080-exec-%d] request /api/files/%d served in %d ms%n",
+                    random.nextInt(60), random.nextInt(60), random.nextInt(1000), levels[random.nextInt(levels.length)],
+                    random.nextInt(200), random.nextInt(100000), random.nextInt(500)));
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.US_ASCII);
+        return Arrays.copyOf(bytes, CONTENT_SIZE);
+    }
+
+    private static byte[] random() {
+        byte[] bytes = new byte[CONTENT_SIZE];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,109 @@
+package com.demo.filemanager.benchmark;
+
+import com.demo.filemanager.controller.FileController;
+import com.demo.filemanager.dto.FileMetaDataDTO;
+import com.demo.filemanager.model.FileMetaData;
+import com.demo.filemanager.model.response.CustomApiResponse;
+import com.demo.filemanager.service.FileService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FileController work that does not touch storage or the database, for a listing of {@code rows} files.
+ * <ul>
+ *     <li>{@code isValidFile}: the extension and size check every upload goes through</li>
+ *     <li>{@code convert}: getAllFiles turning the entities into DTOs</li>
+ *     <li>{@code serialize}: writing the resulting {@code CustomApiResponse<List<FileMetaDataDTO>>} as JSON with
+ *     an ObjectMapper configured like Spring Boot's</li>
+ *     <li>{@code convertAndSerialize}: both, as a request does</li>
+ * </ul>
+ * The file service hands out a fixed list. Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=FileControllerBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileControllerBenchmark {
+
+    @Param({ "10", "1000" })
+    public int rows;
+
+    private FileController fileController;
+    private ObjectMapper objectMapper;
+    private MethodHandle isValidFile;
+    private MultipartFile upload;
+    private CustomApiResponse<List<FileMetaDataDTO>> response;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        List<FileMetaData> files = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            FileMetaData file = new FileMetaData();
+            file.setId((long) i);
+            file.setFileName("report-" + i + ".pdf");
+            file.setFilePath("uploads/blobs/ab/cd/" + i);
+            file.setFileType("application/pdf");
+            file.setFileSize(100_000 + i);
+            file.setContentHash(String.format("%064x", i));
+            files.add(file);
+        }
+        FileService fileService = new FileService(null, null, null, null, null) {
+            @Override
+            public List<FileMetaData> getAllFiles() {
+                return files;
+            }
+        };
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        fileController = new FileController(fileService, null, null, null, null, null, objectMapper);
+
+        // private, reached the way the controller calls it
+        isValidFile = MethodHandles.privateLookupIn(FileController.class, MethodHandles.lookup())
+                .findVirtual(FileController.class, "isValidFile", MethodType.methodType(boolean.class, MultipartFile.class));
+        upload = new MockMultipartFile("file", "Quarterly Report.PDF", "application/pdf", new byte[0]);
+        response = fileController.getAllFiles().getBody();
+    }
+
+    @Benchmark
+    public boolean isValidFile() throws Throwable {
+        return (boolean) isValidFile.invokeExact(fileController, upload);
+    }
+
+    @Benchmark
+    public Object convert() {
+        return fileController.getAllFiles().getBody();
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public byte[] convertAndSerialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(fileController.getAllFiles().getBody());
+    }
+}
@@ -0,0 +1,95 @@
+package com.demo.filemanager.benchmark;
+
+import com.demo.filemanager.FilemanagerApplication;
+import com.demo.filemanager.enums.FileSearchMode;
+import com.demo.filemanager.service.FileService;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Latency of file searches over a large table. The application is started against the PostgreSQL database
+ * configured in {@code application.properties}; synthetic rows, named like {@code invoice-3fa8c1d2.pdf}, are
+ * inserted with one statement (maintaining the trigram index created at startup), searched through FileService with random queries, and removed again.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.demo.filemanager.benchmark.FileSearchBenchmark -Dexec.args="1000000 500 50"}.
+ * Arguments are the number of rows, the searches per kind, and the p95 latency target in milliseconds; the run
+ * fails when a kind of search misses the target.
+ */
+public class FileSearchBenchmark {
+
+    private static final String[] WORDS = { "invoice", "report", "photo", "scan", "contract", "budget", "slides", "notes" };
+    private static final String MARKER = "search-benchmark/";
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int searches = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        long targetMillis = args.length > 2 ? Long.parseLong(args[2]) : 50;
+
+        try (ConfigurableApplicationContext context = SpringApplication.run(FilemanagerApplication.class,
+                "--server.port=0", "--spring.jpa.show-sql=false")) {
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            FileService fileService = context.getBean(FileService.class);
+
+            long start = System.nanoTime();
+            jdbcTemplate.update("INSERT INTO filemanager.file_meta_data (id, file_name, file_path, file_type, file_size) "
+                    + "SELECT nextval('filemanager.file_meta_data_seq'), "
+                    + "(ARRAY['" + String.join("','", WORDS) + "'])[1 + g % " + WORDS.length + "] || '-' || substr(md5(g::text), 1, 8) "
+                    + "|| (ARRAY['.pdf','.png','.jpg','.docx','.xlsx'])[1 + g % 5], "
+                    + "'" + MARKER + "' || g, "
+                    + "(ARRAY['application/pdf','image/png','image/jpeg','application/octet-stream','application/octet-stream'])[1 + g % 5], "
+                    + "g FROM generate_series(1, ?) g", rows);
+            System.out.printf("inserted %d rows in %dms%n", rows, (System.nanoTime() - start) / 1_000_000);
+            jdbcTemplate.execute("ANALYZE filemanager.file_meta_data");
+
+            try {
+                Random random = new Random(42);
+                boolean met = true;
+                met &= measure("prefix", searches, targetMillis, () -> fileService.searchFiles(FileSearchMode.PREFIX,
+                        WORDS[random.nextInt(WORDS.length)] + "-" + hex(random, 1), null, null, 50).getItems().size());
+                met &= measure("substring", searches, targetMillis, () -> fileService.searchFiles(FileSearchMode.SUBSTRING,
+                        hex(random, 2), null, null, 50).getItems().size());
+                met &= measure("substring+type", searches, targetMillis, () -> fileService.searchFiles(FileSearchMode.SUBSTRING,
+                        hex(random, 2), "image/*", null, 50).getItems().size());
+                met &= measure("rare substring", searches, targetMillis, () -> fileService.searchFiles(FileSearchMode.SUBSTRING,
+                        hex(random, 3), null, null, 50).getItems().size());
+                if (!met) {
+                    throw new IllegalStateException("Search latency target of " + targetMillis + "ms (p95) missed");
+                }
+            } finally {
+                jdbcTemplate.update("DELETE FROM filemanager.file_meta_data WHERE file_path LIKE '" + MARKER + "%'");
+            }
+        }
+    }
+
+    private static boolean measure(String kind, int searches, long targetMillis, Supplier<Integer> search) {
+        for (int i = 0; i < Math.min(50, searches); i++) {
+            search.get();
+        }
+        long[] micros = new long[searches];
+        long found = 0;
+        for (int i = 0; i < searches; i++) {
+            long start = System.nanoTime();
+            found += search.get();
+            micros[i] = (System.nanoTime() - start) / 1000;
+        }
+        Arrays.sort(micros);
+        long p95 = micros[(int) (searches * 0.95)];
+        System.out.printf("%-15s searches=%d avg-results=%.1f p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms %s%n", kind, searches,
+                (double) found / searches, micros[searches / 2] / 1000.0, p95 / 1000.0, micros[(int) (searches * 0.99)] / 1000.0,
+                micros[searches - 1] / 1000.0, p95 <= targetMillis * 1000 ? "ok" : "MISSED");
+        return p95 <= targetMillis * 1000;
+    }
+
+    private static String hex(Random random, int bytes) {
+        byte[] value = new byte[bytes];
+        random.nextBytes(value);
+        return HexFormat.of().formatHex(value);
+    }
+}
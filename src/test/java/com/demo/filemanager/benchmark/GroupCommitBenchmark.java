@@ -0,0 +1,133 @@
+package com.demo.filemanager.benchmark;
+
+import com.demo.filemanager.FilemanagerApplication;
+import com.demo.filemanager.model.FileMetaData;
+import com.demo.filemanager.service.BlobService;
+import com.demo.filemanager.service.FileService;
+import com.demo.filemanager.service.GroupCommitService;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Commits per second and upload latency of single uploads saved in a transaction each versus saved in groups by
+ * {@link GroupCommitService}, with many uploads at once. The application is started against the PostgreSQL
+ * database configured in {@code application.properties}, with a temporary storage location, and the services are
+ * called directly so HTTP and authentication stay out of the figures. The latency of an upload covers staging its
+ * content and saving it until it has committed.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.demo.filemanager.benchmark.GroupCommitBenchmark -Dexec.args="32 200 3"}.
+ * Arguments are the number of concurrent uploaders, uploads per uploader and how many rounds to measure after one
+ * warm-up round. Each upload has distinct content, so every upload creates a new blob as well as a new row.
+ */
+public class GroupCommitBenchmark {
+
+    private static final int FILE_SIZE = 1024;
+
+    public static void main(String[] args) throws Exception {
+        int uploaders = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int uploads = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        Path storage = Files.createTempDirectory("group-commit-benchmark");
+        try (ConfigurableApplicationContext context = SpringApplication.run(FilemanagerApplication.class,
+                "--server.port=0", "--file.storage.location=" + storage, "--spring.jpa.show-sql=false",
+                "--file.thumbnail.enabled=false", "--file.upload.group-commit.enabled=true",
+                "--spring.datasource.hikari.maximum-pool-size=" + Math.max(10, uploaders))) {
+            FileService fileService = context.getBean(FileService.class);
+            GroupCommitService groupCommitService = context.getBean(GroupCommitService.class);
+            BlobService blobService = context.getBean(BlobService.class);
+            DistributionSummary groups = context.getBean(MeterRegistry.class).get("file.upload.group-commit.size").summary();
+
+            ExecutorService pool = Executors.newFixedThreadPool(uploaders);
+            try {
+                for (int round = 0; round <= rounds; round++) {
+                    String label = round == 0 ? "warm-up" : "round " + round;
+                    Result single = run(pool, uploaders, uploads, blobService, "single-" + round, fileService::saveFile);
+                    System.out.printf("%s one-per-upload uploaders=%d %s commits/s=%.0f%n", label, uploaders, single,
+                            single.uploads / single.seconds);
+
+                    long groupsBefore = groups.count();
+                    Result grouped = run(pool, uploaders, uploads, blobService, "grouped-" + round, groupCommitService::save);
+                    long commits = groups.count() - groupsBefore;
+                    System.out.printf("%s group-commit   uploaders=%d %s commits/s=%.0f uploads/commit=%.1f%n", label,
+                            uploaders, grouped, commits / grouped.seconds, (double) grouped.uploads / commits);
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    private interface Save {
+        FileMetaData save(FileMetaData fileMetaData, BlobService.StagedBlob content);
+    }
+
+    private record Result(int uploads, double seconds, List<Long> latencies) {
+
+        @Override
+        public String toString() {
+            return String.format("uploads/s=%.0f p50=%.1fms p99=%.1fms", uploads / seconds,
+                    percentile(0.50) / 1e6, percentile(0.99) / 1e6);
+        }
+
+        private long percentile(double p) {
+            return latencies.get(Math.min(latencies.size() - 1, (int) Math.ceil(p * latencies.size()) - 1));
+        }
+    }
+
+    private static Result run(ExecutorService pool, int uploaders, int uploads, BlobService blobService, String prefix,
+                              Save save) throws Exception {
+        List<Future<List<Long>>> tasks = new ArrayList<>(uploaders);
+        long start = System.nanoTime();
+        for (int u = 0; u < uploaders; u++) {
+            String uploader = prefix + "-" + u;
+            tasks.add(pool.submit(() -> {
+                List<Long> latencies = new ArrayList<>(uploads);
+                for (int i = 0; i < uploads; i++) {
+                    long begin = System.nanoTime();
+                    FileMetaData file = new FileMetaData();
+                    file.setFileName(uploader + "-" + i + ".pdf");
+                    file.setFileType("application/pdf");
+                    BlobService.StagedBlob content = blobService.stage(new ByteArrayInputStream(content(file.getFileName())));
+                    try {
+                        if (save.save(file, content).getId() == null) {
+                            throw new IllegalStateException("Saved without an id");
+                        }
+                    } finally {
+                        blobService.discard(content);
+                    }
+                    latencies.add(System.nanoTime() - begin);
+                }
+                return latencies;
+            }));
+        }
+        List<Long> latencies = new ArrayList<>(uploaders * uploads);
+        for (Future<List<Long>> task : tasks) {
+            latencies.addAll(task.get());
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Collections.sort(latencies);
+        return new Result(latencies.size(), seconds, latencies);
+    }
+
+    private static byte[] content(String name) {
+        byte[] content = new byte[FILE_SIZE];
+        byte[] label = (name + "-" + System.nanoTime()).getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(label, 0, content, 0, label.length);
+        return content;
+    }
+}
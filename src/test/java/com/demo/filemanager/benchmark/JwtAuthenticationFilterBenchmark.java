@@ -0,0 +1,135 @@
+package com.demo.filemanager.benchmark;
+
+import com.demo.filemanager.config.JwtAuthenticationFilter;
+import com.demo.filemanager.enums.Role;
+import com.demo.filemanager.model.User;
+import com.demo.filemanager.service.JwtServiceImpl;
+import com.demo.filemanager.service.UserService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JwtAuthenticationFilter on one request, with the token verification cache and principal lookup the
+ * application runs with: the user service stands in for the cached principal lookup, so no database is involved.
+ * <ul>
+ *     <li>{@code bearerToken}: a request with a valid token, authenticated</li>
+ *     <li>{@code noToken}: a request without an Authorization header, passed on unauthenticated</li>
+ *     <li>{@code invalidToken}: a request with a token whose signature does not verify</li>
+ * </ul>
+ * Each invocation clears the security context afterwards, as the end of a request does. Run with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main
+ * -Dexec.args=JwtAuthenticationFilterBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtAuthenticationFilterBenchmark {
+
+    private static final String SIGNING_KEY = "413F4428472B4B6250655368566D5970337336763979244226452948404D6351";
+
+    // whether the principal is rebuilt from the token's role claim instead of being looked up
+    @Param({ "false", "true" })
+    public boolean principalFromClaims;
+
+    private final FilterChain chain = (request, response) -> {
+    };
+
+    private JwtAuthenticationFilter filter;
+    private MockHttpServletRequest bearerRequest;
+    private MockHttpServletRequest noTokenRequest;
+    private MockHttpServletRequest invalidTokenRequest;
+    private MockHttpServletResponse response;
+
+    @Setup
+    public void setup() {
+        User user = User.builder().email("jane@example.com").role(Role.USER).build();
+        JwtServiceImpl jwtService = new JwtServiceImpl(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(jwtService, "jwtSigningKey", SIGNING_KEY);
+        jwtService.init();
+        filter = new JwtAuthenticationFilter(jwtService, new FixedUserService(user));
+        ReflectionTestUtils.setField(filter, "principalFromClaims", principalFromClaims);
+
+        String token = jwtService.generateToken(user);
+        bearerRequest = request("Bearer " + token);
+        noTokenRequest = request(null);
+        invalidTokenRequest = request("Bearer " + token.substring(0, token.length() - 2) + (token.endsWith("A") ? "BB" : "AA"));
+        response = new MockHttpServletResponse();
+    }
+
+    @Benchmark
+    public Object bearerToken() throws ServletException, IOException {
+        return filter(bearerRequest);
+    }
+
+    @Benchmark
+    public Object noToken() throws ServletException, IOException {
+        return filter(noTokenRequest);
+    }
+
+    @Benchmark
+    public Object invalidToken() throws ServletException, IOException {
+        return filter(invalidTokenRequest);
+    }
+
+    private Object filter(MockHttpServletRequest request) throws ServletException, IOException {
+        filter.doFilter(request, response, chain);
+        Object authentication = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.clearContext();
+        return authentication;
+    }
+
+    private static MockHttpServletRequest request(String authorization) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/files/1");
+        if (authorization != null) {
+            request.addHeader("Authorization", authorization);
+        }
+        return request;
+    }
+
+    private record FixedUserService(User user) implements UserService {
+
+        @Override
+        public UserDetailsService userDetailsService() {
+            return username -> user;
+        }
+
+        @Override
+        public UserDetailsPasswordService userDetailsPasswordService() {
+            return (user, newPassword) -> user;
+        }
+
+        @Override
+        public UserDetails loadPrincipal(String email) {
+            return user;
+        }
+
+        @Override
+        public void evictPrincipal(String email) {
+        }
+    }
+}
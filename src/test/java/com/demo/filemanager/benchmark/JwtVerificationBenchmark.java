@@ -0,0 +1,98 @@
+package com.demo.filemanager.benchmark;
+
+import com.demo.filemanager.enums.Role;
+import com.demo.filemanager.model.User;
+import com.demo.filemanager.service.JwtServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.security.Key;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token verification work done by JwtAuthenticationFilter for one request, and issuing a token at sign-in.
+ * <ul>
+ *     <li>{@code legacy}: what the filter did before, extractUserName followed by isTokenValid, i.e. three parses,
+ *     each decoding the key and building a new parser</li>
+ *     <li>{@code singleParse}: one verifyToken with the key and parser built at startup</li>
+ *     <li>{@code cached}: verifyToken answered from the verified-token cache</li>
+ *     <li>{@code generate}: generateToken, signing a new token</li>
+ * </ul>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main
+ * -Dexec.args=JwtVerificationBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtVerificationBenchmark {
+
+    private static final String SIGNING_KEY = "413F4428472B4B6250655368566D5970337336763979244226452948404D6351";
+
+    private final User user = User.builder().email("jane@example.com").role(Role.USER).build();
+
+    private JwtServiceImpl singleParseService;
+    private JwtServiceImpl cachedService;
+    private String token;
+
+    @Setup
+    public void setup() {
+        singleParseService = newJwtService(false);
+        cachedService = newJwtService(true);
+        token = cachedService.generateToken(user);
+        cachedService.verifyToken(token);
+    }
+
+    @Benchmark
+    public boolean legacy() {
+        String userName = legacyExtractClaims(token).getSubject();
+        return userName.equals(user.getUsername())
+                && legacyExtractClaims(token).getSubject().equals(user.getUsername())
+                && !legacyExtractClaims(token).getExpiration().before(new Date());
+    }
+
+    @Benchmark
+    public boolean singleParse() {
+        return singleParseService.isTokenValid(singleParseService.verifyToken(token), user);
+    }
+
+    @Benchmark
+    public boolean cached() {
+        return cachedService.isTokenValid(cachedService.verifyToken(token), user);
+    }
+
+    @Benchmark
+    public String generate() {
+        return singleParseService.generateToken(user);
+    }
+
+    private static Claims legacyExtractClaims(String token) {
+        Key key = Keys.hmacShaKeyFor(Decoders.BASE64.decode(SIGNING_KEY));
+        return Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token).getBody();
+    }
+
+    private static JwtServiceImpl newJwtService(boolean cacheEnabled) {
+        JwtServiceImpl service = new JwtServiceImpl(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "jwtSigningKey", SIGNING_KEY);
+        ReflectionTestUtils.setField(service, "tokenCacheEnabled", cacheEnabled);
+        service.init();
+        return service;
+    }
+}
@@ -0,0 +1,184 @@
+package com.demo.filemanager.benchmark;
+
+import com.demo.filemanager.config.VirtualThreadConfiguration;
+import com.demo.filemanager.controller.FileController;
+import com.demo.filemanager.model.ContentBlob;
+import com.demo.filemanager.model.FileMetaData;
+import com.demo.filemanager.repository.ContentBlobRepository;
+import com.demo.filemanager.service.BlobService;
+import com.demo.filemanager.service.FileService;
+import com.demo.filemanager.storage.LocalStorageBackend;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServer;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * How many slow downloads the embedded Tomcat serves at the same time with its default platform thread pool
+ * versus {@link VirtualThreadConfiguration}. Requests go through Spring MVC to FileController.downloadFile, which
+ * streams the content from a blob store whose reads pause between chunks, standing in for a slow disk or a remote
+ * store, so the handling thread is blocked most of the time. The store has no local path, so sendfile is not used.
+ * The meta data lookup is a stub and no security filters are installed, so no database is involved.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.demo.filemanager.benchmark.SlowDownloadConcurrencyBenchmark -Dexec.args="virtual 2000"}.
+ * Arguments are the mode ({@code platform} or {@code virtual}, the latter needing Java 21) and the number of
+ * concurrent clients. With the default 200 Tomcat threads the platform mode peaks at 200 concurrent downloads.
+ */
+public class SlowDownloadConcurrencyBenchmark {
+
+    private static final int CHUNKS = 10;
+    private static final int CHUNK_SIZE = 8 * 1024;
+    private static final long CHUNK_DELAY_MILLIS = 100;
+
+    private static final AtomicInteger inFlight = new AtomicInteger();
+    private static final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @Configuration
+    @EnableWebMvc
+    static class WebConfiguration {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "platform";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        Path directory = Files.createTempDirectory("slow-download-benchmark");
+        FileController fileController = downloadController(directory);
+
+        TomcatServletWebServerFactory factory = new TomcatServletWebServerFactory(0);
+        if ("virtual".equals(mode)) {
+            factory.addProtocolHandlerCustomizers(new VirtualThreadConfiguration().virtualThreadProtocolHandlerCustomizer());
+        }
+        factory.addConnectorCustomizers(connector -> connector.setProperty("maxConnections", String.valueOf(clients * 2)));
+        AnnotationConfigWebApplicationContext context = new AnnotationConfigWebApplicationContext();
+        context.register(WebConfiguration.class);
+        // registered as it is, its fields set up already
+        context.addBeanFactoryPostProcessor(beanFactory -> beanFactory.registerSingleton("fileController", fileController));
+        WebServer server = factory.getWebServer(servletContext -> {
+            context.setServletContext(servletContext);
+            servletContext.addServlet("dispatcher", new DispatcherServlet(context)).addMapping("/");
+        });
+        server.start();
+        try {
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(30)).build();
+            HttpRequest request = HttpRequest.newBuilder(
+                    URI.create("http://localhost:" + server.getPort() + "/api/files/download/1")).build();
+
+            long start = System.nanoTime();
+            List<CompletableFuture<HttpResponse<byte[]>>> downloads = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                downloads.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()));
+            }
+            long failed = downloads.stream().map(CompletableFuture::join)
+                    .filter(response -> response.statusCode() != 200 || response.body().length != CHUNKS * CHUNK_SIZE)
+                    .count();
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+            System.out.printf("mode=%s java=%s clients=%d maxConcurrentDownloads=%d failed=%d elapsed=%dms downloads/s=%.1f%n",
+                    mode, Runtime.version().feature(), clients, maxInFlight.get(), failed, elapsed.toMillis(),
+                    clients * 1000.0 / elapsed.toMillis());
+        } finally {
+            server.stop();
+            context.close();
+            FileSystemUtils.deleteRecursively(directory);
+        }
+    }
+
+    private static FileController downloadController(Path directory) throws IOException {
+        ContentBlobRepository contentBlobRepository = mock(ContentBlobRepository.class, withSettings().stubOnly());
+        when(contentBlobRepository.findByHashForUpdate(any())).thenReturn(Optional.empty());
+        when(contentBlobRepository.saveAndFlush(any(ContentBlob.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        BlobService blobService = new BlobService(contentBlobRepository, new SlowStorageBackend(directory.resolve("blobs")), null);
+        ReflectionTestUtils.setField(blobService, "fileStorageLocation", directory.toString());
+
+        ContentBlob stored = blobService.retain(blobService.stage(new ByteArrayInputStream(new byte[CHUNKS * CHUNK_SIZE])),
+                "application/octet-stream");
+        FileMetaData file = new FileMetaData();
+        file.setId(1L);
+        file.setFileName("content.bin");
+        file.setFileType("application/octet-stream");
+        file.setFileSize(stored.getSize());
+        file.setContentHash(stored.getHash());
+        file.setFilePath(blobService.filePath(stored.getHash()));
+        FileService fileService = new FileService(null, null, null, null, null) {
+            @Override
+            public Optional<FileMetaData> getFileById(Long id) {
+                return Optional.of(file);
+            }
+        };
+        return new FileController(fileService, blobService, null, null, null, null, null);
+    }
+
+    /**
+     * A local blob store read in chunks with a pause before each, counting the reads in progress.
+     */
+    private static class SlowStorageBackend extends LocalStorageBackend {
+
+        SlowStorageBackend(Path root) {
+            super(root);
+        }
+
+        @Override
+        public InputStream get(String key, long offset, long length) throws IOException {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return new FilterInputStream(super.get(key, offset, length)) {
+                private boolean closed;
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    try {
+                        Thread.sleep(CHUNK_DELAY_MILLIS);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                    return super.read(b, off, Math.min(len, CHUNK_SIZE));
+                }
+
+                @Override
+                public void close() throws IOException {
+                    if (!closed) {
+                        closed = true;
+                        inFlight.decrementAndGet();
+                    }
+                    super.close();
+                }
+            };
+        }
+
+        @Override
+        public Optional<Path> localPath(String key) {
+            // read like a remote store, never handed to sendfile
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.demo.filemanager.benchmark;
+
+import com.demo.filemanager.controller.FileController;
+import com.demo.filemanager.model.ContentBlob;
+import com.demo.filemanager.model.FileMetaData;
+import com.demo.filemanager.repository.ContentBlobRepository;
+import com.demo.filemanager.service.BlobService;
+import com.demo.filemanager.service.FileService;
+import com.demo.filemanager.storage.LocalStorageBackend;
+import com.demo.filemanager.storage.MappedStorageBackend;
+import com.demo.filemanager.storage.StorageBackend;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * The I/O of storing and downloading a file of {@code size} bytes, on a local or memory-mapped backend in a
+ * temporary directory.
+ * <ul>
+ *     <li>{@code store}: what an upload does with the content, staging it (written and hashed) and retaining it
+ *     as a new blob, i.e. moved into the blob store</li>
+ *     <li>{@code download}: FileController.downloadFile and copying the body as Spring MVC does when sendfile is
+ *     not used</li>
+ * </ul>
+ * The blob repository is a stub that knows no blob, so no database is involved; the numbers are those of the page
+ * cache rather than the disk. Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=StorageIoBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageIoBenchmark {
+
+    @Param({ "4096", "1048576", "16777216" })
+    public int size;
+
+    @Param({ "local", "mapped" })
+    public String backend;
+
+    private Path directory;
+    private byte[] content;
+    private BlobService blobService;
+    private FileController fileController;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("storage-benchmark");
+        content = new byte[size];
+        new Random(42).nextBytes(content);
+
+        ContentBlobRepository contentBlobRepository = mock(ContentBlobRepository.class, withSettings().stubOnly());
+        when(contentBlobRepository.findByHashForUpdate(any())).thenReturn(Optional.empty());
+        when(contentBlobRepository.saveAndFlush(any(ContentBlob.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        StorageBackend storageBackend = "mapped".equals(backend)
+                ? new MappedStorageBackend(directory.resolve("blobs"), 1024 * 1024, 256L * 1024 * 1024)
+                : new LocalStorageBackend(directory.resolve("blobs"));
+        blobService = new BlobService(contentBlobRepository, storageBackend, null);
+        ReflectionTestUtils.setField(blobService, "fileStorageLocation", directory.toString());
+
+        ContentBlob stored = store();
+        FileMetaData file = new FileMetaData();
+        file.setId(1L);
+        file.setFileName("content.bin");
+        file.setFileType("application/octet-stream");
+        file.setFileSize(size);
+        file.setContentHash(stored.getHash());
+        file.setFilePath(blobService.filePath(stored.getHash()));
+        FileService fileService = new FileService(null, null, null, null, null) {
+            @Override
+            public Optional<FileMetaData> getFileById(Long id) {
+                return Optional.of(file);
+            }
+        };
+        fileController = new FileController(fileService, blobService, null, null, null, null, null);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public ContentBlob store() throws IOException {
+        return blobService.retain(blobService.stage(new ByteArrayInputStream(content)), "application/octet-stream");
+    }
+
+    @Benchmark
+    public long download() throws IOException {
+        ResponseEntity<Resource> response = fileController.downloadFile(1L, new MockHttpServletRequest("GET", "/api/files/download/1"));
+        try (InputStream in = response.getBody().getInputStream()) {
+            return StreamUtils.copy(in, OutputStream.nullOutputStream());
+        }
+    }
+}
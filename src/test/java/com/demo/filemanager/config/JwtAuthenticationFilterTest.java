@@ -0,0 +1,117 @@
+package com.demo.filemanager.config;
+
+import com.demo.filemanager.enums.Role;
+import com.demo.filemanager.model.User;
+import com.demo.filemanager.service.JwtService;
+import com.demo.filemanager.service.UserService;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MalformedJwtException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class JwtAuthenticationFilterTest {
+
+    @Mock
+    private JwtService jwtService;
+
+    @Mock
+    private UserService userService;
+
+    @InjectMocks
+    private JwtAuthenticationFilter jwtAuthenticationFilter;
+
+    private AutoCloseable mocks;
+
+    @BeforeEach
+    public void setup() {
+        mocks = MockitoAnnotations.openMocks(this);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        SecurityContextHolder.clearContext();
+        mocks.close();
+    }
+
+    @Test
+    public void testValidTokenIsVerifiedOnce() throws Exception {
+        User user = User.builder().email("jane@example.com").role(Role.USER).build();
+        Claims claims = Jwts.claims().setSubject("jane@example.com");
+        when(jwtService.verifyToken("token")).thenReturn(claims);
+        when(userService.loadPrincipal("jane@example.com")).thenReturn(user);
+        when(jwtService.isTokenValid(claims, user)).thenReturn(true);
+
+        MockFilterChain chain = new MockFilterChain();
+        jwtAuthenticationFilter.doFilter(request("Bearer token"), new MockHttpServletResponse(), chain);
+
+        assertNotNull(chain.getRequest());
+        assertEquals(user, SecurityContextHolder.getContext().getAuthentication().getPrincipal());
+        verify(jwtService, times(1)).verifyToken("token");
+        verify(jwtService, never()).extractUserName(anyString());
+        verify(jwtService, never()).isTokenValid(anyString(), any());
+    }
+
+    @Test
+    public void testInvalidTokenLeavesRequestUnauthenticated() throws Exception {
+        when(jwtService.verifyToken("garbage")).thenThrow(new MalformedJwtException("bad token"));
+
+        MockFilterChain chain = new MockFilterChain();
+        jwtAuthenticationFilter.doFilter(request("Bearer garbage"), new MockHttpServletResponse(), chain);
+
+        assertNotNull(chain.getRequest());
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+        verify(userService, never()).loadPrincipal(anyString());
+    }
+
+    @Test
+    public void testPrincipalFromClaimsSkipsUserLookup() throws Exception {
+        ReflectionTestUtils.setField(jwtAuthenticationFilter, "principalFromClaims", true);
+        User user = User.builder().email("jane@example.com").role(Role.USER).build();
+        Claims claims = Jwts.claims().setSubject("jane@example.com");
+        when(jwtService.verifyToken("token")).thenReturn(claims);
+        when(jwtService.extractPrincipal(claims)).thenReturn(Optional.of(user));
+        when(jwtService.isTokenValid(claims, user)).thenReturn(true);
+
+        jwtAuthenticationFilter.doFilter(request("Bearer token"), new MockHttpServletResponse(), new MockFilterChain());
+
+        assertEquals(user, SecurityContextHolder.getContext().getAuthentication().getPrincipal());
+        verifyNoInteractions(userService);
+    }
+
+    @Test
+    public void testDeletedUserLeavesRequestUnauthenticated() throws Exception {
+        Claims claims = Jwts.claims().setSubject("gone@example.com");
+        when(jwtService.verifyToken("token")).thenReturn(claims);
+        when(userService.loadPrincipal("gone@example.com")).thenThrow(new UsernameNotFoundException("User not found"));
+
+        MockFilterChain chain = new MockFilterChain();
+        jwtAuthenticationFilter.doFilter(request("Bearer token"), new MockHttpServletResponse(), chain);
+
+        assertNotNull(chain.getRequest());
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    private static MockHttpServletRequest request(String authorization) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/files");
+        request.addHeader("Authorization", authorization);
+        return request;
+    }
+}
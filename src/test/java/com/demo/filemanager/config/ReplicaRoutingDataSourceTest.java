@@ -0,0 +1,140 @@
+package com.demo.filemanager.config;
+
+import com.demo.filemanager.util.ReplicaReads;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReplicaRoutingDataSourceTest {
+
+    private final JdbcDataSource primary = database("primary");
+    private final FlakyDataSource replica = new FlakyDataSource(database("replica"));
+
+    private ReplicaRoutingDataSource routing;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+
+    @BeforeEach
+    public void setUp() {
+        // two databases told apart by the row they hold
+        for (JdbcDataSource database : List.of(primary, (JdbcDataSource) replica.getTargetDataSource())) {
+            JdbcTemplate setup = new JdbcTemplate(database);
+            setup.execute("CREATE TABLE IF NOT EXISTS marker (name VARCHAR(20))");
+            setup.execute("DELETE FROM marker");
+            setup.update("INSERT INTO marker VALUES (?)", database == primary ? "primary" : "replica");
+        }
+        routing = new ReplicaRoutingDataSource(primary, List.of(replica), Duration.ofSeconds(5), "SELECT 0");
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routing);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readWrite = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void testMarkedReadOnlyReadsGoToAHealthyReplica() {
+        assertEquals("primary", ReplicaReads.read(this::readMarker), "replicas are used once checked");
+
+        routing.checkReplicas();
+
+        assertTrue(routing.isHealthy(0));
+        assertEquals("replica", ReplicaReads.read(this::readMarker));
+    }
+
+    @Test
+    public void testOtherReadsAndWritesGoToThePrimary() {
+        routing.checkReplicas();
+
+        assertEquals("primary", readMarker());
+        assertEquals("primary", ReplicaReads.read(() -> readWrite.execute(status -> marker())));
+    }
+
+    @Test
+    public void testUserReadsTheirOwnWritesFromThePrimary() {
+        routing.checkReplicas();
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("ann@example.com", null, List.of()));
+        assertEquals("replica", ReplicaReads.read(this::readMarker));
+
+        readWrite.executeWithoutResult(status -> jdbcTemplate.update("INSERT INTO marker VALUES ('upload')"));
+
+        assertEquals("primary", ReplicaReads.read(this::readMarker));
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("bob@example.com", null, List.of()));
+        assertEquals("replica", ReplicaReads.read(this::readMarker));
+    }
+
+    @Test
+    public void testReplicaRefusingConnectionsFailsOverToThePrimary() {
+        routing.checkReplicas();
+        replica.down = true;
+
+        assertEquals("primary", ReplicaReads.read(this::readMarker));
+        assertFalse(routing.isHealthy(0));
+
+        replica.down = false;
+        routing.checkReplicas();
+        assertEquals("replica", ReplicaReads.read(this::readMarker));
+    }
+
+    @Test
+    public void testLaggingReplicaIsTakenOutOfRotation() {
+        ReplicaRoutingDataSource lagging = new ReplicaRoutingDataSource(primary, List.of(replica), Duration.ofSeconds(5), "SELECT 100");
+        routing.checkReplicas();
+        lagging.checkReplicas();
+
+        assertTrue(routing.isHealthy(0));
+        assertFalse(lagging.isHealthy(0));
+    }
+
+    private String readMarker() {
+        return readOnly.execute(status -> marker());
+    }
+
+    private String marker() {
+        return jdbcTemplate.queryForObject("SELECT name FROM marker WHERE name IN ('primary', 'replica')", String.class);
+    }
+
+    private static JdbcDataSource database(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        return dataSource;
+    }
+
+    private static class FlakyDataSource extends DelegatingDataSource {
+
+        private volatile boolean down;
+
+        FlakyDataSource(JdbcDataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (down) {
+                throw new SQLException("Connection refused");
+            }
+            return super.getConnection();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.demo.filemanager.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransferMetricsFilterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final TransferMetricsFilter filter = new TransferMetricsFilter(meterRegistry);
+
+    @Test
+    public void testDownloadCountsBytesSentAndIsActiveMeanwhile() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/files/download/7");
+        AtomicReference<Double> activeDuringRequest = new AtomicReference<>();
+
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            activeDuringRequest.set(meterRegistry.get("file.transfer.active").tag("direction", "download").gauge().value());
+            req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/api/files/download/{id}");
+            res.getOutputStream().write(new byte[1000]);
+            res.getOutputStream().write(new byte[24]);
+        });
+
+        assertEquals(1.0, activeDuringRequest.get());
+        assertEquals(0.0, meterRegistry.get("file.transfer.active").tag("direction", "download").gauge().value());
+        assertEquals(1024.0, meterRegistry.get("file.transfer.bytes").tags("direction", "download", "uri", "/api/files/download/{id}").counter().count());
+        assertEquals(1, meterRegistry.get("file.transfer.duration").tags("uri", "/api/files/download/{id}", "outcome", "SUCCESS").timer().count());
+        assertTrue(meterRegistry.find("file.transfer.errors").meters().isEmpty());
+    }
+
+    @Test
+    public void testUploadCountsBytesReceived() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("PUT", "/api/files/uploads/abc/parts/1");
+        request.setContent(new byte[4096]);
+
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/api/files/uploads/{sessionId}/parts/{partNumber}");
+            req.getInputStream().readAllBytes();
+        });
+
+        assertEquals(4096.0, meterRegistry.get("file.transfer.bytes").tag("direction", "upload").counter().count());
+    }
+
+    @Test
+    public void testErrorsAreCountedByStatusAndException() throws Exception {
+        MockHttpServletResponse notFound = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/files/download/8"), notFound, (req, res) -> notFound.setStatus(404));
+        FilterChain failing = (req, res) -> {
+            throw new IOException("broken pipe");
+        };
+        assertThrows(IOException.class, () -> filter.doFilter(new MockHttpServletRequest("GET", "/api/files/download/9"),
+                new MockHttpServletResponse(), failing));
+
+        assertEquals(1.0, meterRegistry.get("file.transfer.errors").tags("status", "404", "exception", "none").counter().count());
+        assertEquals(1.0, meterRegistry.get("file.transfer.errors").tags("status", "500", "exception", "IOException").counter().count());
+        assertEquals(1, meterRegistry.get("file.transfer.duration").tag("outcome", "SERVER_ERROR").timer().count());
+        assertEquals(0.0, meterRegistry.get("file.transfer.active").tag("direction", "download").gauge().value());
+    }
+
+    @Test
+    public void testOtherRequestsAreNotMeasured() throws Exception {
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/files/page"), new MockHttpServletResponse(), (req, res) -> {
+            res.getOutputStream().write(new byte[10]);
+        });
+        filter.doFilter(new MockHttpServletRequest("POST", "/api/files/uploads"), new MockHttpServletResponse(), (req, res) -> {
+        });
+
+        assertTrue(meterRegistry.find("file.transfer.duration").meters().isEmpty());
+        assertEquals(TransferMetricsFilter.UPLOAD, TransferMetricsFilter.direction("POST", "/api/files/upload/batch"));
+        assertNull(TransferMetricsFilter.direction("DELETE", "/api/files/7"));
+    }
+}
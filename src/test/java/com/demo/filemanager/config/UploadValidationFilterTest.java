@@ -0,0 +1,193 @@
+package com.demo.filemanager.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.DelegatingServletInputStream;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.support.StandardMultipartHttpServletRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UploadValidationFilterTest {
+
+    private static final String BOUNDARY = "----upload-boundary";
+    private static final long TWO_GIGABYTES = 2L * 1024 * 1024 * 1024;
+
+    private final UploadValidationFilter filter = new UploadValidationFilter(new ObjectMapper());
+
+    @TempDir
+    private Path spool;
+
+    private boolean chainCalled;
+    private final FilterChain chain = (request, response) -> chainCalled = true;
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(filter, "maxFileSize", DataSize.ofMegabytes(5));
+        ReflectionTestUtils.setField(filter, "maxRequestSize", DataSize.ofMegabytes(100));
+        ReflectionTestUtils.setField(filter, "spoolLocation", spool.toString());
+    }
+
+    @Test
+    public void testDeclaredOversizedUploadIsRejectedWithoutReadingItsBody() throws Exception {
+        GeneratedBody body = new GeneratedBody(filePart("report.pdf", "%PDF-1.7\n"), TWO_GIGABYTES);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(upload("POST", "/api/files/upload", body, TWO_GIGABYTES), response, chain);
+
+        assertEquals(413, response.getStatus());
+        assertEquals("close", response.getHeader("Connection"));
+        assertEquals(0, body.read);
+        assertFalse(chainCalled);
+    }
+
+    @Test
+    public void testDisallowedExtensionIsRejectedAfterItsPartHeaders() throws Exception {
+        // no Content-Length, as with a chunked request: only the start of the 2 GB body may be read
+        GeneratedBody body = new GeneratedBody(filePart("setup.exe", "MZ"), TWO_GIGABYTES);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(upload("POST", "/api/files/upload", body, -1), response, chain);
+
+        assertEquals(415, response.getStatus());
+        assertTrue(response.getContentAsString().contains("setup.exe"));
+        assertTrue(body.read <= 64 * 1024, "read " + body.read + " bytes");
+        assertFalse(chainCalled);
+        assertEquals(0, Files.list(spool).count());
+    }
+
+    @Test
+    public void testContentNotMatchingItsExtensionIsRejectedAfterItsFirstBytes() throws Exception {
+        GeneratedBody body = new GeneratedBody(filePart("report.pdf", "MZ\u0090\u0000"), TWO_GIGABYTES);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(upload("PUT", "/api/files/7", body, -1), response, chain);
+
+        assertEquals(415, response.getStatus());
+        assertTrue(body.read <= 64 * 1024, "read " + body.read + " bytes");
+        assertFalse(chainCalled);
+        assertEquals(0, Files.list(spool).count());
+    }
+
+    @Test
+    public void testUndeclaredOversizedUploadIsCutOffAtTheLimit() throws Exception {
+        GeneratedBody body = new GeneratedBody(filePart("report.pdf", "%PDF-1.7\n"), TWO_GIGABYTES);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(upload("POST", "/api/files/upload", body, -1), response, chain);
+
+        assertEquals(413, response.getStatus());
+        assertTrue(body.read <= 5 * 1024 * 1024 + UploadValidationFilter.MULTIPART_OVERHEAD + 64 * 1024, "read " + body.read + " bytes");
+        assertFalse(chainCalled);
+        assertEquals(0, Files.list(spool).count(), "spooled content is removed");
+    }
+
+    @Test
+    public void testValidUploadReachesTheControllerAsSpooledParts() throws Exception {
+        byte[] content = ("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"comment\"\r\n\r\n"
+                + "quarterly\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"report.pdf\"\r\n"
+                + "Content-Type: application/pdf\r\n\r\n"
+                + "%PDF-1.7\nbody\r\n"
+                + "--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8);
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/files/upload/batch");
+        request.setContentType("multipart/form-data; boundary=" + BOUNDARY);
+        request.setContent(content);
+        AtomicReference<byte[]> received = new AtomicReference<>();
+        AtomicReference<String> comment = new AtomicReference<>();
+        AtomicReference<Long> spooledFiles = new AtomicReference<>();
+
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            // as Spring MVC resolves the request's parts
+            StandardMultipartHttpServletRequest multipart = new StandardMultipartHttpServletRequest((HttpServletRequest) req);
+            MultipartFile file = multipart.getFile("file");
+            received.set(file.getBytes());
+            assertEquals("report.pdf", file.getOriginalFilename());
+            assertEquals("application/pdf", file.getContentType());
+            comment.set(multipart.getParameter("comment"));
+            try (var files = Files.list(spool)) {
+                spooledFiles.set(files.count());
+            }
+        });
+
+        assertArrayEquals("%PDF-1.7\nbody".getBytes(StandardCharsets.UTF_8), received.get());
+        assertEquals("quarterly", comment.get());
+        assertEquals(1, spooledFiles.get());
+        assertEquals(0, Files.list(spool).count());
+    }
+
+    private static String filePart(String fileName, String start) {
+        return "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + fileName + "\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n" + start;
+    }
+
+    private static MockHttpServletRequest upload(String method, String uri, GeneratedBody body, long contentLength) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, uri) {
+            @Override
+            public ServletInputStream getInputStream() {
+                return new DelegatingServletInputStream(body);
+            }
+
+            @Override
+            public long getContentLengthLong() {
+                return contentLength;
+            }
+        };
+        request.setContentType("multipart/form-data; boundary=" + BOUNDARY);
+        return request;
+    }
+
+    /**
+     * A body of the given length that is generated as it is read, counting the bytes read.
+     */
+    private static class GeneratedBody extends InputStream {
+
+        private final byte[] start;
+        private final long length;
+        private long read;
+
+        GeneratedBody(String start, long length) {
+            this.start = start.getBytes(StandardCharsets.ISO_8859_1);
+            this.length = length;
+        }
+
+        @Override
+        public int read() {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (read >= length) {
+                return -1;
+            }
+            int n = (int) Math.min(len, length - read);
+            for (int i = 0; i < n; i++) {
+                long position = read + i;
+                b[off + i] = position < start.length ? start[(int) position] : (byte) 'x';
+            }
+            read += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.demo.filemanager.controller;
+
+import com.demo.filemanager.dao.request.SigninRequest;
+import com.demo.filemanager.dao.response.JwtAuthenticationResponse;
+import com.demo.filemanager.service.AuthenticationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+public class AuthenticationControllerTest {
+
+    @InjectMocks
+    private AuthenticationController authenticationController;
+
+    @Mock
+    private AuthenticationService authenticationService;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    public void testSignin() {
+        when(authenticationService.signin(any())).thenReturn(new JwtAuthenticationResponse("token"));
+
+        ResponseEntity<JwtAuthenticationResponse> response = authenticationController.signin(new SigninRequest("jane@example.com", "secret"));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("token", response.getBody().getToken());
+    }
+
+    @Test
+    public void testSigninWhileHashingSaturated() {
+        when(authenticationService.signin(any())).thenThrow(new RejectedExecutionException());
+
+        ResponseEntity<JwtAuthenticationResponse> response = authenticationController.signin(new SigninRequest("jane@example.com", "secret"));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("1", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    }
+}
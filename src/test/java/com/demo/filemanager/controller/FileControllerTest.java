@@ -1,7 +1,25 @@
 package com.demo.filemanager.controller;
 
+import com.demo.filemanager.dao.request.BatchDeleteRequest;
+import com.demo.filemanager.dao.request.InstantUploadRequest;
+import com.demo.filemanager.dto.BatchDeleteResultDTO;
+import com.demo.filemanager.dto.BatchUploadResultDTO;
+import com.demo.filemanager.dto.FileMetaDataDTO;
+import com.demo.filemanager.dto.FilePageDTO;
+import com.demo.filemanager.enums.FileSearchMode;
+import com.demo.filemanager.enums.FileSortOrder;
+import com.demo.filemanager.model.FileDerivative;
 import com.demo.filemanager.model.FileMetaData;
+import com.demo.filemanager.model.response.CustomApiResponse;
+import com.demo.filemanager.service.ArchiveService;
+import com.demo.filemanager.service.BatchUploadService;
+import com.demo.filemanager.service.BlobService;
 import com.demo.filemanager.service.FileService;
+import com.demo.filemanager.service.ThumbnailService;
+import com.demo.filemanager.storage.StorageResource;
+import com.demo.filemanager.util.ConditionalRequests;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -9,19 +27,35 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.RandomAccessFile;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Instant;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RequiredArgsConstructor
@@ -33,8 +67,26 @@ public class FileControllerTest {
     @Mock
     private FileService fileService;
 
+    @Mock
+    private BlobService blobService;
+
+    @Mock
+    private BatchUploadService batchUploadService;
+
+    @Mock
+    private ThumbnailService thumbnailService;
+
+    @Mock
+    private ArchiveService archiveService;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
     private static final String STORAGE_PATH = "uploads";
 
+    // sha256("Sample content")
+    private static final String SAMPLE_HASH = "ca83c6acbe7f1270c63b0b4d0b2b180c347b6d5cab6e95b2fd7be152f345314b";
+
 
 //    @BeforeEach
 //    public void setUp() {
@@ -82,6 +134,21 @@ public class FileControllerTest {
         assertEquals(HttpStatus.OK, response.getStatusCode());
     }
 
+    @Test
+    public void testGetFileByIdCarriesValidators() {
+        FileMetaData metaData = new FileMetaData();
+        metaData.setId(1L);
+        metaData.setFileName("sample.png");
+        metaData.setLastModified(Instant.parse("2024-01-02T03:04:05Z"));
+
+        when(fileService.getFileById(1L)).thenReturn(Optional.of(metaData));
+
+        ResponseEntity<?> response = fileController.getFileById(1L);
+
+        assertEquals(ConditionalRequests.metaDataETag(metaData), response.getHeaders().getETag());
+        assertEquals(metaData.getLastModified().toEpochMilli(), response.getHeaders().getLastModified());
+    }
+
     @Test
     public void testGetFileByIdNotFound() {
         when(fileService.getFileById(1L)).thenReturn(Optional.empty());
@@ -91,6 +158,55 @@ public class FileControllerTest {
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
     }
 
+    @Test
+    public void testGetThumbnailMayBeCachedWhenVersioned() {
+        FileMetaData metaData = new FileMetaData();
+        metaData.setId(1L);
+        metaData.setFileName("sample.png");
+        metaData.setContentHash(SAMPLE_HASH);
+        FileDerivative thumbnail = new FileDerivative();
+        thumbnail.setContentHash("thumb");
+        thumbnail.setContentType("image/jpeg");
+        thumbnail.setSize(42);
+        thumbnail.setCreatedAt(Instant.parse("2024-01-02T03:04:05Z"));
+        StorageResource stored = new StorageResource(null, "th/um/thumb");
+
+        when(fileService.getFileById(1L)).thenReturn(Optional.of(metaData));
+        when(thumbnailService.supports(metaData)).thenReturn(true);
+        when(thumbnailService.findThumbnail(metaData)).thenReturn(Optional.of(thumbnail));
+        when(blobService.resource("thumb")).thenReturn(stored);
+
+        ResponseEntity<?> versioned = fileController.getThumbnail(1L, SAMPLE_HASH, new MockHttpServletRequest());
+        ResponseEntity<?> unversioned = fileController.getThumbnail(1L, null, new MockHttpServletRequest());
+        MockHttpServletRequest revalidation = new MockHttpServletRequest();
+        revalidation.addHeader(HttpHeaders.IF_NONE_MATCH, "\"thumb\"");
+        ResponseEntity<?> notModified = fileController.getThumbnail(1L, null, revalidation);
+
+        assertEquals(HttpStatus.OK, versioned.getStatusCode());
+        assertEquals(stored, versioned.getBody());
+        assertEquals("max-age=31536000, private, immutable", versioned.getHeaders().getCacheControl());
+        assertEquals("\"thumb\"", versioned.getHeaders().getETag());
+        assertEquals("no-cache, private", unversioned.getHeaders().getCacheControl());
+        assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+    }
+
+    @Test
+    public void testGetThumbnailNotGeneratedYetIsScheduled() {
+        FileMetaData metaData = new FileMetaData();
+        metaData.setId(1L);
+        metaData.setFileName("sample.png");
+        metaData.setContentHash(SAMPLE_HASH);
+
+        when(fileService.getFileById(1L)).thenReturn(Optional.of(metaData));
+        when(thumbnailService.supports(metaData)).thenReturn(true);
+        when(thumbnailService.findThumbnail(metaData)).thenReturn(Optional.empty());
+
+        ResponseEntity<?> response = fileController.getThumbnail(1L, null, new MockHttpServletRequest());
+
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        verify(thumbnailService).schedule(1L, SAMPLE_HASH);
+    }
+
     @Test
     public void testDownloadFileFound() throws Exception {
         FileMetaData metaData = new FileMetaData();
@@ -101,17 +217,48 @@ public class FileControllerTest {
 
         when(fileService.getFileById(1L)).thenReturn(Optional.of(metaData));
 
-        ResponseEntity<?> response = fileController.downloadFile(1L);
+        ResponseEntity<?> response = fileController.downloadFile(1L, new MockHttpServletRequest());
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
     }
 
 
+    @Test
+    public void testDownloadFileUsesSendfileWhenSupported() throws Exception {
+        Path largeFile = Paths.get(STORAGE_PATH, "large.pdf");
+        try (RandomAccessFile raf = new RandomAccessFile(largeFile.toFile(), "rw")) {
+            raf.setLength(1024 * 1024);
+        }
+        try {
+            FileMetaData metaData = new FileMetaData();
+            metaData.setId(1L);
+            metaData.setFileName("large.pdf");
+            metaData.setFilePath(largeFile.toString());
+            metaData.setFileType("application/pdf");
+
+            when(fileService.getFileById(1L)).thenReturn(Optional.of(metaData));
+
+            MockHttpServletRequest request = new MockHttpServletRequest();
+            request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+            ResponseEntity<?> response = fileController.downloadFile(1L, request);
+
+            assertEquals(HttpStatus.OK, response.getStatusCode());
+            assertEquals(1024 * 1024, response.getHeaders().getContentLength());
+            assertNull(response.getBody());
+            assertEquals(largeFile.toAbsolutePath().normalize().toString(),
+                    request.getAttribute("org.apache.tomcat.sendfile.filename"));
+            assertEquals(1024L * 1024, request.getAttribute("org.apache.tomcat.sendfile.end"));
+        } finally {
+            Files.deleteIfExists(largeFile);
+        }
+    }
+
+
     @Test
     public void testDownloadFileNotFound() {
         when(fileService.getFileById(1L)).thenReturn(Optional.empty());
 
-        ResponseEntity<?> response = fileController.downloadFile(1L);
+        ResponseEntity<?> response = fileController.downloadFile(1L, new MockHttpServletRequest());
 
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
     }
@@ -130,9 +277,209 @@ public class FileControllerTest {
 
         when(fileService.getFileById(1L)).thenReturn(Optional.empty());
 
-        ResponseEntity<?> response = fileController.updateFile(1L, mockFile);
+        ResponseEntity<?> response = fileController.updateFile(1L, mockFile, null);
 
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
     }
 
+    @Test
+    public void testUpdateFileRejectsStaleIfMatch() throws Exception {
+        MockMultipartFile mockFile = new MockMultipartFile("file", "sample.png", "image/png", "sample content".getBytes());
+        FileMetaData metaData = new FileMetaData();
+        metaData.setId(1L);
+        metaData.setContentHash(SAMPLE_HASH);
+
+        when(fileService.getFileById(1L)).thenReturn(Optional.of(metaData));
+
+        ResponseEntity<?> response = fileController.updateFile(1L, mockFile, "\"0000\"");
+
+        assertEquals(HttpStatus.PRECONDITION_FAILED, response.getStatusCode());
+        verify(fileService, never()).replaceFileContent(any(), any(), any());
+    }
+
+    @Test
+    public void testUpdateFileReportsChangeRacingIfMatch() throws Exception {
+        MockMultipartFile mockFile = new MockMultipartFile("file", "sample.png", "image/png", "sample content".getBytes());
+        FileMetaData metaData = new FileMetaData();
+        metaData.setId(1L);
+        metaData.setContentHash(SAMPLE_HASH);
+
+        when(fileService.getFileById(1L)).thenReturn(Optional.of(metaData));
+        when(fileService.replaceFileContent(any(), any(), any())).thenThrow(new FileService.PreconditionFailedException("File has been modified"));
+
+        ResponseEntity<?> response = fileController.updateFile(1L, mockFile, "\"" + SAMPLE_HASH + "\"");
+
+        assertEquals(HttpStatus.PRECONDITION_FAILED, response.getStatusCode());
+    }
+
+    @Test
+    public void testUpdateFileDoesNotReportOtherFailuresAsModified() throws Exception {
+        MockMultipartFile mockFile = new MockMultipartFile("file", "sample.png", "image/png", "sample content".getBytes());
+        FileMetaData metaData = new FileMetaData();
+        metaData.setId(1L);
+        metaData.setContentHash(SAMPLE_HASH);
+
+        when(fileService.getFileById(1L)).thenReturn(Optional.of(metaData));
+        when(fileService.replaceFileContent(any(), any(), any())).thenThrow(new IllegalStateException("Transaction silently rolled back"));
+
+        assertThrows(IllegalStateException.class, () -> fileController.updateFile(1L, mockFile, "\"" + SAMPLE_HASH + "\""));
+    }
+
+    @Test
+    public void testInstantUploadRejectsMalformedHash() {
+        InstantUploadRequest request = InstantUploadRequest.builder()
+                .fileName("sample.png").contentHash("not-a-digest").fileSize(14).build();
+
+        ResponseEntity<?> response = fileController.instantUpload(request);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    @Test
+    public void testInstantUploadUnknownContent() {
+        InstantUploadRequest request = InstantUploadRequest.builder()
+                .fileName("sample.png").contentHash(SAMPLE_HASH).fileSize(14).build();
+
+        when(fileService.saveFileByContentHash(any(FileMetaData.class), eq(SAMPLE_HASH), eq(14L))).thenReturn(Optional.empty());
+
+        ResponseEntity<?> response = fileController.instantUpload(request);
+
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+
+    @Test
+    public void testInstantUploadKnownContent() {
+        InstantUploadRequest request = InstantUploadRequest.builder()
+                .fileName("sample.png").fileType("image/png").contentHash(SAMPLE_HASH.toUpperCase()).fileSize(14).build();
+        FileMetaData metaData = new FileMetaData();
+        metaData.setId(2L);
+        metaData.setFileName("sample.png");
+        metaData.setContentHash(SAMPLE_HASH);
+
+        when(fileService.saveFileByContentHash(any(FileMetaData.class), eq(SAMPLE_HASH), eq(14L))).thenReturn(Optional.of(metaData));
+
+        ResponseEntity<?> response = fileController.instantUpload(request);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+    }
+
+    @Test
+    public void testUploadFilesReportsEachFile() throws Exception {
+        MockMultipartFile valid = new MockMultipartFile("files", "a.pdf", "application/pdf", "a".getBytes());
+        MockMultipartFile invalid = new MockMultipartFile("files", "b.exe", "application/octet-stream", "b".getBytes());
+        MockMultipartFile failing = new MockMultipartFile("files", "c.pdf", "application/pdf", "c".getBytes());
+        FileMetaData saved = new FileMetaData();
+        saved.setId(1L);
+        saved.setFileName("a.pdf");
+
+        when(batchUploadService.upload(any(), eq(List.of(valid, failing)))).thenReturn(List.of(
+                new BatchUploadService.Result(saved, null), new BatchUploadService.Result(null, "Error saving file")));
+
+        ResponseEntity<CustomApiResponse<List<BatchUploadResultDTO>>> response =
+                fileController.uploadFiles(List.of(valid, invalid, failing));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("1 of 3 files uploaded successfully.", response.getBody().getMessage());
+        List<BatchUploadResultDTO> results = response.getBody().getData();
+        assertEquals(1L, results.get(0).getFile().getId());
+        assertEquals("Invalid file type or size!", results.get(1).getMessage());
+        assertEquals("c.pdf", results.get(2).getFileName());
+        assertEquals(false, results.get(2).isSuccess());
+    }
+
+    @Test
+    public void testDeleteFilesReportsMissingIds() {
+        when(fileService.deleteFiles(List.of(1L, 2L, 3L))).thenReturn(List.of(1L, 3L));
+
+        ResponseEntity<CustomApiResponse<BatchDeleteResultDTO>> response =
+                fileController.deleteFiles(BatchDeleteRequest.builder().ids(List.of(1L, 2L, 3L, 1L)).build());
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(List.of(1L, 3L), response.getBody().getData().getDeleted());
+        assertEquals(List.of(2L), response.getBody().getData().getNotFound());
+    }
+
+    @Test
+    public void testDeleteFilesRejectsEmptyRequest() {
+        ResponseEntity<?> response = fileController.deleteFiles(new BatchDeleteRequest());
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    @Test
+    public void testGetFilePageRejectsUnknownSort() {
+        ResponseEntity<?> response = fileController.getFilePage("fileSize", null, 50);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    @Test
+    public void testSearchFiles() {
+        when(fileService.searchFiles(FileSearchMode.PREFIX, "rep", "image/*", null, 20)).thenReturn(new FilePageDTO(Collections.emptyList(), null));
+
+        assertEquals(HttpStatus.OK, fileController.searchFiles("rep", "prefix", "image/*", null, 20).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, fileController.searchFiles("re", "substring", null, null, 20).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, fileController.searchFiles("", "prefix", null, null, 20).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, fileController.searchFiles("report", "fuzzy", null, null, 20).getStatusCode());
+        verify(fileService, never()).searchFiles(eq(FileSearchMode.SUBSTRING), any(), any(), any(), anyInt());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDownloadZipStreamsArchiveOfGivenIds() throws Exception {
+        doAnswer(invocation -> {
+            invocation.<java.io.OutputStream>getArgument(1).write("zip".getBytes());
+            return null;
+        }).when(archiveService).writeZip(eq(List.of(2L, 1L)), any());
+
+        ResponseEntity<?> response = fileController.downloadZip(List.of(2L, 1L, 2L), "", "substring", null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((ResponseEntity<StreamingResponseBody>) response).getBody().writeTo(out);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("application/zip", response.getHeaders().getContentType().toString());
+        assertEquals("attachment; filename=\"files.zip\"", response.getHeaders().getFirst(HttpHeaders.CONTENT_DISPOSITION));
+        assertEquals("zip", out.toString());
+    }
+
+    @Test
+    public void testDownloadZipRejectsTooManyFiles() {
+        when(archiveService.searchIds(FileSearchMode.PREFIX, "rep", null, 10000)).thenReturn(Collections.nCopies(10001, 1L));
+        when(archiveService.searchIds(FileSearchMode.SUBSTRING, "nothing", null, 10000)).thenReturn(List.of());
+
+        assertEquals(HttpStatus.BAD_REQUEST, fileController.downloadZip(null, "rep", "prefix", null).getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, fileController.downloadZip(null, "nothing", "substring", null).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, fileController.downloadZip(null, "", "substring", null).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, fileController.downloadZip(Collections.nCopies(1, null), "", "substring", null).getStatusCode());
+    }
+
+    @Test
+    public void testGetFilePage() {
+        when(fileService.getFilePage(FileSortOrder.FILE_NAME, null, 10)).thenReturn(new FilePageDTO(Collections.emptyList(), null));
+
+        ResponseEntity<?> response = fileController.getFilePage("fileName", null, 10);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testStreamAllFilesWritesRowsAsTheyArrive() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<FileMetaDataDTO> consumer = invocation.getArgument(0);
+            consumer.accept(new FileMetaDataDTO(1L, "a.pdf", "uploads/a.pdf", "application/pdf", 3, null));
+            consumer.accept(new FileMetaDataDTO(2L, "b.pdf", "uploads/b.pdf", "application/pdf", 4, null));
+            return null;
+        }).when(fileService).streamFiles(any(Consumer.class));
+
+        ResponseEntity<StreamingResponseBody> response = fileController.streamAllFiles();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+
+        JsonNode json = objectMapper.readTree(out.toByteArray());
+        assertEquals("All files fetched successfully.", json.get("message").asText());
+        assertEquals(2, json.get("data").size());
+        assertEquals("b.pdf", json.get("data").get(1).get("fileName").asText());
+    }
+
 }
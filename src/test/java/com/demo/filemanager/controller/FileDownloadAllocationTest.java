@@ -0,0 +1,132 @@
+package com.demo.filemanager.controller;
+
+import com.demo.filemanager.model.FileMetaData;
+import com.demo.filemanager.service.FileService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.ResourceHttpMessageConverter;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+/**
+ * Measures the heap allocated by the calling thread while a download is written to a discarding sink.
+ * The amount must stay flat as the file grows, i.e. the file is never materialized on the heap.
+ */
+public class FileDownloadAllocationTest {
+
+    private static final long[] FILE_SIZES = { 1L << 20, 16L << 20, 64L << 20 };
+
+    @InjectMocks
+    private FileController fileController;
+
+    @Mock
+    private FileService fileService;
+
+    @TempDir
+    Path storage;
+
+    private AutoCloseable mocks;
+
+    @BeforeEach
+    public void setUp() {
+        mocks = MockitoAnnotations.openMocks(this);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        mocks.close();
+    }
+
+    @Test
+    public void testHeapAllocationPerDownloadStaysFlat() throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        // warm up class loading and JIT so the measured runs only see per-download allocation
+        long smallest = FILE_SIZES[0];
+        for (int i = 0; i < 5; i++) {
+            download(createFile(smallest, "warmup.pdf"));
+        }
+
+        long[] allocated = new long[FILE_SIZES.length];
+        for (int i = 0; i < FILE_SIZES.length; i++) {
+            FileMetaData metaData = createFile(FILE_SIZES[i], "file-" + i + ".pdf");
+            long before = threads.getThreadAllocatedBytes(threadId);
+            long written = download(metaData);
+            allocated[i] = threads.getThreadAllocatedBytes(threadId) - before;
+
+            assertEquals(FILE_SIZES[i], written);
+        }
+
+        long largest = allocated[allocated.length - 1];
+        String allocations = "bytes allocated by downloads of " + Arrays.toString(FILE_SIZES) + " bytes: " + Arrays.toString(allocated);
+        assertTrue(largest < 1024 * 1024, allocations);
+        assertTrue(largest < allocated[0] + 256 * 1024, "allocation grew with file size, " + allocations);
+    }
+
+    private FileMetaData createFile(long size, String name) throws Exception {
+        Path path = storage.resolve(name);
+        try (RandomAccessFile raf = new RandomAccessFile(path.toFile(), "rw")) {
+            raf.setLength(size);
+        }
+        FileMetaData metaData = new FileMetaData();
+        metaData.setId(1L);
+        metaData.setFileName(name);
+        metaData.setFilePath(path.toString());
+        metaData.setFileType("application/pdf");
+        return metaData;
+    }
+
+    private long download(FileMetaData metaData) throws Exception {
+        when(fileService.getFileById(1L)).thenReturn(Optional.of(metaData));
+        ResponseEntity<Resource> response = fileController.downloadFile(1L, new MockHttpServletRequest());
+
+        CountingSink sink = new CountingSink();
+        new ResourceHttpMessageConverter().write(response.getBody(), null, sink);
+        return sink.count;
+    }
+
+    private static class CountingSink extends OutputStream implements HttpOutputMessage {
+        private final HttpHeaders headers = new HttpHeaders();
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public OutputStream getBody() {
+            return this;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+}
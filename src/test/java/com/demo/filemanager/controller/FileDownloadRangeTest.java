@@ -0,0 +1,363 @@
+package com.demo.filemanager.controller;
+
+import com.demo.filemanager.enums.ContentEncoding;
+import com.demo.filemanager.model.FileMetaData;
+import com.demo.filemanager.service.BlobService;
+import com.demo.filemanager.service.FileService;
+import com.demo.filemanager.storage.DecodingResource;
+import com.demo.filemanager.storage.LocalStorageBackend;
+import com.demo.filemanager.storage.StorageBackend;
+import com.demo.filemanager.storage.StorageResource;
+import com.demo.filemanager.storage.StorageStat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class FileDownloadRangeTest {
+
+    private static final String CONTENT = "0123456789abcdefghij";
+
+    @InjectMocks
+    private FileController fileController;
+
+    @Mock
+    private FileService fileService;
+
+    @Mock
+    private BlobService blobService;
+
+    @TempDir
+    Path storage;
+
+    private AutoCloseable mocks;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        mocks = MockitoAnnotations.openMocks(this);
+        mockMvc = MockMvcBuilders.standaloneSetup(fileController).build();
+
+        Path filePath = storage.resolve("sample.pdf");
+        Files.write(filePath, CONTENT.getBytes(StandardCharsets.US_ASCII));
+
+        FileMetaData metaData = new FileMetaData();
+        metaData.setId(1L);
+        metaData.setFileName("sample.pdf");
+        metaData.setFilePath(filePath.toString());
+        metaData.setFileType("application/pdf");
+        when(fileService.getFileById(1L)).thenReturn(Optional.of(metaData));
+    }
+
+    /**
+     * A blob in a backend without local files, like an object store: ranges must be read from the backend.
+     */
+    private AtomicLong storeBlob() throws IOException {
+        LocalStorageBackend local = new LocalStorageBackend(storage.resolve("blobs"));
+        local.put("ab/cd/abcd", new ByteArrayInputStream(CONTENT.getBytes(StandardCharsets.US_ASCII)), CONTENT.length());
+        AtomicLong lastOffset = new AtomicLong(-1);
+        StorageBackend remote = new StorageBackend() {
+            @Override
+            public void put(String key, InputStream content, long size) throws IOException {
+                local.put(key, content, size);
+            }
+
+            @Override
+            public InputStream get(String key, long offset, long length) throws IOException {
+                lastOffset.set(offset);
+                return local.get(key, offset, length);
+            }
+
+            @Override
+            public Optional<StorageStat> stat(String key) throws IOException {
+                return local.stat(key);
+            }
+
+            @Override
+            public void delete(String key) throws IOException {
+                local.delete(key);
+            }
+        };
+
+        FileMetaData metaData = new FileMetaData();
+        metaData.setId(2L);
+        metaData.setFileName("blob.pdf");
+        metaData.setFilePath("uploads/blobs/ab/cd/abcd");
+        metaData.setFileType("application/pdf");
+        metaData.setContentHash("abcd");
+        when(fileService.getFileById(2L)).thenReturn(Optional.of(metaData));
+        when(blobService.resource("abcd")).thenAnswer(invocation -> new StorageResource(remote, "ab/cd/abcd"));
+        return lastOffset;
+    }
+
+    /**
+     * A blob stored gzip-compressed.
+     */
+    private void storeCompressedBlob() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(CONTENT.getBytes(StandardCharsets.US_ASCII));
+        }
+        LocalStorageBackend local = new LocalStorageBackend(storage.resolve("blobs"));
+        local.put("ef/01/ef01", new ByteArrayInputStream(compressed.toByteArray()), compressed.size());
+
+        FileMetaData metaData = new FileMetaData();
+        metaData.setId(3L);
+        metaData.setFileName("notes.pdf");
+        metaData.setFilePath("uploads/blobs/ef/01/ef01");
+        metaData.setFileType("application/pdf");
+        metaData.setFileSize(CONTENT.length());
+        metaData.setContentHash("ef01");
+        metaData.setContentEncoding(ContentEncoding.GZIP);
+        when(fileService.getFileById(3L)).thenReturn(Optional.of(metaData));
+        when(blobService.resource("ef01")).thenAnswer(invocation -> new StorageResource(local, "ef/01/ef01"));
+        when(blobService.content(eq("ef01"), eq(ContentEncoding.GZIP), eq((long) CONTENT.length())))
+                .thenAnswer(invocation -> new DecodingResource(new StorageResource(local, "ef/01/ef01"), ContentEncoding.GZIP, CONTENT.length()));
+    }
+
+    @Test
+    public void testCompressedBlobIsSentAsStoredWhenAccepted() throws Exception {
+        storeCompressedBlob();
+
+        MvcResult result = mockMvc.perform(get("/api/files/download/3").header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate, br"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"ef01-gzip\""))
+                .andReturn();
+
+        byte[] body = result.getResponse().getContentAsByteArray();
+        assertEquals(body.length, result.getResponse().getContentLengthLong());
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            assertEquals(CONTENT, new String(in.readAllBytes(), StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    public void testCompressedBlobIsDecompressedWhenNotAccepted() throws Exception {
+        storeCompressedBlob();
+
+        mockMvc.perform(get("/api/files/download/3").header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, br"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"ef01\""))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, CONTENT.length()))
+                .andExpect(content().string(CONTENT));
+        mockMvc.perform(get("/api/files/download/3").header(HttpHeaders.RANGE, "bytes=12-15"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 12-15/20"))
+                .andExpect(content().string("cdef"));
+    }
+
+    @Test
+    public void testBlobDownloadStreamsFromStorageBackend() throws Exception {
+        storeBlob();
+
+        mockMvc.perform(get("/api/files/download/2"))
+                .andExpect(status().isOk())
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, CONTENT.length()))
+                .andExpect(content().string(CONTENT));
+    }
+
+    @Test
+    public void testBlobSingleRangeIsReadFromItsOffset() throws Exception {
+        AtomicLong lastOffset = storeBlob();
+
+        mockMvc.perform(get("/api/files/download/2").header(HttpHeaders.RANGE, "bytes=12-15"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 12-15/20"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 4))
+                .andExpect(content().string("cdef"));
+        assertEquals(12L, lastOffset.get());
+    }
+
+    @Test
+    public void testIfNoneMatchIsAnsweredWithoutReadingContent() throws Exception {
+        storeBlob();
+
+        mockMvc.perform(get("/api/files/download/2").header(HttpHeaders.IF_NONE_MATCH, "\"abcd\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"abcd\""))
+                .andExpect(content().string(""));
+        verify(blobService, never()).resource(any());
+    }
+
+    @Test
+    public void testIfModifiedSince() throws Exception {
+        storeBlob();
+        FileMetaData metaData = fileService.getFileById(2L).get();
+        metaData.setLastModified(Instant.parse("2024-01-02T03:04:05.678Z"));
+
+        mockMvc.perform(get("/api/files/download/2").header(HttpHeaders.IF_MODIFIED_SINCE, "Tue, 02 Jan 2024 03:04:05 GMT"))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/api/files/download/2").header(HttpHeaders.IF_MODIFIED_SINCE, "Tue, 02 Jan 2024 03:04:04 GMT"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.LAST_MODIFIED, "Tue, 02 Jan 2024 03:04:05 GMT"))
+                .andExpect(content().string(CONTENT));
+    }
+
+    @Test
+    public void testFailedIfMatch() throws Exception {
+        storeBlob();
+
+        mockMvc.perform(get("/api/files/download/2").header(HttpHeaders.IF_MATCH, "\"0000\""))
+                .andExpect(status().isPreconditionFailed());
+        verify(blobService, never()).resource(any());
+    }
+
+    @Test
+    public void testIfRangeWithCurrentETagSendsRange() throws Exception {
+        storeBlob();
+
+        mockMvc.perform(get("/api/files/download/2")
+                        .header(HttpHeaders.RANGE, "bytes=12-15")
+                        .header(HttpHeaders.IF_RANGE, "\"abcd\""))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"abcd\""))
+                .andExpect(content().string("cdef"));
+    }
+
+    @Test
+    public void testBlobMultipleRanges() throws Exception {
+        storeBlob();
+
+        MvcResult result = mockMvc.perform(get("/api/files/download/2").header(HttpHeaders.RANGE, "bytes=0-1,-3"))
+                .andExpect(status().isPartialContent())
+                .andReturn();
+
+        String body = result.getResponse().getContentAsString();
+        assertTrue(body.contains("Content-Range: bytes 0-1/20\r\n\r\n01\r\n"), body);
+        assertTrue(body.contains("Content-Range: bytes 17-19/20\r\n\r\nhij\r\n"), body);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        mocks.close();
+    }
+
+    @Test
+    public void testFullDownloadAdvertisesRanges() throws Exception {
+        mockMvc.perform(get("/api/files/download/1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, CONTENT.length()))
+                .andExpect(content().string(CONTENT));
+    }
+
+    @Test
+    public void testSingleRange() throws Exception {
+        mockMvc.perform(get("/api/files/download/1").header(HttpHeaders.RANGE, "bytes=2-5"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/20"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 4))
+                .andExpect(content().string("2345"));
+    }
+
+    @Test
+    public void testSuffixRange() throws Exception {
+        mockMvc.perform(get("/api/files/download/1").header(HttpHeaders.RANGE, "bytes=-4"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 16-19/20"))
+                .andExpect(content().string("ghij"));
+    }
+
+    @Test
+    public void testRangeCrossingEndOfFileIsTruncated() throws Exception {
+        mockMvc.perform(get("/api/files/download/1").header(HttpHeaders.RANGE, "bytes=15-1000"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 15-19/20"))
+                .andExpect(content().string("fghij"));
+    }
+
+    @Test
+    public void testOpenEndedRange() throws Exception {
+        mockMvc.perform(get("/api/files/download/1").header(HttpHeaders.RANGE, "bytes=18-"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 18-19/20"))
+                .andExpect(content().string("ij"));
+    }
+
+    @Test
+    public void testUnsatisfiableRange() throws Exception {
+        mockMvc.perform(get("/api/files/download/1").header(HttpHeaders.RANGE, "bytes=20-30"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */20"));
+    }
+
+    @Test
+    public void testMultipleRangesAreSentAsMultipartByteranges() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/files/download/1").header(HttpHeaders.RANGE, "bytes=0-1,-3"))
+                .andExpect(status().isPartialContent())
+                .andReturn();
+
+        String contentType = result.getResponse().getContentType();
+        assertTrue(contentType.startsWith("multipart/byteranges; boundary="), contentType);
+        String boundary = contentType.substring(contentType.indexOf("boundary=") + "boundary=".length());
+
+        String body = result.getResponse().getContentAsString();
+        assertTrue(body.contains("--" + boundary + "\r\n"), body);
+        assertTrue(body.contains("Content-Range: bytes 0-1/20\r\n\r\n01\r\n"), body);
+        assertTrue(body.contains("Content-Range: bytes 17-19/20\r\n\r\nhij\r\n"), body);
+        assertTrue(body.endsWith("--" + boundary + "--"), body);
+    }
+
+    @Test
+    public void testIfRangeFallsBackToFullContent() throws Exception {
+        mockMvc.perform(get("/api/files/download/1")
+                        .header(HttpHeaders.RANGE, "bytes=2-5")
+                        .header(HttpHeaders.IF_RANGE, "\"stale\""))
+                .andExpect(status().isOk())
+                .andExpect(content().string(CONTENT));
+    }
+
+    @Test
+    public void testSingleRangeUsesSendfileWhenSupported() throws Exception {
+        ReflectionTestUtils.setField(fileController, "sendfileMinSize", 0L);
+
+        MvcResult result = mockMvc.perform(get("/api/files/download/1")
+                        .header(HttpHeaders.RANGE, "bytes=-4")
+                        .requestAttr("org.apache.tomcat.sendfile.support", Boolean.TRUE))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 16-19/20"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 4))
+                .andReturn();
+
+        assertEquals(16L, result.getRequest().getAttribute("org.apache.tomcat.sendfile.start"));
+        assertEquals(20L, result.getRequest().getAttribute("org.apache.tomcat.sendfile.end"));
+        assertEquals(0, result.getResponse().getContentAsByteArray().length);
+    }
+}
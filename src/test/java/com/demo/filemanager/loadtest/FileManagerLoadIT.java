@@ -0,0 +1,443 @@
+package com.demo.filemanager.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Load test of the whole application: it runs on a random port against an in-memory H2 database (in PostgreSQL
+ * mode) and a temporary storage directory, with the real security filter chain, JDBC and disk I/O. Each of
+ * {@code loadtest.users} clients signs up and then, for the warm-up and the measured duration, picks operations by
+ * the weights of {@code loadtest.mix.*}: sign in, upload a file of {@code loadtest.file-size} random bytes, list a
+ * page of files, download one of its files and delete one of its files.
+ * <p>
+ * The p50/p99 latency, operations per second and, for uploads and downloads, MB/s of each operation are printed and
+ * written to {@code target/load-test-report.json}. The test fails when an operation passes a threshold of
+ * {@code load-test.properties}, or, given {@code -Dloadtest.baseline=<earlier report>}, regressed against it by more
+ * than {@code loadtest.max-regression-percent}. Run with {@code mvn -Pload-test verify}; it is not part of
+ * {@code mvn test}.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:loadtest;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;"
+                + "INIT=CREATE SCHEMA IF NOT EXISTS filemanager",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "file.search.create-index=false",
+        "logging.level.root=warn"
+})
+public class FileManagerLoadIT {
+
+    private static final Path STORAGE = createStorage();
+    private static final Properties SETTINGS = loadSettings();
+    private static final int SEED_FILES = 4;
+    private static final byte[] PDF_HEADER = "%PDF-1.7\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    @LocalServerPort
+    private int port;
+
+    private enum Operation {
+        SIGNIN, UPLOAD, LIST, DOWNLOAD, DELETE;
+
+        String key() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    @DynamicPropertySource
+    static void storage(DynamicPropertyRegistry registry) {
+        registry.add("file.storage.location", STORAGE::toString);
+    }
+
+    @AfterAll
+    static void removeStorage() throws IOException {
+        FileSystemUtils.deleteRecursively(STORAGE);
+    }
+
+    @Test
+    public void testThroughputAndLatencyStayWithinThresholds() throws Exception {
+        int users = Integer.parseInt(setting("loadtest.users"));
+        Duration warmup = Duration.parse(setting("loadtest.warmup"));
+        Duration duration = Duration.parse(setting("loadtest.duration"));
+
+        List<Client> clients = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            Client client = new Client("load-" + i + "@example.com", "password-" + i, new Random(i));
+            client.signup();
+            for (int j = 0; j < SEED_FILES; j++) {
+                client.upload();
+            }
+            clients.add(client);
+        }
+
+        long measureFrom = System.nanoTime() + warmup.toNanos();
+        long measureUntil = measureFrom + duration.toNanos();
+        ExecutorService workers = Executors.newFixedThreadPool(users);
+        try {
+            List<Future<?>> running = new ArrayList<>(users);
+            for (Client client : clients) {
+                running.add(workers.submit(() -> client.run(measureFrom, measureUntil)));
+            }
+            for (Future<?> future : running) {
+                future.get();
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+
+        Map<Operation, Stats> total = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            Stats merged = new Stats();
+            clients.forEach(client -> merged.add(client.stats.get(operation)));
+            total.put(operation, merged);
+        }
+        Map<String, Result> results = new LinkedHashMap<>();
+        total.forEach((operation, stats) -> results.put(operation.key(), stats.result(duration)));
+
+        report(results, users, duration);
+        List<String> violations = check(results, total);
+        clients.stream().flatMap(client -> client.failures.stream()).limit(10)
+                .forEach(failure -> System.out.println("failure: " + failure));
+        assertTrue(violations.isEmpty(), () -> "Load test gates failed:\n" + String.join("\n", violations));
+    }
+
+    private void report(Map<String, Result> results, int users, Duration duration) throws IOException {
+        System.out.printf("%nLoad test: %d users for %s, %s byte files%n", users, duration, setting("loadtest.file-size"));
+        System.out.printf("%-10s %8s %7s %10s %10s %10s %10s%n", "operation", "count", "errors", "p50 ms", "p99 ms", "ops/s", "MB/s");
+        results.forEach((operation, result) -> System.out.printf("%-10s %8d %7d %10.1f %10.1f %10.1f %10s%n",
+                operation, result.count(), result.errors(), result.p50Ms(), result.p99Ms(), result.opsPerSecond(),
+                result.mbPerSecond() == null ? "" : String.format("%.1f", result.mbPerSecond())));
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("users", users);
+        report.put("durationSeconds", duration.toMillis() / 1000.0);
+        report.put("fileSize", Long.parseLong(setting("loadtest.file-size")));
+        report.put("operations", results);
+        Path file = Path.of(System.getProperty("loadtest.report", "target/load-test-report.json"));
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        objectMapper.writer(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), report);
+        System.out.println("Report written to " + file.toAbsolutePath());
+    }
+
+    private List<String> check(Map<String, Result> results, Map<Operation, Stats> total) throws IOException {
+        List<String> violations = new ArrayList<>();
+        long count = total.values().stream().mapToLong(stats -> stats.count).sum();
+        long errors = total.values().stream().mapToLong(stats -> stats.errors).sum();
+        double maxErrorRate = Double.parseDouble(setting("loadtest.max-error-rate"));
+        if (count == 0 || (double) errors / count > maxErrorRate) {
+            violations.add(String.format("%d of %d operations failed, more than %.1f%%", errors, count, maxErrorRate * 100));
+        }
+
+        results.forEach((operation, result) -> {
+            String p99 = setting("loadtest." + operation + ".p99-max-ms");
+            if (!p99.isBlank() && result.p99Ms() > Double.parseDouble(p99)) {
+                violations.add(String.format("%s p99 %.1f ms > %s ms", operation, result.p99Ms(), p99));
+            }
+            String minOps = setting("loadtest." + operation + ".min-ops-per-second");
+            if (!minOps.isBlank() && result.opsPerSecond() < Double.parseDouble(minOps)) {
+                violations.add(String.format("%s %.1f ops/s < %s ops/s", operation, result.opsPerSecond(), minOps));
+            }
+            String minMb = setting("loadtest." + operation + ".min-mb-per-second");
+            if (!minMb.isBlank() && result.mbPerSecond() != null && result.mbPerSecond() < Double.parseDouble(minMb)) {
+                violations.add(String.format("%s %.1f MB/s < %s MB/s", operation, result.mbPerSecond(), minMb));
+            }
+        });
+
+        String baseline = setting("loadtest.baseline");
+        if (!baseline.isBlank()) {
+            double allowed = Double.parseDouble(setting("loadtest.max-regression-percent")) / 100;
+            JsonNode before = objectMapper.readTree(Path.of(baseline).toFile()).path("operations");
+            results.forEach((operation, result) -> {
+                JsonNode previous = before.path(operation);
+                if (previous.isMissingNode()) {
+                    return;
+                }
+                double p99 = previous.path("p99Ms").asDouble();
+                if (p99 > 0 && result.p99Ms() > p99 * (1 + allowed)) {
+                    violations.add(String.format("%s p99 %.1f ms, was %.1f ms", operation, result.p99Ms(), p99));
+                }
+                double ops = previous.path("opsPerSecond").asDouble();
+                if (result.opsPerSecond() < ops * (1 - allowed)) {
+                    violations.add(String.format("%s %.1f ops/s, was %.1f ops/s", operation, result.opsPerSecond(), ops));
+                }
+                double mb = previous.path("mbPerSecond").asDouble();
+                if (result.mbPerSecond() != null && result.mbPerSecond() < mb * (1 - allowed)) {
+                    violations.add(String.format("%s %.1f MB/s, was %.1f MB/s", operation, result.mbPerSecond(), mb));
+                }
+            });
+        }
+        return violations;
+    }
+
+    /**
+     * One simulated user, run on its own thread. It downloads and deletes only files it uploaded itself.
+     */
+    private class Client {
+
+        private final String email;
+        private final String password;
+        private final Random random;
+        private final Deque<Long> fileIds = new ArrayDeque<>();
+        private final Map<Operation, Stats> stats = new EnumMap<>(Operation.class);
+        private final List<String> failures = new ArrayList<>();
+        private final int[] weights = new int[Operation.values().length];
+        private final int fileSize = Integer.parseInt(setting("loadtest.file-size"));
+        private String token;
+
+        Client(String email, String password, Random random) {
+            this.email = email;
+            this.password = password;
+            this.random = random;
+            for (Operation operation : Operation.values()) {
+                stats.put(operation, new Stats());
+                weights[operation.ordinal()] = Integer.parseInt(setting("loadtest.mix." + operation.key()));
+            }
+        }
+
+        void run(long measureFrom, long measureUntil) {
+            int totalWeight = Arrays.stream(weights).sum();
+            long start;
+            while ((start = System.nanoTime()) < measureUntil) {
+                Operation operation = pick(random.nextInt(totalWeight));
+                // keep a few files around to download and delete
+                if ((operation == Operation.DOWNLOAD && fileIds.isEmpty()) || (operation == Operation.DELETE && fileIds.size() <= 1)) {
+                    operation = Operation.UPLOAD;
+                }
+                byte[] content = operation == Operation.UPLOAD ? randomContent() : null;
+                long bytes;
+                try {
+                    start = System.nanoTime();
+                    bytes = switch (operation) {
+                        case SIGNIN -> signin();
+                        case UPLOAD -> upload(content);
+                        case LIST -> list();
+                        case DOWNLOAD -> download(fileIds.toArray(new Long[0])[random.nextInt(fileIds.size())]);
+                        case DELETE -> delete(fileIds.pollFirst());
+                    };
+                } catch (IOException | RuntimeException ex) {
+                    bytes = -1;
+                    if (failures.size() < 10) {
+                        failures.add(operation.key() + ": " + ex.getMessage());
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (start >= measureFrom) {
+                    stats.get(operation).record(System.nanoTime() - start, bytes);
+                }
+            }
+        }
+
+        private Operation pick(int draw) {
+            for (Operation operation : Operation.values()) {
+                draw -= weights[operation.ordinal()];
+                if (draw < 0) {
+                    return operation;
+                }
+            }
+            throw new IllegalStateException("No operation has a weight");
+        }
+
+        void signup() throws IOException, InterruptedException {
+            token = authenticate("/api/v1/auth/signup", Map.of("firstName", "Load", "lastName", "Test", "email", email,
+                    "password", password));
+        }
+
+        long signin() throws IOException, InterruptedException {
+            token = authenticate("/api/v1/auth/signing", Map.of("email", email, "password", password));
+            return 0;
+        }
+
+        private String authenticate(String path, Map<String, String> body) throws IOException, InterruptedException {
+            HttpResponse<byte[]> response = httpClient.send(HttpRequest.newBuilder(uri(path))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                    .build(), HttpResponse.BodyHandlers.ofByteArray());
+            expectOk(response);
+            return objectMapper.readTree(response.body()).path("token").asText();
+        }
+
+        long upload() throws IOException, InterruptedException {
+            return upload(randomContent());
+        }
+
+        private long upload(byte[] content) throws IOException, InterruptedException {
+            String boundary = "load-test-" + Long.toHexString(random.nextLong());
+            byte[] head = ("--" + boundary + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"report-"
+                    + Long.toHexString(random.nextLong()) + ".pdf\"\r\nContent-Type: application/pdf\r\n\r\n")
+                    .getBytes(StandardCharsets.UTF_8);
+            byte[] tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+            HttpResponse<byte[]> response = httpClient.send(authorized("/api/files/upload")
+                    .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                    .POST(HttpRequest.BodyPublishers.ofByteArrays(List.of(head, content, tail)))
+                    .build(), HttpResponse.BodyHandlers.ofByteArray());
+            expectOk(response);
+            fileIds.addLast(objectMapper.readTree(response.body()).path("data").path("id").asLong());
+            return content.length;
+        }
+
+        long list() throws IOException, InterruptedException {
+            HttpResponse<byte[]> response = httpClient.send(authorized("/api/files/page?size=50").GET().build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            expectOk(response);
+            return 0;
+        }
+
+        long download(long id) throws IOException, InterruptedException {
+            HttpResponse<InputStream> response = httpClient.send(authorized("/api/files/download/" + id).GET().build(),
+                    HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = response.body()) {
+                long read = body.transferTo(OutputStream.nullOutputStream());
+                if (response.statusCode() != 200) {
+                    throw new IOException("HTTP " + response.statusCode());
+                }
+                return read;
+            }
+        }
+
+        long delete(long id) throws IOException, InterruptedException {
+            expectOk(httpClient.send(authorized("/api/files/" + id).DELETE().build(), HttpResponse.BodyHandlers.ofByteArray()));
+            return 0;
+        }
+
+        private byte[] randomContent() {
+            // distinct content, so every upload stores a new blob, starting like the PDF its name claims
+            byte[] content = new byte[fileSize];
+            random.nextBytes(content);
+            System.arraycopy(PDF_HEADER, 0, content, 0, Math.min(PDF_HEADER.length, fileSize));
+            return content;
+        }
+
+        private HttpRequest.Builder authorized(String path) {
+            return HttpRequest.newBuilder(uri(path)).header("Authorization", "Bearer " + token);
+        }
+
+        private URI uri(String path) {
+            return URI.create("http://localhost:" + port + path);
+        }
+
+        private void expectOk(HttpResponse<?> response) throws IOException {
+            if (response.statusCode() != 200) {
+                throw new IOException("HTTP " + response.statusCode() + " from " + response.request().method() + " "
+                        + response.request().uri().getPath());
+            }
+        }
+    }
+
+    /**
+     * Latencies and bytes of one operation, kept per client so that recording takes no lock.
+     */
+    private static class Stats {
+
+        private long[] latencies = new long[1024];
+        private long count;
+        private long errors;
+        private long bytes;
+
+        void record(long nanos, long transferred) {
+            if (transferred < 0) {
+                errors++;
+            } else {
+                bytes += transferred;
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, latencies.length * 2);
+            }
+            latencies[(int) count++] = nanos;
+        }
+
+        void add(Stats other) {
+            for (int i = 0; i < other.count; i++) {
+                record(other.latencies[i], 0);
+            }
+            errors += other.errors;
+            bytes += other.bytes;
+        }
+
+        Result result(Duration duration) {
+            long[] sorted = Arrays.copyOf(latencies, (int) count);
+            Arrays.sort(sorted);
+            double seconds = duration.toNanos() / 1e9;
+            return new Result(count, errors, percentileMs(sorted, 0.50), percentileMs(sorted, 0.99), count / seconds,
+                    bytes > 0 ? bytes / seconds / (1024 * 1024) : null);
+        }
+
+        private static double percentileMs(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+    }
+
+    private record Result(long count, long errors, double p50Ms, double p99Ms, double opsPerSecond, Double mbPerSecond) {
+    }
+
+    private static String setting(String key) {
+        return System.getProperty(key, SETTINGS.getProperty(key, ""));
+    }
+
+    private static Properties loadSettings() {
+        Properties properties = new Properties();
+        try (InputStream in = FileManagerLoadIT.class.getResourceAsStream("/load-test.properties")) {
+            properties.load(in);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return properties;
+    }
+
+    private static Path createStorage() {
+        try {
+            return Files.createTempDirectory("load-test-storage");
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
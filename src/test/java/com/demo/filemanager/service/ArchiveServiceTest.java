@@ -0,0 +1,151 @@
+package com.demo.filemanager.service;
+
+import com.demo.filemanager.dto.FileMetaDataDTO;
+import com.demo.filemanager.dto.FilePageDTO;
+import com.demo.filemanager.enums.ContentEncoding;
+import com.demo.filemanager.enums.FileSearchMode;
+import com.demo.filemanager.model.FileMetaData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class ArchiveServiceTest {
+
+    @InjectMocks
+    private ArchiveService archiveService;
+
+    @Mock
+    private FileService fileService;
+
+    @Mock
+    private BlobService blobService;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    public void testWriteZipCopiesCompressedFormatsAndDeflatesOthers() throws Exception {
+        String text = "line of text\n".repeat(1000);
+        FileMetaData pdf = file(1L, "report.pdf", "aaaa", text, null);
+        FileMetaData png = file(2L, "photo.png", "bbbb", "not really a png", null);
+        FileMetaData sameName = file(3L, "REPORT.pdf", "cccc", "second report", ContentEncoding.GZIP);
+        FileMetaData legacy = file(4L, "../../old.pdf", null, "legacy", null);
+        Path legacyFile = Files.writeString(directory.resolve("old.pdf"), "legacy");
+        legacy.setFilePath(legacyFile.toString());
+        when(fileService.getFilesByIds(List.of(1L, 2L, 3L, 4L, 5L))).thenReturn(List.of(pdf, png, sameName, legacy));
+
+        Path archive = directory.resolve("files.zip");
+        try (var out = Files.newOutputStream(archive)) {
+            archiveService.writeZip(List.of(5L, 4L, 3L, 2L, 1L, 2L), out);
+        }
+
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            assertEquals(4, zip.size());
+            ZipEntry report = zip.getEntry("report.pdf");
+            assertEquals(ZipEntry.DEFLATED, report.getMethod());
+            assertTrue(report.getCompressedSize() < text.length() / 10);
+            assertEquals(text, read(zip, report));
+            // not compressed again
+            ZipEntry photo = zip.getEntry("photo.png");
+            assertTrue(photo.getCompressedSize() >= photo.getSize());
+            assertEquals("not really a png", read(zip, zip.getEntry("photo.png")));
+            assertEquals("second report", read(zip, zip.getEntry("REPORT (2).pdf")));
+            assertEquals("legacy", read(zip, zip.getEntry(".._.._old.pdf")));
+            assertEquals(Instant.parse("2024-05-06T07:08:10Z"), report.getLastModifiedTime().toInstant());
+        }
+        // content stored compressed is read decompressed
+        verify(blobService).content("cccc", ContentEncoding.GZIP, "second report".length());
+    }
+
+    @Test
+    public void testWriteZipReadsMetaDataInChunks() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= 1200; id++) {
+            ids.add(id);
+        }
+        when(fileService.getFilesByIds(any())).thenReturn(List.of());
+
+        archiveService.writeZip(ids, new ByteArrayOutputStream());
+
+        verify(fileService).getFilesByIds(ids.subList(0, 500));
+        verify(fileService).getFilesByIds(ids.subList(500, 1000));
+        verify(fileService).getFilesByIds(ids.subList(1000, 1200));
+    }
+
+    @Test
+    public void testSearchIdsStopsPastTheLimit() {
+        when(fileService.searchFiles(FileSearchMode.PREFIX, "rep", null, null, 3))
+                .thenReturn(new FilePageDTO(List.of(dto(1L), dto(2L)), "next"));
+        when(fileService.searchFiles(FileSearchMode.PREFIX, "rep", null, "next", 1))
+                .thenReturn(new FilePageDTO(List.of(dto(3L)), "more"));
+
+        assertEquals(List.of(1L, 2L, 3L), archiveService.searchIds(FileSearchMode.PREFIX, "rep", null, 2));
+        verify(fileService, never()).searchFiles(any(), any(), any(), eq("more"), anyInt());
+    }
+
+    @Test
+    public void testEntryNameIsUniqueAndWithoutDirectories() {
+        Set<String> taken = new HashSet<>();
+        assertEquals("a.txt", ArchiveService.entryName(named("a.txt"), taken));
+        assertEquals("A (2).txt", ArchiveService.entryName(named("A.txt"), taken));
+        assertEquals("a (3).txt", ArchiveService.entryName(named("a.txt"), taken));
+        assertEquals("etc_passwd", ArchiveService.entryName(named("etc/passwd"), taken));
+        assertEquals("file-7", ArchiveService.entryName(named(".."), taken));
+    }
+
+    private FileMetaData file(Long id, String name, String hash, String content, ContentEncoding encoding) {
+        FileMetaData file = new FileMetaData();
+        file.setId(id);
+        file.setFileName(name);
+        file.setContentHash(hash);
+        file.setContentEncoding(encoding);
+        file.setFileSize(content.length());
+        file.setLastModified(Instant.parse("2024-05-06T07:08:10Z"));
+        if (hash != null) {
+            when(blobService.content(hash, encoding, content.length()))
+                    .thenReturn(new ByteArrayResource(content.getBytes(StandardCharsets.UTF_8)));
+        }
+        return file;
+    }
+
+    private static FileMetaData named(String name) {
+        FileMetaData file = new FileMetaData();
+        file.setId(7L);
+        file.setFileName(name);
+        return file;
+    }
+
+    private static FileMetaDataDTO dto(Long id) {
+        return new FileMetaDataDTO(id, "report-" + id, null, null, 1, null);
+    }
+
+    private static String read(ZipFile zip, ZipEntry entry) throws Exception {
+        return new String(zip.getInputStream(entry).readAllBytes(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,70 @@
+package com.demo.filemanager.service;
+
+import com.demo.filemanager.dao.request.SignUpRequest;
+import com.demo.filemanager.dao.request.SigninRequest;
+import com.demo.filemanager.enums.Role;
+import com.demo.filemanager.model.User;
+import com.demo.filemanager.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class AuthenticationServiceImplTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private PasswordEncoder passwordEncoder;
+
+    @Mock
+    private JwtService jwtService;
+
+    @Mock
+    private AuthenticationManager authenticationManager;
+
+    @Mock
+    private UserService userService;
+
+    @InjectMocks
+    private AuthenticationServiceImpl authenticationService;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    public void testSigninUsesAuthenticatedPrincipal() {
+        User user = User.builder().email("jane@example.com").role(Role.USER).build();
+        when(authenticationManager.authenticate(any()))
+                .thenReturn(new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+        when(jwtService.generateToken(user)).thenReturn("token");
+
+        String token = authenticationService.signin(new SigninRequest("jane@example.com", "secret")).getToken();
+
+        assertEquals("token", token);
+        verify(userRepository, never()).findByEmail(anyString());
+    }
+
+    @Test
+    public void testSignupPropagatesSaturatedHashing() {
+        when(passwordEncoder.encode("secret")).thenThrow(new RejectedExecutionException());
+
+        assertThrows(RejectedExecutionException.class, () -> authenticationService.signup(
+                new SignUpRequest("Jane", "Doe", "jane@example.com", "secret")));
+        verify(userRepository, never()).save(any());
+    }
+}
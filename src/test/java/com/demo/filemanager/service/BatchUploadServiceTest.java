@@ -0,0 +1,151 @@
+package com.demo.filemanager.service;
+
+import com.demo.filemanager.model.ContentBlob;
+import com.demo.filemanager.model.FileMetaData;
+import com.demo.filemanager.repository.ContentBlobRepository;
+import com.demo.filemanager.repository.FileRepository;
+import com.demo.filemanager.repository.PurgeTaskRepository;
+import com.demo.filemanager.storage.LocalStorageBackend;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+public class BatchUploadServiceTest {
+
+    @Mock
+    private FileService fileService;
+
+    @Mock
+    private BlobService blobService;
+
+    private BatchUploadService batchUploadService;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        MockitoAnnotations.openMocks(this);
+        batchUploadService = new BatchUploadService(fileService, blobService);
+        batchUploadService.init();
+
+        when(blobService.stage(any(InputStream.class))).thenAnswer(invocation -> {
+            InputStream content = invocation.getArgument(0);
+            return new BlobService.StagedBlob(null, new String(content.readAllBytes(), StandardCharsets.UTF_8), 1);
+        });
+    }
+
+    @AfterEach
+    public void tearDown() {
+        batchUploadService.shutdown();
+    }
+
+    @Test
+    public void testFileFailingToStageDoesNotFailOthers() throws Exception {
+        InputStreamSource unreadable = () -> {
+            throw new IOException("connection reset");
+        };
+        when(fileService.saveFiles(anyList(), anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        List<BatchUploadService.Result> results = batchUploadService.upload(
+                List.of(file("a.pdf"), file("b.pdf"), file("c.pdf")), List.of(content("a"), unreadable, content("c")));
+
+        assertTrue(results.get(0).isSuccess());
+        assertEquals("Error saving file", results.get(1).getError());
+        assertEquals("c.pdf", results.get(2).getFile().getFileName());
+        verify(fileService, times(1)).saveFiles(anyList(), anyList());
+        verify(blobService, times(2)).discard(any());
+    }
+
+    @Test
+    public void testFailedBatchIsSavedOneByOne() throws Exception {
+        FileMetaData broken = file("b.pdf");
+        when(fileService.saveFiles(anyList(), anyList())).thenThrow(new IllegalStateException("batch failed"));
+        when(fileService.saveFile(any(FileMetaData.class), any(BlobService.StagedBlob.class))).thenAnswer(invocation -> {
+            if (invocation.getArgument(0) == broken) {
+                throw new IllegalStateException("row failed");
+            }
+            return invocation.getArgument(0);
+        });
+
+        List<BatchUploadService.Result> results = batchUploadService.upload(
+                List.of(file("a.pdf"), broken, file("c.pdf")), List.of(content("a"), content("b"), content("c")));
+
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertTrue(results.get(2).isSuccess());
+        verify(fileService, times(3)).saveFile(any(FileMetaData.class), any(BlobService.StagedBlob.class));
+    }
+
+    @Test
+    public void testFailedBatchIsSavedOneByOneWithItsStagedContent(@TempDir Path storage) throws Exception {
+        // the real blob store: the rolled back batch has already stored the content of its files
+        ContentBlobRepository contentBlobRepository = mock(ContentBlobRepository.class);
+        when(contentBlobRepository.findByHashForUpdate(any())).thenReturn(Optional.empty());
+        when(contentBlobRepository.saveAndFlush(any(ContentBlob.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        BlobService realBlobService = new BlobService(contentBlobRepository, new LocalStorageBackend(storage.resolve("blobs")),
+                mock(PurgeTaskRepository.class));
+        ReflectionTestUtils.setField(realBlobService, "fileStorageLocation", storage.toString());
+        FileRepository fileRepository = mock(FileRepository.class);
+        when(fileRepository.saveAll(anyList())).thenThrow(new IllegalStateException("batch failed"));
+        AtomicLong ids = new AtomicLong();
+        when(fileRepository.save(any(FileMetaData.class))).thenAnswer(invocation -> {
+            FileMetaData file = invocation.getArgument(0);
+            file.setId(ids.incrementAndGet());
+            return file;
+        });
+        FileService realFileService = new FileService(fileRepository, realBlobService, mock(ThumbnailService.class),
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), Caffeine.newBuilder().buildAsync());
+        BatchUploadService service = new BatchUploadService(realFileService, realBlobService);
+        service.init();
+        try {
+            List<BatchUploadService.Result> results = service.upload(
+                    List.of(file("a.pdf"), file("b.pdf")), List.of(content("first"), content("second")));
+
+            assertTrue(results.get(0).isSuccess(), results.get(0).getError());
+            assertTrue(results.get(1).isSuccess(), results.get(1).getError());
+            for (BatchUploadService.Result result : results) {
+                FileMetaData saved = result.getFile();
+                try (InputStream in = realBlobService.content(saved.getContentHash(), null, saved.getFileSize()).getInputStream()) {
+                    assertEquals(saved.getFileName().startsWith("a") ? "first" : "second",
+                            new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                }
+            }
+            try (var staging = Files.list(storage.resolve(".tmp"))) {
+                assertEquals(0, staging.count());
+            }
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    private static FileMetaData file(String fileName) {
+        FileMetaData file = new FileMetaData();
+        file.setFileName(fileName);
+        return file;
+    }
+
+    private static InputStreamSource content(String content) {
+        return new ByteArrayResource(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,255 @@
+package com.demo.filemanager.service;
+
+import com.demo.filemanager.enums.ContentEncoding;
+import com.demo.filemanager.enums.PurgeTarget;
+import com.demo.filemanager.model.ContentBlob;
+import com.demo.filemanager.repository.ContentBlobRepository;
+import com.demo.filemanager.repository.PurgeTaskRepository;
+import com.demo.filemanager.storage.LocalStorageBackend;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class BlobServiceTest {
+
+    // sha256("hello world")
+    private static final String HELLO_HASH = "b94d27b9934d3e08a52e52d7da7dabfac484efe37a5380ee9088f7ace2efcde9";
+
+    @Mock
+    private ContentBlobRepository contentBlobRepository;
+
+    @Mock
+    private PurgeTaskRepository purgeTaskRepository;
+
+    private BlobService blobService;
+
+    @TempDir
+    Path storage;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        blobService = new BlobService(contentBlobRepository, new LocalStorageBackend(storage.resolve("blobs")),
+                purgeTaskRepository);
+        ReflectionTestUtils.setField(blobService, "fileStorageLocation", storage.toString());
+        when(contentBlobRepository.saveAndFlush(any(ContentBlob.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(contentBlobRepository.save(any(ContentBlob.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    public void testStageHashesWhileWriting() throws Exception {
+        BlobService.StagedBlob staged = stage("hello world");
+
+        assertEquals(HELLO_HASH, staged.getHash());
+        assertEquals(11, staged.getSize());
+        assertEquals("hello world", Files.readString(staged.getStagingFile()));
+        assertEquals(HELLO_HASH, blobService.stage(staged.getStagingFile()).getHash());
+    }
+
+    @Test
+    public void testStageCopyLeavesOriginalInPlace() throws Exception {
+        Path original = Files.writeString(storage.resolve("legacy.pdf"), "hello world");
+
+        BlobService.StagedBlob staged = blobService.stageCopy(original);
+
+        assertEquals(HELLO_HASH, staged.getHash());
+        assertNotEquals(original, staged.getStagingFile());
+        blobService.discard(staged);
+        assertEquals("hello world", Files.readString(original));
+    }
+
+    @Test
+    public void testRetainNewContentAddsItToTheStore() throws Exception {
+        when(contentBlobRepository.findByHashForUpdate(HELLO_HASH)).thenReturn(Optional.empty());
+        BlobService.StagedBlob staged = stage("hello world");
+
+        ContentBlob blob = blobService.retain(staged, "application/pdf");
+
+        assertEquals(1, blob.getRefCount());
+        assertEquals(11, blob.getSize());
+        Path blobPath = storage.resolve("blobs").resolve("b9").resolve("4d").resolve(HELLO_HASH);
+        assertEquals("hello world", Files.readString(blobPath));
+        // kept for a retry until the caller discards it
+        assertEquals("hello world", Files.readString(staged.getStagingFile()));
+        blobService.discard(staged);
+        assertEquals("hello world", Files.readString(blobPath));
+        assertEquals(blobPath.toAbsolutePath().normalize(), blobService.resource(HELLO_HASH).getLocalPath().get());
+    }
+
+    @Test
+    public void testRetainKnownContentDropsTheDuplicate() throws Exception {
+        when(contentBlobRepository.findByHashForUpdate(HELLO_HASH)).thenReturn(Optional.empty());
+        blobService.retain(stage("hello world"), "application/pdf");
+        ContentBlob stored = new ContentBlob();
+        stored.setHash(HELLO_HASH);
+        stored.setSize(11);
+        stored.setRefCount(1);
+        when(contentBlobRepository.findByHashForUpdate(HELLO_HASH)).thenReturn(Optional.of(stored));
+
+        BlobService.StagedBlob duplicate = stage("hello world");
+        ContentBlob blob = blobService.retain(duplicate, "application/pdf");
+
+        assertEquals(2, blob.getRefCount());
+        assertTrue(Files.exists(duplicate.getStagingFile()));
+        assertTrue(blobService.resource(HELLO_HASH).exists());
+    }
+
+    @Test
+    public void testRetainExistingRequiresMatchingSize() throws Exception {
+        when(contentBlobRepository.findByHashForUpdate(HELLO_HASH)).thenReturn(Optional.empty());
+        ContentBlob stored = blobService.retain(stage("hello world"), "application/pdf");
+        when(contentBlobRepository.findByHashForUpdate(HELLO_HASH)).thenReturn(Optional.of(stored));
+
+        assertTrue(blobService.retainExisting(HELLO_HASH, 12).isEmpty());
+        assertEquals(2, blobService.retainExisting(HELLO_HASH, 11).get().getRefCount());
+    }
+
+    @Test
+    public void testReleaseQueuesBlobForPurgeOnlyAtZeroReferences() throws Exception {
+        when(contentBlobRepository.findByHashForUpdate(HELLO_HASH)).thenReturn(Optional.empty());
+        ContentBlob stored = blobService.retain(stage("hello world"), "application/pdf");
+        stored.setRefCount(2);
+        when(contentBlobRepository.findByHashForUpdate(HELLO_HASH)).thenReturn(Optional.of(stored));
+
+        blobService.release(HELLO_HASH);
+
+        assertEquals(1, stored.getRefCount());
+        verify(purgeTaskRepository, never()).enqueue(any(), any());
+
+        blobService.release(HELLO_HASH);
+
+        assertEquals(0, stored.getRefCount());
+        verify(purgeTaskRepository).enqueue(PurgeTarget.BLOB, HELLO_HASH);
+        verify(contentBlobRepository, never()).delete(any());
+        assertTrue(blobService.resource(HELLO_HASH).exists());
+
+        assertTrue(blobService.purge(HELLO_HASH));
+
+        verify(contentBlobRepository).delete(stored);
+        assertFalse(blobService.resource(HELLO_HASH).exists());
+    }
+
+    @Test
+    public void testPurgeDeletesStoredContentOnlyOnceCommitted() throws Exception {
+        when(contentBlobRepository.findByHashForUpdate(HELLO_HASH)).thenReturn(Optional.empty());
+        ContentBlob stored = blobService.retain(stage("hello world"), "application/pdf");
+        stored.setRefCount(0);
+        when(contentBlobRepository.findByHashForUpdate(HELLO_HASH)).thenReturn(Optional.of(stored));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            assertTrue(blobService.purge(HELLO_HASH));
+            assertTrue(blobService.resource(HELLO_HASH).exists(), "a rolled back purge must find the content");
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertFalse(blobService.resource(HELLO_HASH).exists());
+    }
+
+    @Test
+    public void testPurgeKeepsContentUploadedAgainBeforeItCommitted() throws Exception {
+        when(contentBlobRepository.findByHashForUpdate(HELLO_HASH)).thenReturn(Optional.empty());
+        ContentBlob stored = blobService.retain(stage("hello world"), "application/pdf");
+        stored.setRefCount(0);
+        when(contentBlobRepository.findByHashForUpdate(HELLO_HASH)).thenReturn(Optional.of(stored));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            assertTrue(blobService.purge(HELLO_HASH));
+            when(contentBlobRepository.existsById(HELLO_HASH)).thenReturn(true);
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertTrue(blobService.resource(HELLO_HASH).exists());
+    }
+
+    @Test
+    public void testPurgeKeepsRevivedBlob() throws Exception {
+        when(contentBlobRepository.findByHashForUpdate(HELLO_HASH)).thenReturn(Optional.empty());
+        ContentBlob stored = blobService.retain(stage("hello world"), "application/pdf");
+        when(contentBlobRepository.findByHashForUpdate(HELLO_HASH)).thenReturn(Optional.of(stored));
+        blobService.release(HELLO_HASH);
+
+        // uploaded again before the purger ran
+        blobService.retain(stage("hello world"), "application/pdf");
+
+        assertFalse(blobService.purge(HELLO_HASH));
+        verify(contentBlobRepository, never()).delete(any());
+        assertTrue(blobService.resource(HELLO_HASH).exists());
+    }
+
+    @Test
+    public void testRetainCompressesContentThatShrinks() throws Exception {
+        ReflectionTestUtils.setField(blobService, "compressionEnabled", true);
+        String text = "2024-01-02 03:04:05 INFO request served in 12 ms\n".repeat(4000);
+        BlobService.StagedBlob staged = stage(text);
+        when(contentBlobRepository.findByHashForUpdate(staged.getHash())).thenReturn(Optional.empty());
+
+        ContentBlob blob = blobService.retain(staged, "text/plain; charset=utf-8");
+
+        assertEquals(ContentEncoding.ZSTD, blob.getEncoding());
+        assertEquals(text.length(), blob.getSize());
+        assertTrue(blobService.resource(staged.getHash()).contentLength() < text.length() / 10);
+        assertEquals(text.length(), Files.size(staged.getStagingFile()));
+        try (InputStream in = blobService.content(staged.getHash(), blob.getEncoding(), blob.getSize()).getInputStream()) {
+            assertEquals(text, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testRetainStoresIncompressibleContentAsUploaded() throws Exception {
+        ReflectionTestUtils.setField(blobService, "compressionEnabled", true);
+        ReflectionTestUtils.setField(blobService, "compressionEncoding", "gzip");
+        byte[] random = new byte[200 * 1024];
+        new Random(42).nextBytes(random);
+        BlobService.StagedBlob staged = blobService.stage(new ByteArrayInputStream(random));
+        when(contentBlobRepository.findByHashForUpdate(staged.getHash())).thenReturn(Optional.empty());
+
+        ContentBlob blob = blobService.retain(staged, "application/pdf");
+
+        assertNull(blob.getEncoding());
+        assertEquals(random.length, blobService.resource(staged.getHash()).contentLength());
+    }
+
+    @Test
+    public void testRetainOnlyCompressesListedTypes() throws Exception {
+        ReflectionTestUtils.setField(blobService, "compressionEnabled", true);
+        BlobService.StagedBlob staged = stage("a".repeat(10000));
+        when(contentBlobRepository.findByHashForUpdate(staged.getHash())).thenReturn(Optional.empty());
+
+        assertNull(blobService.retain(staged, "image/png").getEncoding());
+    }
+
+    @Test
+    public void testLegacyFileMustBeOutsideBlobStore() {
+        assertEquals(storage.resolve("report.pdf").toAbsolutePath().normalize(),
+                blobService.legacyFile(storage.resolve("report.pdf").toString()));
+        assertNull(blobService.legacyFile(storage.resolve("blobs/b9/4d/" + HELLO_HASH).toString()));
+        assertNull(blobService.legacyFile(storage.resolve("../elsewhere.pdf").toString()));
+    }
+
+    private BlobService.StagedBlob stage(String content) throws Exception {
+        return blobService.stage(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+}
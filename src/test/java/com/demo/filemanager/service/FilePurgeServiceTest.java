@@ -0,0 +1,107 @@
+package com.demo.filemanager.service;
+
+import com.demo.filemanager.enums.PurgeTarget;
+import com.demo.filemanager.model.PurgeTask;
+import com.demo.filemanager.repository.FileRepository;
+import com.demo.filemanager.repository.PurgeTaskRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class FilePurgeServiceTest {
+
+    @Mock
+    private PurgeTaskRepository purgeTaskRepository;
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private BlobService blobService;
+
+    @TempDir
+    Path storage;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private FilePurgeService filePurgeService;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        filePurgeService = new FilePurgeService(purgeTaskRepository, fileRepository, blobService, meterRegistry);
+        filePurgeService.init();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        filePurgeService.shutdown();
+    }
+
+    @Test
+    public void testPurgesDueTasksAndReportsBacklog() throws Exception {
+        Path legacy = Files.writeString(storage.resolve("report.pdf"), "content");
+        PurgeTask blob = task(1L, PurgeTarget.BLOB, "abcd");
+        PurgeTask legacyFile = task(2L, PurgeTarget.LEGACY_FILE, legacy.toString());
+        when(purgeTaskRepository.findDue(any(), any())).thenReturn(List.of(blob, legacyFile));
+        when(blobService.legacyFile(legacy.toString())).thenReturn(legacy);
+        when(purgeTaskRepository.count()).thenReturn(7L);
+
+        filePurgeService.purgeBatch();
+
+        verify(blobService).purge("abcd");
+        assertFalse(Files.exists(legacy));
+        verify(purgeTaskRepository).deleteById(1L);
+        verify(purgeTaskRepository).deleteById(2L);
+        assertEquals(7, meterRegistry.get("file.purge.backlog").gauge().value());
+        assertEquals(2, meterRegistry.get("file.purge.purged").counter().count());
+    }
+
+    @Test
+    public void testKeepsLegacyFileStillReferenced() throws Exception {
+        Path legacy = Files.writeString(storage.resolve("report.pdf"), "content");
+        when(fileRepository.existsByFilePath(legacy.toString())).thenReturn(true);
+
+        filePurgeService.purge(task(1L, PurgeTarget.LEGACY_FILE, legacy.toString()));
+
+        assertTrue(Files.exists(legacy));
+        verify(purgeTaskRepository).deleteById(1L);
+    }
+
+    @Test
+    public void testFailedTaskIsRetriedLater() {
+        PurgeTask blob = task(1L, PurgeTarget.BLOB, "abcd");
+        when(blobService.purge("abcd")).thenThrow(new IllegalStateException("storage unavailable"));
+        Instant before = Instant.now();
+
+        filePurgeService.purge(blob);
+
+        assertEquals(1, blob.getAttempts());
+        assertTrue(blob.getNotBefore().isAfter(before.plusSeconds(59)));
+        verify(purgeTaskRepository).save(blob);
+        verify(purgeTaskRepository, never()).deleteById(any());
+        assertEquals(1, meterRegistry.get("file.purge.failed").counter().count());
+    }
+
+    private static PurgeTask task(Long id, PurgeTarget target, String location) {
+        PurgeTask task = new PurgeTask();
+        task.setId(id);
+        task.setTarget(target);
+        task.setLocation(location);
+        task.setNotBefore(Instant.now());
+        return task;
+    }
+}
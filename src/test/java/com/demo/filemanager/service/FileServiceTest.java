@@ -1,17 +1,57 @@
 package com.demo.filemanager.service;
 
+import com.demo.filemanager.dto.FileMetaDataDTO;
+import com.demo.filemanager.dto.FilePageDTO;
+import com.demo.filemanager.enums.FileSearchMode;
+import com.demo.filemanager.enums.FileSortOrder;
+import com.demo.filemanager.model.ContentBlob;
 import com.demo.filemanager.model.FileMetaData;
+import com.demo.filemanager.repository.FileDerivativeRepository;
 import com.demo.filemanager.repository.FileRepository;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 public class FileServiceTest {
@@ -19,12 +59,23 @@ public class FileServiceTest {
     @Mock
     private FileRepository fileRepository;
 
+    @Mock
+    private BlobService blobService;
+
+    @Mock
+    private ThumbnailService thumbnailService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @InjectMocks
     private FileService fileService;
 
     @BeforeEach
     public void setup() {
         MockitoAnnotations.openMocks(this);
+        fileService = new FileService(fileRepository, blobService, thumbnailService, new TransactionTemplate(transactionManager),
+                Caffeine.newBuilder().maximumSize(100).recordStats().buildAsync());
     }
 
     @Test
@@ -67,9 +118,479 @@ public class FileServiceTest {
 
     @Test
     public void testDeleteFile() {
+        FileMetaData fileMetaData = new FileMetaData();
+        fileMetaData.setId(1L);
+        when(fileRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(fileMetaData));
+
         fileService.deleteFile(1L);
 
         verify(fileRepository, times(1)).deleteById(1L);
     }
-}
 
+    @Test
+    public void testDeleteMissingFileDoesNothing() {
+        when(fileRepository.findByIdForUpdate(1L)).thenReturn(Optional.empty());
+
+        fileService.deleteFile(1L);
+
+        verify(fileRepository, never()).deleteById(any());
+        verify(blobService, never()).release(any(), anyLong());
+    }
+
+    @Test
+    public void testDeleteFileReleasesContentOfTheLockedRowInDigestOrder() {
+        FileMetaData fileMetaData = new FileMetaData();
+        fileMetaData.setId(1L);
+        fileMetaData.setContentHash("abcd");
+        // a stale copy, as read before a concurrent replacement committed
+        FileMetaData stale = new FileMetaData();
+        stale.setId(1L);
+        stale.setContentHash("0000");
+        when(fileRepository.findById(1L)).thenReturn(Optional.of(stale));
+        when(fileRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(fileMetaData));
+        when(thumbnailService.removeDerivatives(List.of(1L))).thenReturn(List.of("ffff"));
+
+        fileService.deleteFile(1L);
+
+        verify(fileRepository, times(1)).deleteById(1L);
+        InOrder releases = inOrder(blobService);
+        releases.verify(blobService).release("abcd", 1L);
+        releases.verify(blobService).release("ffff", 1L);
+        verify(blobService, never()).release(eq("0000"), anyLong());
+    }
+
+    @Test
+    public void testDeleteFileQueuesLegacyFile() {
+        FileMetaData fileMetaData = new FileMetaData();
+        fileMetaData.setId(1L);
+        fileMetaData.setFilePath("uploads/report.pdf");
+        when(fileRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(fileMetaData));
+
+        fileService.deleteFile(1L);
+
+        verify(blobService, times(1)).releaseLegacyFile("uploads/report.pdf");
+        verify(blobService, never()).release(any(), anyLong());
+    }
+
+    @Test
+    public void testDeleteFilesReleasesEachDigestOnce() {
+        List<FileMetaData> rows = new ArrayList<>();
+        for (long id = 1; id <= 4; id++) {
+            FileMetaData row = new FileMetaData();
+            row.setId(id);
+            row.setContentHash(id == 4 ? null : id == 1 ? "ffff" : "0000");
+            row.setFilePath(id == 4 ? "uploads/legacy.pdf" : "uploads/blobs/" + row.getContentHash());
+            rows.add(row);
+        }
+        when(fileRepository.findAllByIdForUpdate(List.of(1L, 2L, 3L, 4L, 5L))).thenReturn(rows);
+        // the thumbnail of file 1 happens to be stored as "0000" too
+        when(thumbnailService.removeDerivatives(List.of(1L, 2L, 3L, 4L))).thenReturn(List.of("0000", "eeee"));
+
+        List<Long> deleted = fileService.deleteFiles(List.of(1L, 2L, 3L, 4L, 5L));
+
+        assertEquals(List.of(1L, 2L, 3L, 4L), deleted);
+        verify(fileRepository, times(1)).deleteAllByIdInBatch(List.of(1L, 2L, 3L, 4L));
+        verify(blobService, times(1)).release("0000", 3L);
+        verify(blobService, times(1)).release("eeee", 1L);
+        verify(blobService, times(1)).release("ffff", 1L);
+        verify(blobService, times(1)).releaseLegacyFile("uploads/legacy.pdf");
+    }
+
+    @Test
+    public void testSaveFileWithContentAttachesBlob() {
+        FileMetaData fileMetaData = new FileMetaData();
+        BlobService.StagedBlob content = new BlobService.StagedBlob(null, "abcd", 42);
+        ContentBlob blob = new ContentBlob();
+        blob.setHash("abcd");
+        blob.setSize(42);
+
+        when(blobService.retain(eq(content), any())).thenReturn(blob);
+        when(blobService.filePath("abcd")).thenReturn("uploads/blobs/ab/cd/abcd");
+        when(fileRepository.save(fileMetaData)).thenReturn(fileMetaData);
+
+        FileMetaData result = fileService.saveFile(fileMetaData, content);
+
+        assertEquals("abcd", result.getContentHash());
+        assertEquals(42, result.getFileSize());
+        assertEquals("uploads/blobs/ab/cd/abcd", result.getFilePath());
+        verify(thumbnailService).generateAfterCommit(result);
+    }
+
+    @Test
+    public void testSaveFileRetriesWhenBlobCreationRaces() {
+        FileMetaData fileMetaData = new FileMetaData();
+        BlobService.StagedBlob content = new BlobService.StagedBlob(null, "abcd", 42);
+        ContentBlob blob = new ContentBlob();
+        blob.setHash("abcd");
+        blob.setSize(42);
+
+        when(blobService.retain(eq(content), any()))
+                .thenThrow(new DataIntegrityViolationException("duplicate key"))
+                .thenReturn(blob);
+        when(fileRepository.save(fileMetaData)).thenReturn(fileMetaData);
+
+        assertEquals("abcd", fileService.saveFile(fileMetaData, content).getContentHash());
+        verify(blobService, times(2)).retain(eq(content), any());
+    }
+
+    @Test
+    public void testSaveFilesRetainsInHashOrderAndSavesTogether() {
+        FileMetaData first = new FileMetaData();
+        FileMetaData second = new FileMetaData();
+        BlobService.StagedBlob firstContent = new BlobService.StagedBlob(null, "ffff", 1);
+        BlobService.StagedBlob secondContent = new BlobService.StagedBlob(null, "0000", 2);
+        List<String> retained = new ArrayList<>();
+
+        when(blobService.retain(any(), any())).thenAnswer(invocation -> {
+            BlobService.StagedBlob content = invocation.getArgument(0);
+            retained.add(content.getHash());
+            ContentBlob blob = new ContentBlob();
+            blob.setHash(content.getHash());
+            blob.setSize(content.getSize());
+            return blob;
+        });
+        when(fileRepository.saveAll(List.of(first, second))).thenReturn(List.of(first, second));
+
+        List<FileMetaData> saved = fileService.saveFiles(List.of(first, second), List.of(firstContent, secondContent));
+
+        assertEquals(List.of("0000", "ffff"), retained);
+        assertEquals("ffff", saved.get(0).getContentHash());
+        assertEquals(2, saved.get(1).getFileSize());
+        verify(fileRepository, never()).save(any());
+    }
+
+    @Test
+    public void testReplaceFileContentReleasesPreviousContent() {
+        FileMetaData fileMetaData = new FileMetaData();
+        fileMetaData.setId(1L);
+        fileMetaData.setContentHash("old");
+        BlobService.StagedBlob content = new BlobService.StagedBlob(null, "new", 3);
+        ContentBlob blob = new ContentBlob();
+        blob.setHash("new");
+        blob.setSize(3);
+
+        when(fileRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(fileMetaData));
+        when(blobService.retain(eq(content), any())).thenReturn(blob);
+        when(fileRepository.save(fileMetaData)).thenReturn(fileMetaData);
+        when(thumbnailService.removeDerivatives(List.of(1L))).thenReturn(List.of("oldThumbnail"));
+
+        fileService.replaceFileContent(fileMetaData, content, current -> true);
+
+        assertEquals("new", fileMetaData.getContentHash());
+        assertNotNull(fileMetaData.getLastModified());
+        verify(blobService, times(1)).release("old");
+        verify(blobService, times(1)).release("oldThumbnail");
+        verify(thumbnailService).generateAfterCommit(fileMetaData);
+    }
+
+    @Test
+    public void testReplaceFileContentChecksPreconditionOnLockedRow() {
+        FileMetaData update = new FileMetaData();
+        update.setId(1L);
+        update.setContentHash("old");
+        FileMetaData current = new FileMetaData();
+        current.setId(1L);
+        current.setContentHash("changed");
+        BlobService.StagedBlob content = new BlobService.StagedBlob(null, "new", 3);
+
+        when(fileRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(current));
+
+        assertThrows(FileService.PreconditionFailedException.class, () -> fileService.replaceFileContent(update, content,
+                row -> "old".equals(row.getContentHash())));
+        verify(blobService, never()).retain(any(), any());
+        verify(fileRepository, never()).save(any());
+    }
+
+    @Test
+    public void testGetFilePageByIdReturnsCursorForNextPage() {
+        when(fileRepository.findPageById(eq(0L), any(Pageable.class)))
+                .thenReturn(List.of(dto(1L, "a.pdf"), dto(2L, "b.pdf"), dto(3L, "c.pdf")));
+
+        FilePageDTO page = fileService.getFilePage(FileSortOrder.ID, null, 2);
+
+        assertEquals(2, page.getItems().size());
+        assertNotNull(page.getNextCursor());
+        verify(fileRepository).findPageById(0L, PageRequest.of(0, 3));
+
+        when(fileRepository.findPageById(eq(2L), any(Pageable.class))).thenReturn(List.of(dto(3L, "c.pdf")));
+
+        FilePageDTO last = fileService.getFilePage(FileSortOrder.ID, page.getNextCursor(), 2);
+
+        assertEquals(1, last.getItems().size());
+        assertNull(last.getNextCursor());
+    }
+
+    @Test
+    public void testSearchFilesEscapesQueryAndPagesById() {
+        when(fileRepository.searchPage(any(), any(), anyLong(), any(Pageable.class)))
+                .thenReturn(List.of(dto(4L, "Q1_100%.pdf"), dto(9L, "q1_100%-final.pdf")));
+
+        FilePageDTO page = fileService.searchFiles(FileSearchMode.SUBSTRING, "Q1_100%", null, null, 1);
+
+        assertEquals(1, page.getItems().size());
+        verify(fileRepository).searchPage("%q1!_100!%%", "%", 0L, PageRequest.of(0, 2));
+
+        fileService.searchFiles(FileSearchMode.PREFIX, "q1", "image/*", page.getNextCursor(), 1);
+
+        verify(fileRepository).searchPage("q1%", "image/%", 4L, PageRequest.of(0, 2));
+
+        fileService.searchFiles(FileSearchMode.PREFIX, "", "Application/PDF", null, 1);
+
+        verify(fileRepository).searchPage("%", "application/pdf", 0L, PageRequest.of(0, 2));
+    }
+
+    @Test
+    public void testGetFilePageByFileNameUsesNameAndIdAsPosition() {
+        when(fileRepository.findFirstPageByFileName(any(Pageable.class)))
+                .thenReturn(List.of(dto(7L, "same.pdf"), dto(3L, "zeta.pdf")));
+
+        FilePageDTO page = fileService.getFilePage(FileSortOrder.FILE_NAME, null, 1);
+        fileService.getFilePage(FileSortOrder.FILE_NAME, page.getNextCursor(), 1);
+
+        verify(fileRepository).findPageByFileName("same.pdf", 7L, PageRequest.of(0, 2));
+    }
+
+    @Test
+    public void testGetFilePageRejectsInvalidCursor() {
+        assertThrows(IllegalArgumentException.class, () -> fileService.getFilePage(FileSortOrder.ID, "%%%", 10));
+        assertThrows(IllegalArgumentException.class, () -> fileService.getFilePage(FileSortOrder.FILE_NAME, "MQ", 10));
+    }
+
+    @Test
+    public void testStreamFilesPassesEveryRow() {
+        when(fileRepository.streamAllBy()).thenReturn(Stream.of(dto(1L, "a.pdf"), dto(2L, "b.pdf")));
+
+        List<FileMetaDataDTO> streamed = new ArrayList<>();
+        fileService.streamFiles(streamed::add);
+
+        assertEquals(2, streamed.size());
+    }
+
+    @Test
+    public void testGetFileByIdIsCached() {
+        FileMetaData fileMetaData = new FileMetaData();
+        fileMetaData.setId(1L);
+        fileMetaData.setFileName("a.pdf");
+
+        when(fileRepository.findById(1L)).thenReturn(Optional.of(fileMetaData));
+
+        fileService.getFileById(1L).get().setFileName("changed-by-caller.pdf");
+        Optional<FileMetaData> result = fileService.getFileById(1L);
+
+        assertEquals("a.pdf", result.get().getFileName());
+        verify(fileRepository, times(1)).findById(1L);
+        assertEquals(1, fileService.getCacheStats().getHitCount());
+        assertEquals(1, fileService.getCacheStats().getMissCount());
+    }
+
+    @Test
+    public void testInvalidationDoesNotWaitForLoadInFlight() throws Exception {
+        FileMetaData fileMetaData = new FileMetaData();
+        fileMetaData.setId(1L);
+        fileMetaData.setFileName("a.pdf");
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        when(fileRepository.findById(1L)).thenAnswer(invocation -> {
+            loading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return Optional.of(fileMetaData);
+        }).thenReturn(Optional.of(fileMetaData));
+        when(fileRepository.save(any(FileMetaData.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try {
+            Future<Optional<FileMetaData>> inFlight = reader.submit(() -> fileService.getFileById(1L));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+            // the load holds no cache lock, so the invalidation completes while it is still running
+            assertTimeoutPreemptively(Duration.ofSeconds(2), () -> fileService.saveFile(fileMetaData));
+            release.countDown();
+
+            assertEquals("a.pdf", inFlight.get(5, TimeUnit.SECONDS).get().getFileName());
+            fileService.getFileById(1L);
+            verify(fileRepository, times(2)).findById(1L);
+        } finally {
+            release.countDown();
+            reader.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSaveFileInvalidatesCachedEntry() {
+        FileMetaData fileMetaData = new FileMetaData();
+        fileMetaData.setId(1L);
+        fileMetaData.setFileName("a.pdf");
+
+        when(fileRepository.findById(1L)).thenReturn(Optional.of(fileMetaData));
+        when(fileRepository.save(any(FileMetaData.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        FileMetaData cached = fileService.getFileById(1L).get();
+        cached.setFileName("b.pdf");
+        fileService.saveFile(cached);
+        fileMetaData.setFileName("b.pdf");
+
+        assertEquals("b.pdf", fileService.getFileById(1L).get().getFileName());
+        verify(fileRepository, times(2)).findById(1L);
+    }
+
+    @Test
+    public void testInvalidationWaitsForTransactionCompletion() {
+        FileMetaData fileMetaData = new FileMetaData();
+        fileMetaData.setId(1L);
+        when(fileRepository.findById(1L)).thenReturn(Optional.of(fileMetaData));
+        when(fileRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(fileMetaData));
+        fileService.getFileById(1L);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            fileService.deleteFile(1L);
+            when(fileRepository.findById(1L)).thenReturn(Optional.empty());
+
+            assertTrue(fileService.getFileById(1L).isPresent(), "still cached until the delete commits");
+
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertFalse(fileService.getFileById(1L).isPresent());
+    }
+
+    /**
+     * Readers hammer the ids while they are deleted. A reader may be in the middle of loading the row as it was
+     * before the delete, but once deleteFile has returned, nobody may see the file again.
+     */
+    @Test
+    public void testReadersNeverSeeDeletedFile() throws Exception {
+        int files = 200;
+        Set<Long> deleted = ConcurrentHashMap.newKeySet();
+        when(fileRepository.findById(any())).thenAnswer(invocation -> {
+            Long id = invocation.getArgument(0);
+            boolean exists = !deleted.contains(id);
+            Thread.onSpinWait();
+            Thread.yield();
+            if (!exists) {
+                return Optional.empty();
+            }
+            FileMetaData row = new FileMetaData();
+            row.setId(id);
+            return Optional.of(row);
+        });
+        when(fileRepository.findByIdForUpdate(any())).thenAnswer(invocation -> {
+            FileMetaData row = new FileMetaData();
+            row.setId(invocation.getArgument(0));
+            return Optional.of(row);
+        });
+        doAnswer(invocation -> deleted.add(invocation.getArgument(0))).when(fileRepository).deleteById(any());
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong current = new AtomicLong(1);
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 4; i++) {
+            readers.submit(() -> {
+                while (running.get()) {
+                    fileService.getFileById(current.get());
+                }
+            });
+        }
+        try {
+            for (long id = 1; id <= files; id++) {
+                current.set(id);
+                for (int i = 0; i < 50; i++) {
+                    fileService.getFileById(id);
+                }
+                fileService.deleteFile(id);
+
+                assertFalse(fileService.getFileById(id).isPresent(), "stale meta data for file " + id);
+            }
+        } finally {
+            running.set(false);
+            readers.shutdown();
+            assertTrue(readers.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * A thumbnail finished while its file is being deleted. The delete has locked the row, so the thumbnail waits
+     * for it, then finds the file gone and records nothing that the delete could no longer remove.
+     */
+    @Test
+    public void testThumbnailSavedDuringDeleteIsNotRecorded() throws Exception {
+        // rows locked until the transaction holding the lock ends; deletes become visible once it commits
+        Map<Long, FileMetaData> rows = new ConcurrentHashMap<>();
+        ReentrantLock rowLock = new ReentrantLock();
+        ThreadLocal<List<Long>> pendingDeletes = ThreadLocal.withInitial(ArrayList::new);
+        when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+        doAnswer(invocation -> {
+            pendingDeletes.get().forEach(rows::remove);
+            pendingDeletes.remove();
+            while (rowLock.isHeldByCurrentThread()) {
+                rowLock.unlock();
+            }
+            return null;
+        }).when(transactionManager).commit(any());
+        when(fileRepository.findById(1L)).thenAnswer(invocation -> Optional.ofNullable(rows.get(1L)));
+        when(fileRepository.findByIdForUpdate(1L)).thenAnswer(invocation -> {
+            rowLock.lock();
+            return Optional.ofNullable(rows.get(1L));
+        });
+        doAnswer(invocation -> pendingDeletes.get().add(invocation.getArgument(0))).when(fileRepository).deleteById(1L);
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(32, 32, BufferedImage.TYPE_INT_RGB), "png", png);
+        FileMetaData file = new FileMetaData();
+        file.setId(1L);
+        file.setFileName("photo.png");
+        file.setContentHash("abcd");
+        file.setFileSize(png.size());
+        rows.put(1L, file);
+        when(blobService.content(eq("abcd"), any(), eq((long) png.size()))).thenReturn(new ByteArrayResource(png.toByteArray()));
+        when(blobService.stage(any(InputStream.class))).thenReturn(new BlobService.StagedBlob(null, "thumb", 1));
+
+        FileDerivativeRepository fileDerivativeRepository = mock(FileDerivativeRepository.class);
+        when(fileDerivativeRepository.findByFileIdIn(any())).thenReturn(List.of());
+        when(fileDerivativeRepository.findByFileIdAndKind(any(), any())).thenReturn(Optional.empty());
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        ThumbnailService thumbnails = new ThumbnailService(fileRepository, fileDerivativeRepository, blobService,
+                transactionTemplate, new SimpleMeterRegistry());
+        thumbnails.init();
+        fileService = new FileService(fileRepository, blobService, thumbnails, transactionTemplate,
+                Caffeine.newBuilder().buildAsync());
+
+        // the delete stops once it has read the derivatives, with the row still there for others
+        CountDownLatch releasing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            releasing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(blobService).release("abcd", 1L);
+
+        ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> delete = threads.submit(() -> transactionTemplate.executeWithoutResult(status -> fileService.deleteFile(1L)));
+            assertTrue(releasing.await(5, TimeUnit.SECONDS));
+            Future<?> thumbnail = threads.submit(() -> thumbnails.generate(1L, "abcd"));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!rowLock.hasQueuedThreads() && !thumbnail.isDone() && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            delete.get(5, TimeUnit.SECONDS);
+            thumbnail.get(5, TimeUnit.SECONDS);
+        } finally {
+            threads.shutdownNow();
+            thumbnails.shutdown();
+        }
+
+        assertTrue(rows.isEmpty());
+        verify(fileDerivativeRepository, never()).save(any());
+        verify(blobService, never()).retain(any(), any());
+    }
+
+    private static FileMetaDataDTO dto(Long id, String fileName) {
+        return new FileMetaDataDTO(id, fileName, "uploads/" + fileName, "application/pdf", 1, null);
+    }
+}
@@ -0,0 +1,252 @@
+package com.demo.filemanager.service;
+
+import com.demo.filemanager.config.ReplicaRoutingDataSource;
+import com.demo.filemanager.model.ContentBlob;
+import com.demo.filemanager.model.FileMetaData;
+import com.demo.filemanager.repository.ContentBlobRepository;
+import com.demo.filemanager.repository.FileRepository;
+import com.demo.filemanager.repository.PurgeTaskRepository;
+import com.demo.filemanager.storage.LocalStorageBackend;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+public class GroupCommitServiceTest {
+
+    @Mock
+    private FileService fileService;
+
+    @Mock
+    private ReplicaRoutingDataSource replicaRouting;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private GroupCommitService groupCommitService;
+
+    private final ExecutorService uploads = Executors.newCachedThreadPool();
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        groupCommitService = newService(fileService);
+        ReflectionTestUtils.setField(groupCommitService, "enabled", true);
+        // a group is committed once full, long before the window closes
+        ReflectionTestUtils.setField(groupCommitService, "maxWait", Duration.ofSeconds(10));
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        uploads.shutdownNow();
+        groupCommitService.shutdown();
+    }
+
+    @Test
+    public void testConcurrentUploadsShareOneCommit() throws Exception {
+        ReflectionTestUtils.setField(groupCommitService, "maxSize", 5);
+        groupCommitService.init();
+        when(fileService.saveFiles(anyList(), anyList())).thenAnswer(invocation -> {
+            List<FileMetaData> files = invocation.getArgument(0);
+            for (int i = 0; i < files.size(); i++) {
+                files.get(i).setId(100L + i);
+            }
+            return files;
+        });
+
+        List<Future<FileMetaData>> saved = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            FileMetaData file = file("file-" + i + ".pdf");
+            saved.add(uploads.submit(() -> groupCommitService.save(file, staged())));
+        }
+
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            FileMetaData file = saved.get(i).get(5, TimeUnit.SECONDS);
+            assertEquals("file-" + i + ".pdf", file.getFileName());
+            ids.add(file.getId());
+        }
+        assertEquals(5, ids.stream().distinct().count());
+        verify(fileService, times(1)).saveFiles(anyList(), anyList());
+        verify(fileService, never()).saveFile(any(FileMetaData.class), any(BlobService.StagedBlob.class));
+        assertEquals(5, meterRegistry.get("file.upload.group-commit.size").summary().totalAmount());
+    }
+
+    @Test
+    public void testFailedGroupIsSavedOneByOne() throws Exception {
+        ReflectionTestUtils.setField(groupCommitService, "maxSize", 2);
+        groupCommitService.init();
+        FileMetaData broken = file("b.pdf");
+        when(fileService.saveFiles(anyList(), anyList())).thenThrow(new IllegalStateException("group failed"));
+        when(fileService.saveFile(any(FileMetaData.class), any(BlobService.StagedBlob.class))).thenAnswer(invocation -> {
+            if (invocation.getArgument(0) == broken) {
+                throw new IllegalStateException("row failed");
+            }
+            return invocation.getArgument(0);
+        });
+
+        Future<FileMetaData> good = uploads.submit(() -> groupCommitService.save(file("a.pdf"), staged()));
+        Future<FileMetaData> bad = uploads.submit(() -> groupCommitService.save(broken, staged()));
+
+        assertEquals("a.pdf", good.get(5, TimeUnit.SECONDS).getFileName());
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> bad.get(5, TimeUnit.SECONDS));
+        assertEquals("row failed", failure.getCause().getMessage());
+        verify(fileService, times(2)).saveFile(any(FileMetaData.class), any(BlobService.StagedBlob.class));
+    }
+
+    @Test
+    public void testFailedGroupIsSavedOneByOneWithItsStagedContent(@TempDir Path storage) throws Exception {
+        // the real blob store: the rolled back group has already stored the content of its files
+        ContentBlobRepository contentBlobRepository = mock(ContentBlobRepository.class);
+        when(contentBlobRepository.findByHashForUpdate(any())).thenReturn(Optional.empty());
+        when(contentBlobRepository.saveAndFlush(any(ContentBlob.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        BlobService blobService = new BlobService(contentBlobRepository, new LocalStorageBackend(storage.resolve("blobs")),
+                mock(PurgeTaskRepository.class));
+        ReflectionTestUtils.setField(blobService, "fileStorageLocation", storage.toString());
+        FileRepository fileRepository = mock(FileRepository.class);
+        when(fileRepository.saveAll(anyList())).thenThrow(new IllegalStateException("group failed"));
+        AtomicLong ids = new AtomicLong();
+        when(fileRepository.save(any(FileMetaData.class))).thenAnswer(invocation -> {
+            FileMetaData file = invocation.getArgument(0);
+            file.setId(ids.incrementAndGet());
+            return file;
+        });
+        groupCommitService = newService(new FileService(fileRepository, blobService, mock(ThumbnailService.class),
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), Caffeine.newBuilder().buildAsync()));
+        ReflectionTestUtils.setField(groupCommitService, "enabled", true);
+        ReflectionTestUtils.setField(groupCommitService, "maxWait", Duration.ofSeconds(10));
+        ReflectionTestUtils.setField(groupCommitService, "maxSize", 2);
+        groupCommitService.init();
+
+        List<Future<FileMetaData>> saved = new ArrayList<>();
+        for (String content : List.of("first", "second")) {
+            saved.add(uploads.submit(() -> {
+                BlobService.StagedBlob staged = blobService.stage(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+                try {
+                    return groupCommitService.save(file(content + ".pdf"), staged);
+                } finally {
+                    blobService.discard(staged);
+                }
+            }));
+        }
+
+        for (Future<FileMetaData> upload : saved) {
+            FileMetaData file = upload.get(5, TimeUnit.SECONDS);
+            try (InputStream in = blobService.content(file.getContentHash(), null, file.getFileSize()).getInputStream()) {
+                assertEquals(file.getFileName().replace(".pdf", ""), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        verify(fileRepository, times(2)).save(any(FileMetaData.class));
+    }
+
+    @Test
+    public void testUploadersAreRecordedAsRecentWritersBeforeTheyAreAnswered() throws Exception {
+        ReflectionTestUtils.setField(groupCommitService, "maxSize", 2);
+        groupCommitService.init();
+        when(fileService.saveFiles(anyList(), anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        List<Authentication> uploaders = List.of(new UsernamePasswordAuthenticationToken("ann@example.com", null, List.of()),
+                new UsernamePasswordAuthenticationToken("bob@example.com", null, List.of()));
+
+        List<Future<FileMetaData>> saved = new ArrayList<>();
+        for (Authentication uploader : uploaders) {
+            saved.add(uploads.submit(() -> {
+                SecurityContextHolder.getContext().setAuthentication(uploader);
+                try {
+                    FileMetaData file = groupCommitService.save(file("a.pdf"), staged());
+                    verify(replicaRouting).recordWrite(uploader);
+                    return file;
+                } finally {
+                    SecurityContextHolder.clearContext();
+                }
+            }));
+        }
+
+        for (Future<FileMetaData> upload : saved) {
+            upload.get(5, TimeUnit.SECONDS);
+        }
+        verify(replicaRouting, times(2)).recordWrite(any());
+    }
+
+    @Test
+    public void testShutdownFinishesTheGroupBeingCommitted() throws Exception {
+        ReflectionTestUtils.setField(groupCommitService, "maxSize", 1);
+        groupCommitService.init();
+        CountDownLatch committing = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        when(fileService.saveFiles(anyList(), anyList())).thenAnswer(invocation -> {
+            committing.countDown();
+            commit.await();
+            return invocation.getArgument(0);
+        });
+
+        Future<FileMetaData> saved = uploads.submit(() -> groupCommitService.save(file("a.pdf"), staged()));
+        assertTrue(committing.await(5, TimeUnit.SECONDS));
+        Future<?> shutdown = uploads.submit(() -> {
+            groupCommitService.shutdown();
+            return null;
+        });
+        Thread.sleep(100);
+        commit.countDown();
+
+        assertEquals("a.pdf", saved.get(5, TimeUnit.SECONDS).getFileName());
+        shutdown.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testDisabledSavesEachUploadInItsOwnTransaction() {
+        ReflectionTestUtils.setField(groupCommitService, "enabled", false);
+        groupCommitService.init();
+        FileMetaData file = file("a.pdf");
+        when(fileService.saveFile(file, null)).thenReturn(file);
+
+        assertSame(file, groupCommitService.save(file, null));
+        verify(fileService, never()).saveFiles(anyList(), anyList());
+    }
+
+    private GroupCommitService newService(FileService fileService) {
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        beans.addBean("replicaRoutingDataSource", replicaRouting);
+        return new GroupCommitService(fileService, meterRegistry, beans.getBeanProvider(ReplicaRoutingDataSource.class));
+    }
+
+    private static FileMetaData file(String fileName) {
+        FileMetaData file = new FileMetaData();
+        file.setFileName(fileName);
+        return file;
+    }
+
+    private static BlobService.StagedBlob staged() {
+        return new BlobService.StagedBlob(null, "abcd", 1);
+    }
+}
@@ -0,0 +1,119 @@
+package com.demo.filemanager.service;
+
+import com.demo.filemanager.enums.Role;
+import com.demo.filemanager.model.User;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JwtServiceImplTest {
+
+    private static final String SIGNING_KEY = "413F4428472B4B6250655368566D5970337336763979244226452948404D6351";
+
+    private JwtServiceImpl jwtService;
+
+    private final User user = User.builder().email("jane@example.com").role(Role.USER).build();
+
+    @BeforeEach
+    public void setup() {
+        jwtService = newJwtService(true);
+    }
+
+    @Test
+    public void testGeneratedTokenVerifies() {
+        String token = jwtService.generateToken(user);
+
+        Claims claims = jwtService.verifyToken(token);
+
+        assertEquals("jane@example.com", claims.getSubject());
+        assertTrue(jwtService.isTokenValid(claims, user));
+        assertTrue(jwtService.isTokenValid(token, user));
+        assertEquals("jane@example.com", jwtService.extractUserName(token));
+    }
+
+    @Test
+    public void testPrincipalIsRebuiltFromClaims() {
+        Claims claims = jwtService.verifyToken(jwtService.generateToken(user));
+
+        User principal = (User) jwtService.extractPrincipal(claims).orElseThrow();
+
+        assertEquals("jane@example.com", principal.getUsername());
+        assertEquals(Role.USER, principal.getRole());
+        assertTrue(jwtService.extractPrincipal(Jwts.claims().setSubject("jane@example.com")).isEmpty());
+    }
+
+    @Test
+    public void testTokenOfAnotherUserIsNotValid() {
+        Claims claims = jwtService.verifyToken(jwtService.generateToken(user));
+
+        assertFalse(jwtService.isTokenValid(claims, User.builder().email("john@example.com").role(Role.USER).build()));
+    }
+
+    @Test
+    public void testVerifiedTokenIsServedFromCache() {
+        String token = jwtService.generateToken(user);
+
+        assertSame(jwtService.verifyToken(token), jwtService.verifyToken(token));
+        assertNotSame(newJwtService(false).verifyToken(token), newJwtService(false).verifyToken(token));
+    }
+
+    @Test
+    public void testSignatureVerificationIsTimedByOutcome() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        JwtServiceImpl service = newJwtService(true, meterRegistry);
+        String token = service.generateToken(user);
+
+        service.verifyToken(token);
+        service.verifyToken(token);
+        assertThrows(JwtException.class, () -> service.verifyToken(token + "x"));
+
+        assertEquals(1, meterRegistry.timer("auth.token.verification", "outcome", "valid").count());
+        assertEquals(1, meterRegistry.timer("auth.token.verification", "outcome", "invalid").count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tags("cache", "token.verified", "result", "hit").functionCounter().count());
+    }
+
+    @Test
+    public void testTamperedTokenIsRejected() {
+        String token = jwtService.generateToken(user);
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("A") ? "BB" : "AA");
+
+        assertThrows(JwtException.class, () -> jwtService.verifyToken(tampered));
+        assertThrows(JwtException.class, () -> jwtService.verifyToken(tampered));
+    }
+
+    @Test
+    public void testExpiredTokenIsRejected() {
+        String expired = Jwts.builder().setSubject(user.getUsername())
+                .setIssuedAt(new Date(System.currentTimeMillis() - 60_000))
+                .setExpiration(new Date(System.currentTimeMillis() - 1_000))
+                .signWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(SIGNING_KEY)), SignatureAlgorithm.HS256)
+                .compact();
+
+        assertThrows(ExpiredJwtException.class, () -> jwtService.verifyToken(expired));
+    }
+
+    private static JwtServiceImpl newJwtService(boolean cacheEnabled) {
+        return newJwtService(cacheEnabled, new SimpleMeterRegistry());
+    }
+
+    private static JwtServiceImpl newJwtService(boolean cacheEnabled, MeterRegistry meterRegistry) {
+        JwtServiceImpl service = new JwtServiceImpl(meterRegistry);
+        ReflectionTestUtils.setField(service, "jwtSigningKey", SIGNING_KEY);
+        ReflectionTestUtils.setField(service, "tokenCacheEnabled", cacheEnabled);
+        service.init();
+        return service;
+    }
+}
@@ -0,0 +1,122 @@
+package com.demo.filemanager.service;
+
+import com.demo.filemanager.dto.FileMetaDataDTO;
+import com.demo.filemanager.dto.StorageMigrationDTO;
+import com.demo.filemanager.model.FileMetaData;
+import com.demo.filemanager.repository.ContentBlobRepository;
+import com.demo.filemanager.repository.FileRepository;
+import com.demo.filemanager.repository.PurgeTaskRepository;
+import com.demo.filemanager.storage.LocalStorageBackend;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class StorageMigrationServiceTest {
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private FileService fileService;
+
+    @Mock
+    private ContentBlobRepository contentBlobRepository;
+
+    @Mock
+    private PurgeTaskRepository purgeTaskRepository;
+
+    @TempDir
+    Path storage;
+
+    private BlobService blobService;
+
+    private StorageMigrationService storageMigrationService;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        blobService = new BlobService(contentBlobRepository, new LocalStorageBackend(storage.resolve("blobs")),
+                purgeTaskRepository);
+        ReflectionTestUtils.setField(blobService, "fileStorageLocation", storage.toString());
+        storageMigrationService = new StorageMigrationService(fileRepository, fileService, blobService);
+        ReflectionTestUtils.setField(storageMigrationService, "gracePeriod", Duration.ZERO);
+    }
+
+    @Test
+    public void testMigratesFlatFilesAndRemovesThemAfterwards() throws Exception {
+        Path flat = Files.writeString(storage.resolve("report.pdf"), "hello world");
+        FileMetaDataDTO legacy = new FileMetaDataDTO(1L, "report.pdf", flat.toString(), "application/pdf", 11L, null);
+        FileMetaDataDTO missing = new FileMetaDataDTO(2L, "gone.pdf", storage.resolve("gone.pdf").toString(), "application/pdf", 3L, null);
+
+        when(fileRepository.findLegacyPage(eq(0L), any())).thenReturn(List.of(legacy, missing));
+        when(fileService.migrateLegacyFile(eq(1L), eq(flat.toString()), any(BlobService.StagedBlob.class)))
+                .thenAnswer(invocation -> {
+                    BlobService.StagedBlob staged = invocation.getArgument(2);
+                    assertEquals("hello world", Files.readString(staged.getStagingFile()));
+                    return Optional.of(new FileMetaData());
+                });
+        when(fileRepository.existsByFilePath(flat.toString())).thenReturn(false);
+
+        StorageMigrationService.Run run = new StorageMigrationService.Run();
+        storageMigrationService.migrate(run);
+        StorageMigrationDTO status = run.toDTO();
+
+        assertEquals("COMPLETED", status.getState());
+        assertEquals(2, status.getScanned());
+        assertEquals(1, status.getMigrated());
+        assertEquals(1, status.getMissing());
+        assertEquals(1, status.getRemoved());
+        assertFalse(Files.exists(flat));
+        verify(fileService, never()).migrateLegacyFile(eq(2L), any(), any());
+    }
+
+    @Test
+    public void testKeepsFlatFileStillReferencedAndDiscardsSkippedStaging() throws Exception {
+        Path flat = Files.writeString(storage.resolve("shared.pdf"), "hello world");
+        FileMetaDataDTO migrated = new FileMetaDataDTO(1L, "shared.pdf", flat.toString(), "application/pdf", 11L, null);
+        FileMetaDataDTO changed = new FileMetaDataDTO(2L, "shared.pdf", flat.toString(), "application/pdf", 11L, null);
+
+        when(fileRepository.findLegacyPage(eq(0L), any())).thenReturn(List.of(migrated, changed));
+        when(fileService.migrateLegacyFile(eq(1L), any(), any())).thenReturn(Optional.of(new FileMetaData()));
+        when(fileService.migrateLegacyFile(eq(2L), any(), any())).thenReturn(Optional.empty());
+        when(fileRepository.existsByFilePath(flat.toString())).thenReturn(true);
+
+        StorageMigrationService.Run run = new StorageMigrationService.Run();
+        storageMigrationService.migrate(run);
+
+        assertEquals(1, run.toDTO().getSkipped());
+        assertEquals(0, run.toDTO().getRemoved());
+        assertTrue(Files.exists(flat));
+        try (var staging = Files.list(storage.resolve(".tmp"))) {
+            assertEquals(0, staging.count());
+        }
+    }
+
+    @Test
+    public void testIgnoresPathsOutsideStorageLocation() {
+        FileMetaDataDTO outside = new FileMetaDataDTO(1L, "passwd", "/etc/passwd", "text/plain", 1L, null);
+        when(fileRepository.findLegacyPage(anyLong(), any())).thenReturn(List.of(outside), Collections.emptyList());
+
+        StorageMigrationService.Run run = new StorageMigrationService.Run();
+        storageMigrationService.migrate(run);
+
+        assertEquals(1, run.toDTO().getMissing());
+        verifyNoInteractions(fileService);
+    }
+}
@@ -0,0 +1,231 @@
+package com.demo.filemanager.service;
+
+import com.demo.filemanager.enums.DerivativeKind;
+import com.demo.filemanager.model.ContentBlob;
+import com.demo.filemanager.model.FileDerivative;
+import com.demo.filemanager.model.FileMetaData;
+import com.demo.filemanager.repository.FileDerivativeRepository;
+import com.demo.filemanager.repository.FileRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+public class ThumbnailServiceTest {
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private FileDerivativeRepository fileDerivativeRepository;
+
+    @Mock
+    private BlobService blobService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ThumbnailService thumbnailService;
+
+    private final AtomicReference<byte[]> stagedBytes = new AtomicReference<>();
+
+    @BeforeEach
+    public void setup() throws Exception {
+        MockitoAnnotations.openMocks(this);
+        thumbnailService = new ThumbnailService(fileRepository, fileDerivativeRepository, blobService,
+                new TransactionTemplate(transactionManager), meterRegistry);
+        ReflectionTestUtils.setField(thumbnailService, "threads", 1);
+        ReflectionTestUtils.setField(thumbnailService, "queueCapacity", 1);
+        thumbnailService.init();
+
+        when(blobService.stage(any(InputStream.class))).thenAnswer(invocation -> {
+            stagedBytes.set(invocation.<InputStream>getArgument(0).readAllBytes());
+            return new BlobService.StagedBlob(null, "thumb", stagedBytes.get().length);
+        });
+        when(blobService.retain(any(), isNull())).thenAnswer(invocation -> {
+            BlobService.StagedBlob staged = invocation.getArgument(0);
+            ContentBlob blob = new ContentBlob();
+            blob.setHash(staged.getHash());
+            blob.setSize(staged.getSize());
+            return blob;
+        });
+        when(fileDerivativeRepository.findByFileIdAndKind(any(), any())).thenReturn(Optional.empty());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        thumbnailService.shutdown();
+    }
+
+    @Test
+    public void testGeneratesThumbnailFittingTheSize() throws Exception {
+        FileMetaData file = imageFile(1L, "abcd", image(1000, 500, BufferedImage.TYPE_INT_RGB), "png");
+
+        thumbnailService.generate(1L, "abcd");
+
+        BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(stagedBytes.get()));
+        assertEquals(256, thumbnail.getWidth());
+        assertEquals(128, thumbnail.getHeight());
+        ArgumentCaptor<FileDerivative> saved = ArgumentCaptor.forClass(FileDerivative.class);
+        verify(fileDerivativeRepository).save(saved.capture());
+        assertEquals(file.getId(), saved.getValue().getFileId());
+        assertEquals(DerivativeKind.THUMBNAIL, saved.getValue().getKind());
+        assertEquals("abcd", saved.getValue().getSourceHash());
+        assertEquals("thumb", saved.getValue().getContentHash());
+        assertEquals("image/jpeg", saved.getValue().getContentType());
+        assertEquals(1.0, meterRegistry.counter("file.thumbnail.generated").count());
+    }
+
+    @Test
+    public void testKeepsTransparencyAsPng() throws Exception {
+        imageFile(1L, "abcd", image(100, 100, BufferedImage.TYPE_INT_ARGB), "png");
+
+        thumbnailService.generate(1L, "abcd");
+
+        ArgumentCaptor<FileDerivative> saved = ArgumentCaptor.forClass(FileDerivative.class);
+        verify(fileDerivativeRepository).save(saved.capture());
+        assertEquals("image/png", saved.getValue().getContentType());
+        assertEquals(100, saved.getValue().getWidth());
+    }
+
+    @Test
+    public void testSkipsFileGivenOtherContent() throws Exception {
+        imageFile(1L, "newer", image(100, 100, BufferedImage.TYPE_INT_RGB), "png");
+
+        thumbnailService.generate(1L, "abcd");
+
+        verify(blobService, never()).stage(any(InputStream.class));
+        verify(fileDerivativeRepository, never()).save(any());
+    }
+
+    @Test
+    public void testReplacesThumbnailOfPreviousContent() throws Exception {
+        imageFile(1L, "abcd", image(100, 100, BufferedImage.TYPE_INT_RGB), "jpeg");
+        FileDerivative previous = new FileDerivative();
+        previous.setFileId(1L);
+        previous.setKind(DerivativeKind.THUMBNAIL);
+        previous.setSourceHash("older");
+        previous.setContentHash("oldThumb");
+        when(fileDerivativeRepository.findByFileIdAndKind(1L, DerivativeKind.THUMBNAIL)).thenReturn(Optional.of(previous));
+
+        thumbnailService.generate(1L, "abcd");
+
+        assertEquals("abcd", previous.getSourceHash());
+        assertEquals("thumb", previous.getContentHash());
+        verify(blobService).release("oldThumb");
+    }
+
+    @Test
+    public void testFindThumbnailIgnoresStaleThumbnail() {
+        FileMetaData file = new FileMetaData();
+        file.setId(1L);
+        file.setContentHash("abcd");
+        FileDerivative stale = new FileDerivative();
+        stale.setSourceHash("older");
+        when(fileDerivativeRepository.findByFileIdAndKind(1L, DerivativeKind.THUMBNAIL)).thenReturn(Optional.of(stale));
+
+        assertTrue(thumbnailService.findThumbnail(file).isEmpty());
+    }
+
+    @Test
+    public void testScheduleSkipsWhenQueueIsFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(fileRepository.findById(any())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return Optional.empty();
+        });
+
+        thumbnailService.schedule(1L, "a");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        thumbnailService.schedule(2L, "b");
+        thumbnailService.schedule(2L, "b");
+        thumbnailService.schedule(3L, "c");
+        release.countDown();
+
+        assertEquals(1.0, meterRegistry.counter("file.thumbnail.skipped").count());
+        verify(fileRepository, timeout(5000).times(2)).findById(any());
+    }
+
+    @Test
+    public void testUndecodableImageIsNotScheduledAgain() throws Exception {
+        FileMetaData file = new FileMetaData();
+        file.setId(1L);
+        file.setFileName("photo.png");
+        file.setContentHash("abcd");
+        file.setFileSize(9);
+        when(fileRepository.findById(1L)).thenReturn(Optional.of(file));
+        when(blobService.content(eq("abcd"), any(), eq(9L))).thenReturn(new ByteArrayResource("not a png".getBytes()));
+
+        thumbnailService.generate(1L, "abcd");
+        thumbnailService.schedule(1L, "abcd");
+        thumbnailService.schedule(1L, "abcd");
+        // queued after any thumbnail of file 1 would have been
+        thumbnailService.schedule(2L, "abcd");
+
+        verify(fileRepository, timeout(5000)).findById(2L);
+        verify(fileRepository, times(1)).findById(1L);
+        verify(fileDerivativeRepository, never()).save(any());
+    }
+
+    @Test
+    public void testRemoveDerivativesReturnsTheirContent() {
+        FileDerivative thumbnail = new FileDerivative();
+        thumbnail.setContentHash("thumb");
+        when(fileDerivativeRepository.findByFileIdIn(List.of(1L, 2L))).thenReturn(List.of(thumbnail));
+
+        assertEquals(List.of("thumb"), thumbnailService.removeDerivatives(List.of(1L, 2L)));
+        verify(fileDerivativeRepository).deleteAllInBatch(List.of(thumbnail));
+    }
+
+    private FileMetaData imageFile(Long id, String contentHash, BufferedImage image, String format) throws Exception {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        ImageIO.write(image, format, encoded);
+        FileMetaData file = new FileMetaData();
+        file.setId(id);
+        file.setFileName("photo." + format);
+        file.setContentHash(contentHash);
+        file.setFileSize(encoded.size());
+        when(fileRepository.findById(id)).thenReturn(Optional.of(file));
+        when(fileRepository.findByIdForUpdate(id)).thenReturn(Optional.of(file));
+        when(blobService.content(eq(contentHash), any(), eq((long) encoded.size()))).thenReturn(new ByteArrayResource(encoded.toByteArray()));
+        return file;
+    }
+
+    private static BufferedImage image(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                image.setRGB(x, y, (x * 255 / width) << 16 | (y * 255 / height) << 8 | (type == BufferedImage.TYPE_INT_ARGB ? 0x80000000 : 0));
+            }
+        }
+        return image;
+    }
+}
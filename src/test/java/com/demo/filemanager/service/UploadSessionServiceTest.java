@@ -0,0 +1,160 @@
+package com.demo.filemanager.service;
+
+import com.demo.filemanager.enums.UploadSessionStatus;
+import com.demo.filemanager.model.FileMetaData;
+import com.demo.filemanager.model.UploadSession;
+import com.demo.filemanager.repository.UploadSessionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class UploadSessionServiceTest {
+
+    @Mock
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Mock
+    private FileService fileService;
+
+    @Mock
+    private BlobService blobService;
+
+    @InjectMocks
+    private UploadSessionService uploadSessionService;
+
+    @TempDir
+    Path storage;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(uploadSessionService, "fileStorageLocation", storage.toString());
+        when(uploadSessionRepository.save(any(UploadSession.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(uploadSessionRepository.touch(any(), eq(UploadSessionStatus.OPEN), any())).thenReturn(1);
+        when(uploadSessionRepository.transition(any(), any(), any(), any())).thenReturn(1);
+        when(fileService.saveFile(any(FileMetaData.class), any(BlobService.StagedBlob.class))).thenAnswer(invocation -> {
+            FileMetaData metaData = invocation.getArgument(0);
+            BlobService.StagedBlob content = invocation.getArgument(1);
+            metaData.setFileSize(content.getSize());
+            return metaData;
+        });
+    }
+
+    @Test
+    public void testCreateSessionRejectsDisallowedExtension() {
+        assertThrows(IllegalArgumentException.class, () -> uploadSessionService.createSession("setup.exe", "application/octet-stream"));
+        assertThrows(IllegalArgumentException.class, () -> uploadSessionService.createSession("../escape.pdf", "application/pdf"));
+    }
+
+    @Test
+    public void testCreateSessionRejectsNamesThatAreNotPlainFileNames() {
+        for (String fileName : new String[] { "/x.pdf", "/tmp/x.pdf", "a/../b.pdf", "./b.pdf", "dir\\b.pdf", "C:\\b.pdf", "b.pdf\0.png" }) {
+            assertThrows(IllegalArgumentException.class, () -> uploadSessionService.createSession(fileName, "application/pdf"), fileName);
+        }
+        verify(uploadSessionRepository, never()).save(any());
+    }
+
+    @Test
+    public void testPartsInAnyOrderAreAssembledInOrder() throws Exception {
+        UploadSession session = uploadSessionService.createSession("report.pdf", "application/pdf");
+        when(uploadSessionRepository.findById(session.getId())).thenReturn(Optional.of(session));
+
+        storePart(session, 3, "ccc");
+        storePart(session, 1, "a");
+        storePart(session, 2, "bb");
+        storePart(session, 2, "BB");
+
+        assertEquals(List.of(1, 2, 3), uploadSessionService.getReceivedParts(session.getId()));
+
+        StringBuilder assembled = new StringBuilder();
+        when(blobService.stage(any(Path.class))).thenAnswer(invocation -> {
+            Path file = invocation.getArgument(0);
+            assembled.append(Files.readString(file));
+            return new BlobService.StagedBlob(file, "hash", Files.size(file));
+        });
+
+        FileMetaData metaData = uploadSessionService.commit(session.getId());
+
+        assertEquals("report.pdf", metaData.getFileName());
+        assertEquals(6, metaData.getFileSize());
+        assertEquals("aBBccc", assembled.toString());
+        assertFalse(Files.exists(storage.resolve(".sessions").resolve(session.getId())));
+        verify(uploadSessionRepository).deleteById(session.getId());
+    }
+
+    @Test
+    public void testCommitWithMissingPartReopensSession() throws Exception {
+        UploadSession session = uploadSessionService.createSession("report.pdf", "application/pdf");
+        when(uploadSessionRepository.findById(session.getId())).thenReturn(Optional.of(session));
+
+        storePart(session, 1, "a");
+        storePart(session, 3, "ccc");
+
+        assertThrows(IllegalStateException.class, () -> uploadSessionService.commit(session.getId()));
+
+        verify(uploadSessionRepository).transition(eq(session.getId()), eq(UploadSessionStatus.COMMITTING), eq(UploadSessionStatus.OPEN), any());
+        verify(fileService, never()).saveFile(any(), any());
+        assertEquals(List.of(1, 3), uploadSessionService.getReceivedParts(session.getId()));
+    }
+
+    @Test
+    public void testStorePartRejectsClosedSession() throws Exception {
+        UploadSession session = uploadSessionService.createSession("report.pdf", "application/pdf");
+        when(uploadSessionRepository.touch(eq(session.getId()), eq(UploadSessionStatus.OPEN), any())).thenReturn(0);
+
+        assertThrows(IllegalStateException.class, () -> storePart(session, 1, "a"));
+        assertTrue(uploadSessionService.getReceivedParts(session.getId()).isEmpty());
+    }
+
+    @Test
+    public void testOversizedPartLeavesNothingBehind() throws Exception {
+        ReflectionTestUtils.setField(uploadSessionService, "maxPartSize", 4L);
+        UploadSession session = uploadSessionService.createSession("report.pdf", "application/pdf");
+
+        assertThrows(IllegalArgumentException.class, () -> storePart(session, 1, "too large"));
+
+        try (var files = Files.list(storage.resolve(".sessions").resolve(session.getId()))) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void testExpireSessionsReclaimsDiskSpace() throws Exception {
+        UploadSession session = uploadSessionService.createSession("report.pdf", "application/pdf");
+        storePart(session, 1, "a");
+        session.setLastActivityAt(Instant.now().minus(Duration.ofDays(2)));
+        when(uploadSessionRepository.findByLastActivityAtBefore(any())).thenReturn(List.of(session));
+
+        uploadSessionService.expireSessions();
+
+        ArgumentCaptor<Instant> cutoff = ArgumentCaptor.forClass(Instant.class);
+        verify(uploadSessionRepository).findByLastActivityAtBefore(cutoff.capture());
+        assertTrue(cutoff.getValue().isBefore(Instant.now().minus(Duration.ofHours(23))));
+        verify(uploadSessionRepository).deleteById(session.getId());
+        assertFalse(Files.exists(storage.resolve(".sessions").resolve(session.getId())));
+    }
+
+    private void storePart(UploadSession session, int partNumber, String content) throws Exception {
+        uploadSessionService.storePart(session.getId(), partNumber,
+                new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+}
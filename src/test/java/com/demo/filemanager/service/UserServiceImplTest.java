@@ -0,0 +1,92 @@
+package com.demo.filemanager.service;
+
+import com.demo.filemanager.enums.Role;
+import com.demo.filemanager.model.User;
+import com.demo.filemanager.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class UserServiceImplTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    private AsyncCache<String, User> userPrincipalCache;
+
+    private UserServiceImpl userService;
+
+    private final User user = User.builder().id(1L).firstName("Jane").lastName("Doe")
+            .email("jane@example.com").password("$2a$10$hash").role(Role.USER).build();
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        userPrincipalCache = Caffeine.newBuilder().maximumSize(100).buildAsync();
+        userService = new UserServiceImpl(userRepository, userPrincipalCache);
+    }
+
+    @Test
+    public void testPrincipalIsLoadedOnce() {
+        when(userRepository.findByEmail("jane@example.com")).thenReturn(Optional.of(user));
+
+        UserDetails first = userService.loadPrincipal("jane@example.com");
+        UserDetails second = userService.loadPrincipal("jane@example.com");
+
+        assertSame(first, second);
+        assertEquals("jane@example.com", first.getUsername());
+        assertEquals(user.getAuthorities(), first.getAuthorities());
+        assertNull(first.getPassword());
+        verify(userRepository, times(1)).findByEmail("jane@example.com");
+    }
+
+    @Test
+    public void testUnknownUserIsNotCached() {
+        // a miss is looked up on a replica and then on the primary
+        when(userRepository.findByEmail("jane@example.com")).thenReturn(Optional.empty(), Optional.empty(), Optional.of(user));
+
+        assertThrows(UsernameNotFoundException.class, () -> userService.loadPrincipal("jane@example.com"));
+        assertEquals("jane@example.com", userService.loadPrincipal("jane@example.com").getUsername());
+    }
+
+    @Test
+    public void testEvictPrincipalReloadsUser() {
+        when(userRepository.findByEmail("jane@example.com")).thenReturn(Optional.of(user));
+        userService.loadPrincipal("jane@example.com");
+
+        userService.evictPrincipal("jane@example.com");
+        userService.loadPrincipal("jane@example.com");
+
+        verify(userRepository, times(2)).findByEmail("jane@example.com");
+    }
+
+    @Test
+    public void testEvictPrincipalWaitsForTransaction() {
+        when(userRepository.findByEmail("jane@example.com")).thenReturn(Optional.of(user));
+        userService.loadPrincipal("jane@example.com");
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            userService.evictPrincipal("jane@example.com");
+            assertNotNull(userPrincipalCache.synchronous().getIfPresent("jane@example.com"));
+
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+            assertNull(userPrincipalCache.synchronous().getIfPresent("jane@example.com"));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+}
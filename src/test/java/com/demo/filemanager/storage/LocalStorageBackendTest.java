@@ -0,0 +1,28 @@
+package com.demo.filemanager.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LocalStorageBackendTest extends StorageBackendConformanceTest {
+
+    @Override
+    protected StorageBackend createBackend(Path tempDir) {
+        return new LocalStorageBackend(tempDir.resolve("blobs"));
+    }
+
+    @Test
+    public void testKeysCannotEscapeRoot() {
+        assertThrows(IllegalArgumentException.class, () -> backend.stat("../outside"));
+        assertThrows(IllegalArgumentException.class, () -> backend.localPath("ab/../../outside"));
+    }
+
+    @Test
+    public void testLocalPath() throws Exception {
+        put("ab/cd/object", "content");
+
+        assertEquals(tempDir.resolve("blobs/ab/cd/object").toAbsolutePath(), backend.localPath("ab/cd/object").get());
+    }
+}
@@ -0,0 +1,26 @@
+package com.demo.filemanager.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedStorageBackendTest extends StorageBackendConformanceTest {
+
+    @Override
+    protected StorageBackend createBackend(Path tempDir) {
+        return new MappedStorageBackend(tempDir.resolve("blobs"), 64 * 1024, 1024 * 1024);
+    }
+
+    @Test
+    public void testMappedObjectIsReplacedOnPut() throws Exception {
+        put("ab/cd/object", "first");
+        assertEquals("first", read(backend.get("ab/cd/object", 0, -1)));
+        assertInstanceOf(ByteBufferInputStream.class, backend.get("ab/cd/object", 0, -1));
+
+        put("ab/cd/object", "second");
+
+        assertEquals("second", read(backend.get("ab/cd/object", 0, -1)));
+    }
+}
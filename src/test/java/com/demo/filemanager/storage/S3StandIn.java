@@ -0,0 +1,150 @@
+package com.demo.filemanager.storage;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A minimal in-memory S3 for tests: path-style PUT, GET (with a single Range), HEAD and DELETE on one bucket.
+ * Requests without a Signature Version 4 authorization for the expected access key are refused. Every response
+ * closes its connection, so the client never reuses one the server is closing at the same time.
+ */
+class S3StandIn {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String bucket;
+    private final String accessKey;
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private volatile String lastAuthorization;
+    private final AtomicInteger requestsToDrop = new AtomicInteger();
+
+    private S3StandIn(String bucket, String accessKey) throws IOException {
+        this.bucket = bucket;
+        this.accessKey = accessKey;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.executor = Executors.newFixedThreadPool(8);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    static S3StandIn start(String bucket, String accessKey) throws IOException {
+        S3StandIn standIn = new S3StandIn(bucket, accessKey);
+        standIn.server.start();
+        return standIn;
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    boolean contains(String key) {
+        return objects.containsKey(key);
+    }
+
+    String getLastAuthorization() {
+        return lastAuthorization;
+    }
+
+    /**
+     * Closes the connection of the next request without answering it.
+     */
+    void dropNextRequest() {
+        requestsToDrop.incrementAndGet();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (requestsToDrop.getAndUpdate(count -> Math.max(0, count - 1)) > 0) {
+                return;
+            }
+            exchange.getResponseHeaders().set("Connection", "close");
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            lastAuthorization = authorization;
+            if (authorization == null || !authorization.startsWith("AWS4-HMAC-SHA256 Credential=" + accessKey + "/")
+                    || exchange.getRequestHeaders().getFirst("x-amz-date") == null) {
+                exchange.sendResponseHeaders(403, -1);
+                return;
+            }
+            String path = exchange.getRequestURI().getPath();
+            String bucketPrefix = "/" + bucket + "/";
+            if (!path.startsWith(bucketPrefix)) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            String key = path.substring(bucketPrefix.length());
+
+            switch (exchange.getRequestMethod()) {
+                case "PUT" -> {
+                    try (InputStream in = exchange.getRequestBody()) {
+                        objects.put(key, in.readAllBytes());
+                    }
+                    exchange.sendResponseHeaders(200, -1);
+                }
+                case "HEAD" -> {
+                    byte[] object = objects.get(key);
+                    if (object == null) {
+                        exchange.getResponseHeaders().add("Content-Length", "0");
+                        exchange.sendResponseHeaders(404, -1);
+                        return;
+                    }
+                    exchange.getResponseHeaders().add("Last-Modified",
+                            DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC)));
+                    exchange.getResponseHeaders().add("Content-Length", String.valueOf(object.length));
+                    exchange.sendResponseHeaders(200, -1);
+                }
+                case "GET" -> get(exchange, key);
+                case "DELETE" -> {
+                    objects.remove(key);
+                    exchange.sendResponseHeaders(204, -1);
+                }
+                default -> exchange.sendResponseHeaders(405, -1);
+            }
+        }
+    }
+
+    private void get(HttpExchange exchange, String key) throws IOException {
+        byte[] object = objects.get(key);
+        if (object == null) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        int status = 200;
+        int start = 0;
+        int end = object.length;
+        if (range != null) {
+            String[] bounds = range.substring("bytes=".length()).split("-", -1);
+            start = Integer.parseInt(bounds[0]);
+            end = bounds[1].isEmpty() ? object.length : Math.min(object.length, Integer.parseInt(bounds[1]) + 1);
+            if (start >= object.length) {
+                exchange.sendResponseHeaders(416, -1);
+                return;
+            }
+            status = 206;
+        }
+        byte[] body = Arrays.copyOfRange(object, start, end);
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
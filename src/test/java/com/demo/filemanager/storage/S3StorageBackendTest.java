@@ -0,0 +1,65 @@
+package com.demo.filemanager.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class S3StorageBackendTest extends StorageBackendConformanceTest {
+
+    private S3StandIn standIn;
+
+    @Override
+    protected StorageBackend createBackend(Path tempDir) throws Exception {
+        standIn = S3StandIn.start("test-bucket", "test-access-key");
+        return new S3StorageBackend(URI.create("http://localhost:" + standIn.getPort()), "test-bucket", "blobs/",
+                "us-east-1", "test-access-key", "test-secret-key");
+    }
+
+    @AfterEach
+    public void stopStandIn() {
+        standIn.stop();
+    }
+
+    @Test
+    public void testObjectsAreStoredUnderPrefix() throws Exception {
+        put("ab/cd/object", "content");
+
+        assertTrue(standIn.contains("blobs/ab/cd/object"));
+        assertTrue(backend.localPath("ab/cd/object").isEmpty());
+    }
+
+    @Test
+    public void testRequestsAreSigned() throws Exception {
+        put("ab/cd/object", "content");
+
+        assertTrue(standIn.getLastAuthorization().startsWith(
+                "AWS4-HMAC-SHA256 Credential=test-access-key/"), standIn.getLastAuthorization());
+        assertTrue(standIn.getLastAuthorization().contains("/us-east-1/s3/aws4_request, SignedHeaders=host;x-amz-content-sha256;x-amz-date, Signature="));
+    }
+
+    @Test
+    public void testReadsAndDeletesAreSentAgainOnADroppedConnection() throws Exception {
+        put("ab/cd/object", "content");
+
+        standIn.dropNextRequest();
+        assertEquals("content", read(backend.get("ab/cd/object", 0, -1)));
+        standIn.dropNextRequest();
+        assertTrue(backend.stat("ab/cd/object").isPresent());
+        standIn.dropNextRequest();
+        backend.delete("ab/cd/object");
+        assertFalse(standIn.contains("blobs/ab/cd/object"));
+    }
+
+    @Test
+    public void testUploadsAreNotSentAgain() {
+        standIn.dropNextRequest();
+
+        assertThrows(IOException.class, () -> put("ab/cd/object", "content"));
+        assertFalse(standIn.contains("blobs/ab/cd/object"));
+    }
+}
@@ -0,0 +1,148 @@
+package com.demo.filemanager.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Behaviour every {@link StorageBackend} has to share, plus a rough throughput figure printed per backend.
+ */
+public abstract class StorageBackendConformanceTest {
+
+    private static final String CONTENT = "0123456789abcdefghij";
+
+    @TempDir
+    Path tempDir;
+
+    protected StorageBackend backend;
+
+    protected abstract StorageBackend createBackend(Path tempDir) throws Exception;
+
+    @BeforeEach
+    public void setUpBackend() throws Exception {
+        backend = createBackend(tempDir);
+    }
+
+    @Test
+    public void testPutThenGet() throws Exception {
+        put("ab/cd/object", CONTENT);
+
+        assertEquals(CONTENT, read(backend.get("ab/cd/object", 0, -1)));
+        assertEquals(CONTENT.length(), backend.stat("ab/cd/object").get().getSize());
+    }
+
+    @Test
+    public void testRangedGet() throws Exception {
+        put("ab/cd/object", CONTENT);
+
+        assertEquals("2345", read(backend.get("ab/cd/object", 2, 4)));
+        assertEquals("ghij", read(backend.get("ab/cd/object", 16, -1)));
+        assertEquals("fghij", read(backend.get("ab/cd/object", 15, 1000)));
+        assertEquals("", read(backend.get("ab/cd/object", 0, 0)));
+    }
+
+    @Test
+    public void testPutReplacesObject() throws Exception {
+        put("ab/cd/object", CONTENT);
+        put("ab/cd/object", "replaced");
+
+        assertEquals("replaced", read(backend.get("ab/cd/object", 0, -1)));
+        assertEquals(8, backend.stat("ab/cd/object").get().getSize());
+    }
+
+    @Test
+    public void testPutFile() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("staged.tmp"), CONTENT);
+
+        backend.putFile("ab/cd/object", file);
+
+        assertEquals(CONTENT, read(backend.get("ab/cd/object", 0, -1)));
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void testMissingObject() throws Exception {
+        assertTrue(backend.stat("ab/cd/missing").isEmpty());
+        assertThrows(NoSuchFileException.class, () -> backend.get("ab/cd/missing", 0, -1).close());
+        backend.delete("ab/cd/missing");
+    }
+
+    @Test
+    public void testDelete() throws Exception {
+        put("ab/cd/object", CONTENT);
+
+        backend.delete("ab/cd/object");
+
+        assertTrue(backend.stat("ab/cd/object").isEmpty());
+        assertThrows(NoSuchFileException.class, () -> backend.get("ab/cd/object", 0, -1).close());
+    }
+
+    @Test
+    public void testLargeObject() throws Exception {
+        byte[] content = randomBytes(3 * 1024 * 1024 + 17);
+        backend.put("ab/cd/large", new ByteArrayInputStream(content), content.length);
+
+        try (InputStream in = backend.get("ab/cd/large", 0, -1)) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+        try (InputStream in = backend.get("ab/cd/large", 1024 * 1024 - 3, 10)) {
+            assertArrayEquals(Arrays.copyOfRange(content, 1024 * 1024 - 3, 1024 * 1024 + 7), in.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                String key = String.format("%02x/00/object-%d", i, i);
+                String value = "content of object " + i;
+                tasks.add(executor.submit(() -> {
+                    put(key, value);
+                    assertEquals(value, read(backend.get(key, 0, -1)));
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    protected void put(String key, String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        backend.put(key, new ByteArrayInputStream(bytes), bytes.length);
+    }
+
+    protected static String read(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,70 @@
+package com.demo.filemanager.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MultipartStreamParserTest {
+
+    private static final String BOUNDARY = "xYzZY";
+
+    @Test
+    public void testPartsAreSplitAtTheBoundaryWhateverTheReadSizes() throws IOException {
+        byte[] binary = new byte[100_000];
+        new Random(7).nextBytes(binary);
+        // content with near misses of the delimiter: cut short, or without the line break before it
+        byte[] tricky = ("a\r\n--xYzZ\r\n-b--xYzZY\r\n-").getBytes(StandardCharsets.ISO_8859_1);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.writeBytes("preamble\r\n--xYzZY\r\nContent-Disposition: form-data; name=\"a\"; filename=\"bin.pdf\"\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        body.writeBytes(binary);
+        body.writeBytes("\r\n--xYzZY\r\nContent-Disposition: form-data; name=\"b\"\r\nContent-Type: text/plain\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        body.writeBytes(tricky);
+        body.writeBytes("\r\n--xYzZY--\r\nepilogue".getBytes(StandardCharsets.ISO_8859_1));
+
+        // the input hands out at most 3 bytes per read
+        InputStream trickle = new ByteArrayInputStream(body.toByteArray()) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 3));
+            }
+        };
+        MultipartStreamParser parser = new MultipartStreamParser(trickle, BOUNDARY);
+
+        Map<String, String> first = parser.nextPart();
+        assertEquals("form-data; name=\"a\"; filename=\"bin.pdf\"", first.get("content-disposition"));
+        assertArrayEquals(binary, readPart(parser));
+        Map<String, String> second = parser.nextPart();
+        assertEquals("text/plain", second.get("content-type"));
+        assertArrayEquals(tricky, readPart(parser));
+        assertNull(parser.nextPart());
+    }
+
+    @Test
+    public void testUnskippedContentIsSkippedAndTruncatedBodiesFail() throws IOException {
+        String body = "--xYzZY\r\nContent-Disposition: form-data; name=\"a\"\r\n\r\nunread\r\n"
+                + "--xYzZY\r\nContent-Disposition: form-data; name=\"b\"\r\n\r\nrest";
+        MultipartStreamParser parser = new MultipartStreamParser(new ByteArrayInputStream(body.getBytes(StandardCharsets.ISO_8859_1)), BOUNDARY);
+
+        assertNotNull(parser.nextPart());
+        assertEquals("form-data; name=\"b\"", parser.nextPart().get("content-disposition"));
+        assertThrows(MultipartStreamParser.MalformedMultipartException.class, () -> readPart(parser));
+    }
+
+    private static byte[] readPart(MultipartStreamParser parser) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = parser.read(buffer, 0, buffer.length)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,92 @@
+package com.demo.filemanager.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ZipStreamWriterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testEntriesRecordCrcAndSizes() throws Exception {
+        byte[] random = new byte[100_000];
+        new Random(42).nextBytes(random);
+        byte[] text = "hello zip\n".repeat(10_000).getBytes(StandardCharsets.UTF_8);
+
+        Path archive = directory.resolve("a.zip");
+        try (OutputStream out = Files.newOutputStream(archive)) {
+            ZipStreamWriter zip = new ZipStreamWriter(out);
+            zip.addEntry("random.bin", Instant.now(), random.length, false, new ByteArrayInputStream(random));
+            zip.addEntry("text/ünïcode.txt", Instant.now(), text.length, true, new ByteArrayInputStream(text));
+            zip.addEntry("empty", null, 0, true, new ByteArrayInputStream(new byte[0]));
+            zip.finish();
+        }
+
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            ZipEntry stored = zip.getEntry("random.bin");
+            assertEquals(random.length, stored.getSize());
+            // copied in stored deflate blocks, not compressed again
+            assertTrue(stored.getCompressedSize() < random.length + 64, "compressed size " + stored.getCompressedSize());
+            assertArrayEquals(random, zip.getInputStream(stored).readAllBytes());
+            ZipEntry deflated = zip.getEntry("text/ünïcode.txt");
+            assertEquals(ZipEntry.DEFLATED, deflated.getMethod());
+            assertEquals(text.length, deflated.getSize());
+            assertArrayEquals(text, zip.getInputStream(deflated).readAllBytes());
+            assertEquals(0, zip.getInputStream(zip.getEntry("empty")).readAllBytes().length);
+        }
+    }
+
+    @Test
+    public void testArchiveCanBeReadFromTheFront() throws Exception {
+        byte[] random = new byte[100_000];
+        new Random(7).nextBytes(random);
+        byte[] text = "hello zip\n".repeat(1_000).getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        ZipStreamWriter writer = new ZipStreamWriter(archive);
+        writer.addEntry("photo.jpg", Instant.now(), random.length, false, new ByteArrayInputStream(random));
+        writer.addEntry("notes.txt", Instant.now(), text.length, true, new ByteArrayInputStream(text));
+        writer.finish();
+
+        // as streaming unzippers read it, without the central directory
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive.toByteArray()))) {
+            assertEquals("photo.jpg", zip.getNextEntry().getName());
+            assertArrayEquals(random, zip.readAllBytes());
+            assertEquals("notes.txt", zip.getNextEntry().getName());
+            assertArrayEquals(text, zip.readAllBytes());
+            assertNull(zip.getNextEntry());
+        }
+    }
+
+    @Test
+    public void testManyEntriesUseZip64EndOfCentralDirectory() throws Exception {
+        Path archive = directory.resolve("many.zip");
+        int count = 70_000;
+        try (OutputStream out = Files.newOutputStream(archive)) {
+            ZipStreamWriter zip = new ZipStreamWriter(out);
+            for (int i = 0; i < count; i++) {
+                zip.addEntry("f" + i, null, 1, false, new ByteArrayInputStream(new byte[] { (byte) i }));
+            }
+            zip.finish();
+        }
+
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            assertEquals(count, zip.size());
+            assertEquals((byte) 69_999, zip.getInputStream(zip.getEntry("f69999")).read());
+        }
+    }
+}